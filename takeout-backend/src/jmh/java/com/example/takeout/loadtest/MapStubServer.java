@@ -0,0 +1,75 @@
+package com.example.takeout.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 压测用的百度地图接口桩：每个请求固定延迟后返回成功结果。
+ * /routematrix/** 按 origins 个数返回同样个数的 3.2 公里 / 9 分钟，其余路径返回一个固定的地址解析结果；
+ * GET /_hits 返回已处理的请求数。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.example.takeout.loadtest.MapStubServer -Dbenchmark.args="9099 100"
+ * （参数：端口 延迟毫秒）。后端启动时设 BAIDU_MAP_AK=stub BAIDU_MAP_BASE_URL=http://127.0.0.1:9099。
+ */
+public class MapStubServer {
+
+    private static final String ROUTE_ELEMENT = "{\"distance\":{\"value\":3200},\"duration\":{\"value\":540}}";
+    private static final String GEOCODE = "{\"status\":0,\"result\":{\"location\":{\"lat\":31.23,\"lng\":121.47}}}";
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 9099;
+        long delayMillis = args.length > 1 ? Long.parseLong(args[1]) : 100;
+        AtomicLong hits = new AtomicLong();
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 4096);
+        // 每个请求一个虚拟线程，延迟期间不占平台线程，桩本身不成为瓶颈
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String body = exchange.getRequestURI().getPath().startsWith("/routematrix")
+                    ? routeMatrix(exchange.getRequestURI().getRawQuery())
+                    : GEOCODE;
+            hits.incrementAndGet();
+            respond(exchange, body);
+        });
+        server.createContext("/_hits", exchange -> respond(exchange, Long.toString(hits.get())));
+        server.start();
+        System.out.println("map stub on " + port + ", delay " + delayMillis + "ms");
+    }
+
+    private static String routeMatrix(String query) {
+        int origins = 1;
+        int i = query == null ? -1 : query.indexOf("origins=");
+        if (i >= 0) {
+            int end = query.indexOf('&', i);
+            String value = query.substring(i + "origins=".length(), end < 0 ? query.length() : end);
+            origins = value.split("%7C|\\|").length;
+        }
+        StringBuilder b = new StringBuilder("{\"status\":0,\"result\":[");
+        for (int k = 0; k < origins; k++) {
+            if (k > 0) b.append(',');
+            b.append(ROUTE_ELEMENT);
+        }
+        return b.append("]}").toString();
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json;charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.takeout.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 骑手端闭环压测，用来比较平台线程（默认）和虚拟线程（vt profile）两种模式。
+ * C 个骑手各占一个虚拟线程，无思考时间循环：上报一个随机偏移的位置（使路线缓存失效）→ 打开一单的路线页 → 查订单列表。
+ * 先预热 warmup 秒，再统计 measure 秒内的吞吐、p50/p99 和非 2xx/异常数，按接口分别输出。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.example.takeout.loadtest.RiderLoadTest -Dbenchmark.args="400 15 30"
+ * （参数：并发数 预热秒数 统计秒数 [后端地址，默认 http://127.0.0.1:8081]）。
+ * <p>
+ * 环境：MariaDB/MySQL，后端连压测库，地图接口指向 {@link MapStubServer}；比较时两种模式各跑一遍，其余配置相同。
+ * 压测前在空库（应用已建好表）里造 50 个饭店、1000 个骑手、1000 个顾客和 20000 单配送中的订单，
+ * 第 r 个骑手的订单 id 为 (r-1)+1000k，与下面的取单方式对应（MariaDB 的 seq 表）：
+ * <pre>
+ * insert into restaurants (id,name,address,status,created_at,lat,lng,commission_rate)
+ *   select seq,concat('饭店',seq),concat('地址',seq),'ACTIVE',now(),31.20+seq*0.002,121.45+seq*0.002,0.10 from seq_1_to_50;
+ * insert into delivery_staff (id,name,phone,status,current_load,current_lat,current_lng,location_updated_at)
+ *   select seq,concat('骑手',seq),'13800000000','ACTIVE',0,31.22+(seq%100)*0.001,121.46+(seq div 100)*0.003,now() from seq_1_to_1000;
+ * insert into customers (id,username,password,status,created_at)
+ *   select seq,concat('c',seq),'p','ACTIVE',now() from seq_1_to_1000;
+ * insert into orders (id,customer_id,restaurant_id,delivery_staff_id,status,pay_status,total_amount,pay_amount,created_at,paid_at,
+ *                     address_detail,contact_name,contact_phone,delivery_lat,delivery_lng)
+ *   select seq,1+(seq%1000),1+(seq%50),1+(seq%1000),'DELIVERING','PAID',30,30,now() - interval (seq%10000) minute,now(),
+ *          concat('收货地址',seq),'张三','13900000000',31.19+(seq%200)*0.0007,121.44+(seq%173)*0.0009 from seq_1_to_20000;
+ * </pre>
+ * 压测机和后端、数据库在同一台机器上时，结果只适合两种模式互相比较，不代表线上容量。
+ */
+public class RiderLoadTest {
+
+    private static final int RIDERS = 1000;
+    private static final String[] NAMES = {"location", "route", "orders"};
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final String baseUrl;
+    private final AtomicBoolean recording = new AtomicBoolean();
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private final AtomicLong errors = new AtomicLong();
+    // [用户][接口] 的耗时（微秒），每个用户只由自己的线程写
+    private final long[][][] latencies;
+    private final int[][] counts;
+
+    private RiderLoadTest(String baseUrl, int users) {
+        this.baseUrl = baseUrl;
+        this.latencies = new long[users][NAMES.length][];
+        this.counts = new int[users][NAMES.length];
+        for (long[][] perUser : latencies) {
+            for (int k = 0; k < NAMES.length; k++) perUser[k] = new long[1 << 14];
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int users = Integer.parseInt(args[0]);
+        int warmupSeconds = Integer.parseInt(args[1]);
+        int measureSeconds = Integer.parseInt(args[2]);
+        String baseUrl = args.length > 3 ? args[3] : "http://127.0.0.1:8081";
+        new RiderLoadTest(baseUrl, users).run(warmupSeconds, measureSeconds);
+    }
+
+    private void run(int warmupSeconds, int measureSeconds) throws InterruptedException {
+        int users = counts.length;
+        Thread[] threads = new Thread[users];
+        for (int u = 0; u < users; u++) {
+            int user = u;
+            threads[u] = Thread.ofVirtual().start(() -> loop(user));
+        }
+        Thread.sleep(warmupSeconds * 1000L);
+        errors.set(0);
+        recording.set(true);
+        long start = System.nanoTime();
+        Thread.sleep(measureSeconds * 1000L);
+        recording.set(false);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        stopped.set(true);
+        for (Thread t : threads) t.join(60_000);
+        report(seconds);
+    }
+
+    private void loop(int user) {
+        int rider = user % RIDERS + 1;
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        // 与造数时骑手的初始位置一致
+        double baseLat = 31.22 + (rider % 100) * 0.001;
+        double baseLng = 121.46 + (rider / 100) * 0.003;
+        Duration timeout = Duration.ofSeconds(60);
+        while (!stopped.get()) {
+            double lat = baseLat + rnd.nextDouble(-0.02, 0.02);
+            double lng = baseLng + rnd.nextDouble(-0.02, 0.02);
+            long orderId = (rider - 1) + 1000L * rnd.nextInt(1, 20);
+            call(user, 0, HttpRequest.newBuilder(URI.create(baseUrl + "/api/rider/location"))
+                    .header("Content-Type", "application/json")
+                    .PUT(HttpRequest.BodyPublishers.ofString(
+                            "{\"deliveryStaffId\":" + rider + ",\"lat\":" + lat + ",\"lng\":" + lng + "}"))
+                    .timeout(timeout)
+                    .build());
+            call(user, 1, HttpRequest.newBuilder(URI.create(
+                            baseUrl + "/api/rider/orders/" + orderId + "/route?deliveryStaffId=" + rider))
+                    .GET()
+                    .timeout(timeout)
+                    .build());
+            call(user, 2, HttpRequest.newBuilder(URI.create(
+                            baseUrl + "/api/rider/orders?deliveryStaffId=" + rider + "&page=1&size=20"))
+                    .GET()
+                    .timeout(timeout)
+                    .build());
+        }
+    }
+
+    private void call(int user, int kind, HttpRequest request) {
+        long start = System.nanoTime();
+        boolean ok;
+        try {
+            ok = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() / 100 == 2;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            ok = false;
+        }
+        long micros = (System.nanoTime() - start) / 1000;
+        if (!recording.get()) return;
+        if (!ok) errors.incrementAndGet();
+        long[] arr = latencies[user][kind];
+        if (counts[user][kind] == arr.length) latencies[user][kind] = arr = Arrays.copyOf(arr, arr.length * 2);
+        arr[counts[user][kind]++] = micros;
+    }
+
+    private void report(double seconds) {
+        StringBuilder detail = new StringBuilder();
+        long[][] perKind = new long[NAMES.length][];
+        int total = 0;
+        for (int k = 0; k < NAMES.length; k++) {
+            int n = 0;
+            for (int[] c : counts) n += c[k];
+            long[] values = new long[n];
+            int p = 0;
+            for (int u = 0; u < counts.length; u++) {
+                System.arraycopy(latencies[u][k], 0, values, p, counts[u][k]);
+                p += counts[u][k];
+            }
+            Arrays.sort(values);
+            perKind[k] = values;
+            total += n;
+            detail.append(String.format("  %-8s n=%d p50=%.1fms p99=%.1fms%n",
+                    NAMES[k], n, percentile(values, 50), percentile(values, 99)));
+        }
+        long[] all = new long[total];
+        int p = 0;
+        for (long[] values : perKind) {
+            System.arraycopy(values, 0, all, p, values.length);
+            p += values.length;
+        }
+        Arrays.sort(all);
+        System.out.printf("C=%d rps=%.0f p50=%.1fms p99=%.1fms max=%.1fms errors=%d%n%s",
+                counts.length, total / seconds, percentile(all, 50), percentile(all, 99),
+                all.length == 0 ? 0 : all[all.length - 1] / 1000.0, errors.get(), detail);
+    }
+
+    private static double percentile(long[] sorted, double q) {
+        if (sorted.length == 0) return 0;
+        int i = (int) Math.min(sorted.length - 1, Math.ceil(q / 100.0 * sorted.length) - 1);
+        return sorted[Math.max(0, i)] / 1000.0;
+    }
+}
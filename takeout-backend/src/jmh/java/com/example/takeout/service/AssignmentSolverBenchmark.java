@@ -0,0 +1,86 @@
+package com.example.takeout.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * BATCH 模式一个攒单窗口的匹配耗时：订单、骑手随机分布在 10 公里见方的城区，
+ * 每单只连最近的 k 个骑手（与 delivery.assignment.nearest-k 一致），代价为距离加负载惩罚，同 BatchAssignmentService。
+ * shape 为 订单数x骑手数；1000x500 为骑手不够、部分订单走“本轮不分配”的情形。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="AssignmentSolverBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssignmentSolverBenchmark {
+
+    private static final double CITY_KM = 10.0;
+
+    @Param({"100x200", "1000x2000", "1000x500"})
+    public String shape;
+
+    @Param({"20"})
+    public int k;
+
+    private int riders;
+    private int[][] candCols;
+    private double[][] candCosts;
+
+    @Setup
+    public void setUp() {
+        String[] parts = shape.split("x");
+        int orders = Integer.parseInt(parts[0]);
+        riders = Integer.parseInt(parts[1]);
+        Random rnd = new Random(7L);
+        double[] rx = new double[riders];
+        double[] ry = new double[riders];
+        int[] load = new int[riders];
+        for (int r = 0; r < riders; r++) {
+            rx[r] = rnd.nextDouble() * CITY_KM;
+            ry[r] = rnd.nextDouble() * CITY_KM;
+            load[r] = rnd.nextInt(3);
+        }
+        int kk = Math.min(k, riders);
+        candCols = new int[orders][];
+        candCosts = new double[orders][];
+        for (int o = 0; o < orders; o++) {
+            double ox = rnd.nextDouble() * CITY_KM;
+            double oy = rnd.nextDouble() * CITY_KM;
+            double[] dist = new double[riders];
+            for (int r = 0; r < riders; r++) {
+                dist[r] = Math.hypot(rx[r] - ox, ry[r] - oy);
+            }
+            int[] nearest = IntStream.range(0, riders).boxed()
+                    .sorted(Comparator.comparingDouble(r -> dist[r]))
+                    .limit(kk)
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            candCols[o] = nearest;
+            candCosts[o] = Arrays.stream(nearest).mapToDouble(r -> dist[r] + load[r] * DeliveryAssignmentService.LOAD_WEIGHT_KM).toArray();
+        }
+    }
+
+    @Benchmark
+    public int[] solve() {
+        return AssignmentSolver.solve(riders, candCols, candCosts);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.takeout.service;
+
+import com.example.takeout.service.PricingFixtures.RandomCart;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 下单计价：Money（整数分 + 快照里预算好的折后单价）对比改造前逐行 BigDecimal 计算。
+ * 两边用同一批随机购物车，结果是否一致由 MoneyPricingEquivalenceTest 保证。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="PricingBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PricingBenchmark {
+
+    private static final int CARTS = 1024;
+
+    private final List<RandomCart> carts = new ArrayList<>(CARTS);
+    private final List<OrderPricingService> services = new ArrayList<>(CARTS);
+    private LocalDateTime now;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rnd = new Random(42L);
+        now = LocalDateTime.now();
+        for (int i = 0; i < CARTS; i++) {
+            RandomCart cart = PricingFixtures.randomCart(rnd, now);
+            carts.add(cart);
+            services.add(new OrderPricingService(PricingFixtures.fixedMenu(cart.menu()), null));
+        }
+    }
+
+    @Benchmark
+    public long money() {
+        int i = next++ & (CARTS - 1);
+        RandomCart cart = carts.get(i);
+        OrderPricingService.PricedCart priced = services.get(i).price(1L, cart.lines());
+        Money pay = Money.ofYuan(priced.payAmount().toBigDecimal());
+        return pay.percentHalfUp(cart.commissionRate()).fen() + pay.toFenInt();
+    }
+
+    @Benchmark
+    public Object legacyBigDecimal() {
+        RandomCart cart = carts.get(next++ & (CARTS - 1));
+        return PricingFixtures.legacyPrice(cart, now);
+    }
+}
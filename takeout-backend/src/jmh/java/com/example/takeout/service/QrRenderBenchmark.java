@@ -0,0 +1,87 @@
+package com.example.takeout.service;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 支付二维码 PNG：直接输出 1 位 PNG（QrPngWriter）对比 ZXing MatrixToImageWriter（ImageIO），
+ * 覆盖接口允许的尺寸范围 128~512。render* 只比较 PNG 编码，service* 为不走缓存的完整生成（含二维码编码）。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="QrRenderBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QrRenderBenchmark {
+
+    // 微信 Native 支付 code_url 的典型长度
+    private static final String CONTENT = "weixin://wxpay/bizpayurl?pr=Abc123XyZ9";
+
+    @Param({"128", "256", "384", "512"})
+    public int size;
+
+    private BitMatrix matrix;
+    private QrPngWriter direct;
+    private QrCodeService directService;
+    private QrCodeService imageIoService;
+
+    @Setup
+    public void setUp() throws Exception {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.CHARACTER_SET, StandardCharsets.UTF_8.name());
+        hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.M);
+        hints.put(EncodeHintType.MARGIN, 1);
+        matrix = new QRCodeWriter().encode(CONTENT, BarcodeFormat.QR_CODE, size, size, hints);
+        direct = new QrPngWriter(1);
+        // 缓存条数为 0：每次都重新生成
+        directService = new QrCodeService("direct", 0, 0);
+        imageIoService = new QrCodeService("imageio", 0, 0);
+    }
+
+    @Benchmark
+    public byte[] renderDirect() {
+        return direct.write(matrix);
+    }
+
+    @Benchmark
+    public byte[] renderImageIo() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(2048);
+        MatrixToImageWriter.writeToStream(matrix, "PNG", out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] serviceDirect() {
+        return directService.toPng(CONTENT, size);
+    }
+
+    @Benchmark
+    public byte[] serviceImageIo() {
+        return imageIoService.toPng(CONTENT, size);
+    }
+}
@@ -88,6 +88,9 @@ public class CustomerOrder {
     @Column(name = "delivery_lng")
     private Double deliveryLng;
 
+    @Column(name = "idempotency_key", length = 100, unique = true)
+    private String idempotencyKey; // customerId:Idempotency-Key，防止客户端重试重复下单
+
     public CustomerOrder() {
     }
 
@@ -290,4 +293,12 @@ public class CustomerOrder {
     public void setDeliveryLng(Double deliveryLng) {
         this.deliveryLng = deliveryLng;
     }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
 }
@@ -1,10 +1,13 @@
 package com.example.takeout.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.time.LocalDateTime;
 
+// 只更新改动过的列：上报位置、后台改资料时不会把旧的 current_load 写回去覆盖原子增减的结果
 @Entity
+@DynamicUpdate
 @Table(name = "delivery_staff")
 public class DeliveryStaff {
 
@@ -0,0 +1,91 @@
+package com.example.takeout.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+// 地址解析结果缓存：按规范化后的地址文本去重，饭店、收货地址、订单共用
+@Entity
+@Table(name = "geocode_cache")
+public class GeocodeEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "address_key", nullable = false, length = 255, unique = true)
+    private String addressKey;
+
+    // 第一次解析时的原始地址，便于排查
+    @Column(length = 255)
+    private String address;
+
+    private Double lat;
+
+    private Double lng;
+
+    @Column(length = 20, nullable = false)
+    private String status; // OK, NOT_FOUND
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt = LocalDateTime.now();
+
+    public GeocodeEntry() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getAddressKey() {
+        return addressKey;
+    }
+
+    public void setAddressKey(String addressKey) {
+        this.addressKey = addressKey;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public void setAddress(String address) {
+        this.address = address;
+    }
+
+    public Double getLat() {
+        return lat;
+    }
+
+    public void setLat(Double lat) {
+        this.lat = lat;
+    }
+
+    public Double getLng() {
+        return lng;
+    }
+
+    public void setLng(Double lng) {
+        this.lng = lng;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
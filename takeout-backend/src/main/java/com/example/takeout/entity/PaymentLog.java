@@ -41,6 +41,9 @@ public class PaymentLog {
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt = LocalDateTime.now();
 
+    @Column(name = "journal_id", length = 36, unique = true)
+    private String journalId; // 异步写入流水的唯一标识，崩溃恢复重放时用于去重
+
     public PaymentLog() {
     }
 
@@ -123,5 +126,12 @@ public class PaymentLog {
     public void setCreatedAt(LocalDateTime createdAt) {
         this.createdAt = createdAt;
     }
-}
 
+    public String getJournalId() {
+        return journalId;
+    }
+
+    public void setJournalId(String journalId) {
+        this.journalId = journalId;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.takeout.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+// 骑手轨迹的一段：一段时间内的连续定位点，按差分编码压缩后整块存放（见 service.TrackCodec），只追加不修改
+@Entity
+@Table(name = "rider_track_chunks",
+        indexes = @Index(name = "idx_track_staff_started", columnList = "delivery_staff_id, started_at"))
+public class RiderTrackChunk {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "delivery_staff_id", nullable = false)
+    private Long deliveryStaffId;
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    @Column(name = "ended_at", nullable = false)
+    private LocalDateTime endedAt;
+
+    @Column(name = "point_count", nullable = false)
+    private Integer pointCount;
+
+    @Column(name = "data", nullable = false, length = 8192)
+    private byte[] data;
+
+    public RiderTrackChunk() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getDeliveryStaffId() {
+        return deliveryStaffId;
+    }
+
+    public void setDeliveryStaffId(Long deliveryStaffId) {
+        this.deliveryStaffId = deliveryStaffId;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getEndedAt() {
+        return endedAt;
+    }
+
+    public void setEndedAt(LocalDateTime endedAt) {
+        this.endedAt = endedAt;
+    }
+
+    public Integer getPointCount() {
+        return pointCount;
+    }
+
+    public void setPointCount(Integer pointCount) {
+        this.pointCount = pointCount;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+}
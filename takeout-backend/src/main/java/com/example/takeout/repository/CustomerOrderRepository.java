@@ -1,7 +1,9 @@
 package com.example.takeout.repository;
 
 import com.example.takeout.entity.CustomerOrder;
+import com.example.takeout.entity.DeliveryStaff;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.domain.Page;
@@ -16,6 +18,65 @@ public interface CustomerOrderRepository extends JpaRepository<CustomerOrder, Lo
 
     Optional<CustomerOrder> findFirstByPayOutTradeNo(String payOutTradeNo);
 
+    Optional<CustomerOrder> findFirstByIdempotencyKey(String idempotencyKey);
+
+    // 骑手抢单：一条条件更新完成判断和占用，并发抢同一单时只有一个返回 1
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            update CustomerOrder o
+            set o.deliveryStaff = :staff, o.status = 'DELIVERING'
+            where o.id = :id
+              and o.deliveryStaff is null
+              and o.status = 'PAID'
+              and o.payStatus = 'PAID'
+            """)
+    int takeForDelivery(@Param("id") Long id, @Param("staff") DeliveryStaff staff);
+
+    // 系统派单：同样只在订单仍无人接时占用，避免覆盖骑手刚抢到的单
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            update CustomerOrder o
+            set o.deliveryStaff = :staff
+            where o.id = :id
+              and o.deliveryStaff is null
+              and o.status in ('PAID', 'DELIVERING')
+              and o.payStatus = 'PAID'
+            """)
+    int assignIfUnassigned(@Param("id") Long id, @Param("staff") DeliveryStaff staff);
+
+    interface OrderEventProjection {
+        Long getId();
+
+        Long getCustomerId();
+
+        String getStatus();
+
+        String getPayStatus();
+
+        BigDecimal getPayAmount();
+
+        Long getDeliveryStaffId();
+    }
+
+    // 订单状态推送用：只取推送需要的几个字段
+    @Query("""
+            select o.id as id,
+                   c.id as customerId,
+                   o.status as status,
+                   o.payStatus as payStatus,
+                   o.payAmount as payAmount,
+                   ds.id as deliveryStaffId
+            from CustomerOrder o
+            join o.customer c
+            left join o.deliveryStaff ds
+            where o.id = :id
+            """)
+    Optional<OrderEventProjection> findOrderEventView(@Param("id") Long id);
+
+    // 抢单失败时区分原因用，不加载整个订单：不存在为空，已被接单为 true
+    @Query("select case when o.deliveryStaff is null then false else true end from CustomerOrder o where o.id = :id")
+    Optional<Boolean> findTaken(@Param("id") Long id);
+
     @Query("""
             select coalesce(sum(o.payAmount), 0)
             from CustomerOrder o
@@ -308,6 +369,54 @@ public interface CustomerOrderRepository extends JpaRepository<CustomerOrder, Lo
                                                        @Param("endAt") LocalDateTime endAt,
                                                        Pageable pageable);
 
+    // 接单大厅推送用：全部可抢订单 / 单个订单是否仍在大厅
+    @Query("""
+            select o.id as id,
+                   r.id as restaurantId,
+                   r.name as restaurantName,
+                   c.id as customerId,
+                   c.username as customerUsername,
+                   o.status as status,
+                   o.payStatus as payStatus,
+                   o.payAmount as payAmount,
+                   o.createdAt as createdAt,
+                   o.paidAt as paidAt,
+                   o.addressDetail as addressDetail,
+                   o.contactName as contactName,
+                   o.contactPhone as contactPhone
+            from CustomerOrder o
+            join o.restaurant r
+            join o.customer c
+            where o.deliveryStaff is null
+              and o.status = 'PAID'
+              and o.payStatus = 'PAID'
+            """)
+    List<RiderHallOrderProjection> findAllRiderHallOrders();
+
+    @Query("""
+            select o.id as id,
+                   r.id as restaurantId,
+                   r.name as restaurantName,
+                   c.id as customerId,
+                   c.username as customerUsername,
+                   o.status as status,
+                   o.payStatus as payStatus,
+                   o.payAmount as payAmount,
+                   o.createdAt as createdAt,
+                   o.paidAt as paidAt,
+                   o.addressDetail as addressDetail,
+                   o.contactName as contactName,
+                   o.contactPhone as contactPhone
+            from CustomerOrder o
+            join o.restaurant r
+            join o.customer c
+            where o.deliveryStaff is null
+              and o.status = 'PAID'
+              and o.payStatus = 'PAID'
+              and o.id = :id
+            """)
+    Optional<RiderHallOrderProjection> findRiderHallOrder(@Param("id") Long id);
+
     @Query("""
             select count(o)
             from CustomerOrder o
@@ -349,4 +458,19 @@ public interface CustomerOrderRepository extends JpaRepository<CustomerOrder, Lo
               and o.paidAt <= :deadline
             """)
     List<CustomerOrder> findStalePaidUnassignedOrders(@Param("deadline") LocalDateTime deadline);
+
+    // 同一饭店、已派给骑手但骑手还没出发的订单（可以顺路再带一单）
+    @Query("""
+            select o
+            from CustomerOrder o
+            join fetch o.deliveryStaff ds
+            where o.restaurant.id = :restaurantId
+              and o.payStatus = 'PAID'
+              and o.status = 'PAID'
+              and o.paidAt >= :since
+              and o.id <> :excludeId
+            """)
+    List<CustomerOrder> findOpenBundleOrders(@Param("restaurantId") Long restaurantId,
+                                             @Param("since") LocalDateTime since,
+                                             @Param("excludeId") Long excludeId);
 }
@@ -2,12 +2,55 @@ package com.example.takeout.repository;
 
 import com.example.takeout.entity.DeliveryStaff;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface DeliveryStaffRepository extends JpaRepository<DeliveryStaff, Long> {
 
     @Query("select d from DeliveryStaff d where d.status = 'ACTIVE' order by coalesce(d.currentLoad, 0) asc, d.id asc")
     List<DeliveryStaff> findAssignable();
+
+    // 负载增减直接在库里做，避免“读出来 +1 再保存”在并发抢单/取消时丢失更新
+    @Modifying(flushAutomatically = true)
+    @Query("update DeliveryStaff d set d.currentLoad = coalesce(d.currentLoad, 0) + 1 where d.id = :id")
+    int incrementLoad(@Param("id") Long id);
+
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            update DeliveryStaff d
+            set d.currentLoad = case when coalesce(d.currentLoad, 0) > 0 then d.currentLoad - 1 else 0 end
+            where d.id = :id
+            """)
+    int decrementLoad(@Param("id") Long id);
+
+    interface LoadDriftProjection {
+        Long getDeliveryStaffId();
+        Integer getRecordedLoad();
+        Long getActualLoad();
+    }
+
+    // 实际负载 = 派给该骑手且未完成/未取消的订单数（PAID 已派未出发 + DELIVERING）
+    @Query(value = """
+            select t.deliveryStaffId, t.recordedLoad, t.actualLoad
+            from (select d.id as deliveryStaffId,
+                         coalesce(d.current_load, 0) as recordedLoad,
+                         (select count(*) from orders o
+                          where o.delivery_staff_id = d.id and o.status in ('PAID', 'DELIVERING')) as actualLoad
+                  from delivery_staff d) t
+            where t.recordedLoad <> t.actualLoad
+            """, nativeQuery = true)
+    List<LoadDriftProjection> findLoadDrift();
+
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            update delivery_staff d
+            set d.current_load = (select count(*) from orders o
+                                  where o.delivery_staff_id = d.id and o.status in ('PAID', 'DELIVERING'))
+            where d.id in (:ids)
+            """, nativeQuery = true)
+    int recomputeLoad(@Param("ids") Collection<Long> ids);
 }
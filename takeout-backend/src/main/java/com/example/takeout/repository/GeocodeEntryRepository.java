@@ -0,0 +1,11 @@
+package com.example.takeout.repository;
+
+import com.example.takeout.entity.GeocodeEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Optional;
+
+public interface GeocodeEntryRepository extends JpaRepository<GeocodeEntry, Long> {
+
+    Optional<GeocodeEntry> findByAddressKey(String addressKey);
+}
@@ -12,4 +12,6 @@ public interface RestaurantRepository extends JpaRepository<Restaurant, Long> {
 
     @Query("select r from Restaurant r where r.status is null or r.status = 'ACTIVE'")
     List<Restaurant> findPublicActive();
+
+    List<Restaurant> findByAddressIsNotNullAndLatIsNull();
 }
@@ -0,0 +1,26 @@
+package com.example.takeout.repository;
+
+import com.example.takeout.entity.RiderTrackChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface RiderTrackChunkRepository extends JpaRepository<RiderTrackChunk, Long> {
+
+    /**
+     * 与 [startAt, endAt] 有交集的轨迹段，按开始时间升序。
+     */
+    @Query("""
+            select c from RiderTrackChunk c
+            where c.deliveryStaffId = :staffId
+              and c.startedAt <= :endAt
+              and c.endedAt >= :startAt
+            order by c.startedAt asc
+            """)
+    List<RiderTrackChunk> findOverlapping(@Param("staffId") Long staffId,
+                                          @Param("startAt") LocalDateTime startAt,
+                                          @Param("endAt") LocalDateTime endAt);
+}
@@ -0,0 +1,145 @@
+package com.example.takeout.service;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * 订单-骑手最小费用匹配（稀疏图上的匈牙利算法：逐行 Dijkstra 找最短增广路 + 节点势）。
+ * 每个订单只和自己的候选骑手连边，另有一条“本轮不分配”的虚拟边，保证总有解；
+ * 每个骑手一轮最多分到一单。复杂度约 O(订单数 × 边数 × log)。
+ */
+final class AssignmentSolver {
+
+    // 不分配的代价：比任何真实候选都大，只有没有可用骑手时才会选它
+    static final double UNASSIGNED_COST = 1e6;
+    // 约化代价理论上非负，浮点舍入可能得到极小的负数，按 0 处理
+    private static final double EPS = 1e-9;
+
+    private AssignmentSolver() {
+    }
+
+    /**
+     * @param cols      骑手数，骑手编号 0..cols-1
+     * @param candCols  每个订单的候选骑手编号
+     * @param candCosts 与 candCols 对应的代价（非负）
+     * @return 每个订单匹配到的骑手编号，未分配为 -1
+     */
+    static int[] solve(int cols, int[][] candCols, double[][] candCosts) {
+        int rows = candCols.length;
+        // 节点编号：订单 0..rows-1，骑手 rows..rows+cols-1，订单 i 的虚拟列 rows+cols+i
+        int nodes = rows + cols + rows;
+        double[] phi = new double[nodes];
+        double[] dist = new double[nodes];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        int[] prev = new int[nodes];
+        boolean[] done = new boolean[nodes];
+        int[] colMatch = new int[nodes];
+        Arrays.fill(colMatch, -1);
+        int[] rowMatch = new int[rows];
+        Arrays.fill(rowMatch, -1);
+        int[] touched = new int[nodes];
+
+        PriorityQueue<long[]> pq = new PriorityQueue<>((a, b) -> Double.compare(Double.longBitsToDouble(a[0]), Double.longBitsToDouble(b[0])));
+
+        for (int s = 0; s < rows; s++) {
+            int touchedCount = 0;
+            pq.clear();
+            dist[s] = 0;
+            touched[touchedCount++] = s;
+            pq.add(new long[]{Double.doubleToLongBits(0.0), s});
+            int end = -1;
+            double endDist = 0;
+
+            while (!pq.isEmpty()) {
+                long[] top = pq.poll();
+                int x = (int) top[1];
+                double dx = Double.longBitsToDouble(top[0]);
+                if (done[x] || dx > dist[x]) continue;
+                done[x] = true;
+
+                if (x >= rows) {
+                    int u = colMatch[x];
+                    if (u < 0) {
+                        end = x;
+                        endDist = dx;
+                        break;
+                    }
+                    // 已匹配边按不变式是紧的（约化代价 0），直接走回对应订单
+                    if (done[u]) continue;
+                    double nd = dx + reduced(phi[x] - phi[u] - edgeCost(u, x, rows, cols, candCols, candCosts));
+                    if (nd < dist[u]) {
+                        if (dist[u] == Double.POSITIVE_INFINITY) touched[touchedCount++] = u;
+                        dist[u] = nd;
+                        prev[u] = x;
+                        pq.add(new long[]{Double.doubleToLongBits(nd), u});
+                    }
+                    continue;
+                }
+
+                int[] cs = candCols[x];
+                double[] cc = candCosts[x];
+                for (int k = 0; k <= cs.length; k++) {
+                    int v = k < cs.length ? rows + cs[k] : rows + cols + x;
+                    // 已出队的节点距离已定，不能再改它的前驱，否则前驱链可能成环
+                    if (v == rowMatch[x] || done[v]) continue;
+                    double c = k < cs.length ? cc[k] : UNASSIGNED_COST;
+                    double nd = dx + reduced(c + phi[x] - phi[v]);
+                    if (nd < dist[v]) {
+                        if (dist[v] == Double.POSITIVE_INFINITY) touched[touchedCount++] = v;
+                        dist[v] = nd;
+                        prev[v] = x;
+                        pq.add(new long[]{Double.doubleToLongBits(nd), v});
+                    }
+                }
+            }
+
+            // 更新势：到达过的节点减去 max(0, endDist - dist)，保持所有约化代价非负
+            for (int t = 0; t < touchedCount; t++) {
+                int y = touched[t];
+                if (dist[y] < endDist) phi[y] -= endDist - dist[y];
+            }
+
+            // 沿前驱翻转匹配；路径上每个订单最多出现一次
+            int v = end;
+            int steps = 0;
+            while (v >= 0) {
+                if (++steps > rows) throw new IllegalStateException("augmenting path does not return to row " + s);
+                int u = prev[v];
+                int nextV = rowMatch[u];
+                rowMatch[u] = v;
+                colMatch[v] = u;
+                v = u == s ? -1 : nextV;
+            }
+
+            for (int t = 0; t < touchedCount; t++) {
+                int y = touched[t];
+                dist[y] = Double.POSITIVE_INFINITY;
+                done[y] = false;
+            }
+        }
+
+        int[] result = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            int v = rowMatch[i];
+            result[i] = v >= rows && v < rows + cols ? v - rows : -1;
+        }
+        return result;
+    }
+
+    private static double reduced(double cost) {
+        return cost < EPS ? 0 : cost;
+    }
+
+    // 同一骑手在候选里出现多次时取最小代价，与搜索时实际走的边一致
+    private static double edgeCost(int row, int colNode, int rows, int cols, int[][] candCols, double[][] candCosts) {
+        if (colNode >= rows + cols) return UNASSIGNED_COST;
+        int c = colNode - rows;
+        int[] cs = candCols[row];
+        double best = Double.POSITIVE_INFINITY;
+        for (int k = 0; k < cs.length; k++) {
+            if (cs[k] == c) best = Math.min(best, candCosts[row][k]);
+        }
+        if (best == Double.POSITIVE_INFINITY) throw new IllegalStateException("matched edge not found");
+        return best;
+    }
+}
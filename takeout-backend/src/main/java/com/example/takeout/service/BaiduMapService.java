@@ -5,46 +5,65 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.net.URI;
 import java.net.URLEncoder;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
 
 @Service
 public class BaiduMapService {
 
-    private final HttpClient httpClient = HttpClient.newHttpClient();
     private final ObjectMapper objectMapper;
+    private final MapHttpClient mapHttpClient;
     private final String baiduAk;
+    private final Predicate<String> serviceOk;
 
-    public BaiduMapService(ObjectMapper objectMapper, @Value("${baidu.map.ak:}") String baiduAk) {
+    public BaiduMapService(ObjectMapper objectMapper, MapHttpClient mapHttpClient, @Value("${baidu.map.ak:}") String baiduAk) {
         this.objectMapper = objectMapper;
+        this.mapHttpClient = mapHttpClient;
         this.baiduAk = baiduAk == null ? "" : baiduAk.trim();
+        this.serviceOk = serviceOk(objectMapper);
+    }
+
+    /**
+     * 给 MapHttpClient 熔断器用的业务结果判断：百度在 HTTP 200 里用 status 表示成败。
+     * status 为 0 或“无相关结果”（地址解析不到等，接口本身正常）算成功；
+     * 配额/并发超限、AK 失效、服务内部错误等算失败，连续出现时熔断，直接走兜底。
+     */
+    static Predicate<String> serviceOk(ObjectMapper objectMapper) {
+        return body -> {
+            try {
+                JsonNode root = objectMapper.readTree(body);
+                if (root.path("status").asInt(-1) == 0) return true;
+                String message = root.path("message").asText("") + root.path("msg").asText("");
+                return message.contains("无相关结果") || message.contains("无结果");
+            } catch (Exception e) {
+                return false;
+            }
+        };
     }
 
     public String getAk() {
         return baiduAk;
     }
 
+    /**
+     * 地址解析。会等待接口返回（受请求超时限制），只在后台线程里调用（见 GeocodeService）。
+     */
     public Optional<Coord> geocode(String address) {
         if (baiduAk.isEmpty()) return Optional.empty();
         if (address == null || address.isBlank()) return Optional.empty();
+        String path = "/geocoding/v3/"
+                + "?output=json"
+                + "&address=" + URLEncoder.encode(address, StandardCharsets.UTF_8)
+                + "&ak=" + baiduAk;
+        return mapHttpClient.get("geocode", path, serviceOk).join().flatMap(this::parseGeocode);
+    }
+
+    private Optional<Coord> parseGeocode(String body) {
         try {
-            String url = "https://api.map.baidu.com/geocoding/v3/"
-                    + "?output=json"
-                    + "&address=" + URLEncoder.encode(address, StandardCharsets.UTF_8)
-                    + "&ak=" + baiduAk;
-            HttpRequest req = HttpRequest.newBuilder(URI.create(url))
-                    .GET()
-                    .header("User-Agent", "takeout-backend")
-                    .build();
-            HttpResponse<String> resp = httpClient.send(req, HttpResponse.BodyHandlers.ofString());
-            if (resp.statusCode() != 200) return Optional.empty();
-
-            JsonNode root = objectMapper.readTree(resp.body());
+            JsonNode root = objectMapper.readTree(body);
             if (root.path("status").asInt(-1) != 0) return Optional.empty();
             JsonNode loc = root.path("result").path("location");
             double lat = loc.path("lat").asDouble(Double.NaN);
@@ -57,21 +76,25 @@ public class BaiduMapService {
     }
 
     public Optional<RouteInfo> drivingRoute(double fromLat, double fromLng, double toLat, double toLng) {
-        if (baiduAk.isEmpty()) return Optional.empty();
+        return drivingRouteAsync(fromLat, fromLng, toLat, toLng).join();
+    }
+
+    /**
+     * 异步取驾车路线，不占用调用线程；失败、超时或未配置 AK 时结果为空，不会异常完成。
+     */
+    public CompletableFuture<Optional<RouteInfo>> drivingRouteAsync(double fromLat, double fromLng, double toLat, double toLng) {
+        if (baiduAk.isEmpty()) return CompletableFuture.completedFuture(Optional.empty());
+        String path = "/routematrix/v2/driving"
+                + "?output=json"
+                + "&origins=" + fromLat + "," + fromLng
+                + "&destinations=" + toLat + "," + toLng
+                + "&ak=" + baiduAk;
+        return mapHttpClient.get("route", path, serviceOk).thenApply(body -> body.flatMap(this::parseRoute));
+    }
+
+    private Optional<RouteInfo> parseRoute(String body) {
         try {
-            String url = "https://api.map.baidu.com/routematrix/v2/driving"
-                    + "?output=json"
-                    + "&origins=" + fromLat + "," + fromLng
-                    + "&destinations=" + toLat + "," + toLng
-                    + "&ak=" + baiduAk;
-            HttpRequest req = HttpRequest.newBuilder(URI.create(url))
-                    .GET()
-                    .header("User-Agent", "takeout-backend")
-                    .build();
-            HttpResponse<String> resp = httpClient.send(req, HttpResponse.BodyHandlers.ofString());
-            if (resp.statusCode() != 200) return Optional.empty();
-
-            JsonNode root = objectMapper.readTree(resp.body());
+            JsonNode root = objectMapper.readTree(body);
             if (root.path("status").asInt(-1) != 0) return Optional.empty();
             JsonNode results = root.path("result");
             if (!results.isArray() || results.isEmpty()) return Optional.empty();
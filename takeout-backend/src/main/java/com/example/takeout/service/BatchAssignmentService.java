@@ -0,0 +1,202 @@
+package com.example.takeout.service;
+
+import com.example.takeout.entity.CustomerOrder;
+import com.example.takeout.entity.DeliveryStaff;
+import com.example.takeout.repository.CustomerOrderRepository;
+import com.example.takeout.repository.DeliveryStaffRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 批量派单（delivery.assignment.mode=BATCH）：支付后的订单先攒一个短窗口，
+ * 再把窗口内所有订单和附近骑手一起做最小费用匹配（距离 + 在途负载），
+ * 避免逐单贪心时先到的订单抢走后面订单更需要的骑手。
+ */
+@Service
+public class BatchAssignmentService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchAssignmentService.class);
+
+    private final DeliveryAssignmentService deliveryAssignmentService;
+    private final DeliveryAssignmentQueue deliveryAssignmentQueue;
+    private final CustomerOrderRepository customerOrderRepository;
+    private final DeliveryStaffRepository deliveryStaffRepository;
+    private final RiderSpatialIndex riderSpatialIndex;
+    private final OrderBundler orderBundler;
+    private final String deliveryAssignmentMode;
+    private final int nearestK;
+    private final double searchRadiusKm;
+    private final int maxAttempts;
+
+    // 待进入下一轮匹配的订单 -> 已参与的轮数
+    private final Map<Long, Integer> pending = new ConcurrentHashMap<>();
+
+    public BatchAssignmentService(DeliveryAssignmentService deliveryAssignmentService,
+                                  DeliveryAssignmentQueue deliveryAssignmentQueue,
+                                  CustomerOrderRepository customerOrderRepository,
+                                  DeliveryStaffRepository deliveryStaffRepository,
+                                  RiderSpatialIndex riderSpatialIndex,
+                                  OrderBundler orderBundler,
+                                  @Value("${delivery.assignment.mode:HALL}") String deliveryAssignmentMode,
+                                  @Value("${delivery.assignment.nearest-k:20}") int nearestK,
+                                  @Value("${delivery.assignment.search-radius-km:10}") double searchRadiusKm,
+                                  @Value("${delivery.assignment.max-attempts:5}") int maxAttempts) {
+        this.deliveryAssignmentService = deliveryAssignmentService;
+        this.deliveryAssignmentQueue = deliveryAssignmentQueue;
+        this.customerOrderRepository = customerOrderRepository;
+        this.deliveryStaffRepository = deliveryStaffRepository;
+        this.riderSpatialIndex = riderSpatialIndex;
+        this.orderBundler = orderBundler;
+        this.deliveryAssignmentMode = deliveryAssignmentMode == null ? "HALL" : deliveryAssignmentMode.trim();
+        this.nearestK = Math.max(1, nearestK);
+        this.searchRadiusKm = searchRadiusKm > 0 ? searchRadiusKm : 10;
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    /**
+     * 加入下一轮批量匹配；处于事务中时等提交后再加入。
+     */
+    public void submit(Long orderId) {
+        if (orderId == null) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    pending.putIfAbsent(orderId, 0);
+                }
+            });
+        } else {
+            pending.putIfAbsent(orderId, 0);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${delivery.assignment.batch.window-ms:2000}")
+    public void runWindow() {
+        if (!"BATCH".equalsIgnoreCase(deliveryAssignmentMode) || pending.isEmpty()) return;
+
+        Map<Long, Integer> batch = new HashMap<>();
+        for (Long id : new ArrayList<>(pending.keySet())) {
+            Integer rounds = pending.remove(id);
+            if (rounds != null) batch.put(id, rounds);
+        }
+
+        List<CustomerOrder> orders = customerOrderRepository.findAllById(batch.keySet()).stream()
+                .filter(o -> DeliveryAssignmentService.canAssign(o) && o.getDeliveryStaff() == null)
+                .toList();
+        List<CustomerOrder> located = new ArrayList<>();
+        for (CustomerOrder o : orders) {
+            if (o.getDeliveryLat() == null || o.getDeliveryLng() == null) {
+                // 没有坐标无法参与匹配，走逐单派单（按负载兜底）
+                deliveryAssignmentQueue.submit(o.getId());
+            } else {
+                located.add(o);
+            }
+        }
+
+        Map<Long, Long> plan = plan(located);
+        int assigned = 0;
+        for (CustomerOrder o : located) {
+            Long staffId = plan.get(o.getId());
+            boolean ok = false;
+            if (staffId != null) {
+                try {
+                    ok = deliveryAssignmentService.assignIfStillFree(o.getId(), staffId).isPresent();
+                } catch (Exception e) {
+                    log.warn("Batch assignment failed for order {}", o.getId(), e);
+                }
+            }
+            if (ok) {
+                assigned++;
+                continue;
+            }
+            int rounds = batch.getOrDefault(o.getId(), 0) + 1;
+            if (rounds < maxAttempts) {
+                pending.merge(o.getId(), rounds, Math::max);
+            } else {
+                // 多轮都没匹配上（附近一直没有空闲骑手）：交给逐单派单，放宽到全部在线骑手
+                deliveryAssignmentQueue.submit(o.getId());
+            }
+        }
+        if (!located.isEmpty()) {
+            log.debug("Batch assignment window: {} orders, {} assigned", located.size(), assigned);
+        }
+    }
+
+    /**
+     * 计算一批订单的最优分配（订单 id -> 骑手 id），只在每单附近最近的 k 个在线骑手中选；
+     * 顺路合单的一组订单派给同一骑手，除此之外每个骑手一轮最多一组。
+     * 只做计算不落库；没有坐标或附近没有骑手的订单不在结果里。
+     */
+    public Map<Long, Long> plan(List<CustomerOrder> orders) {
+        if (orders == null || orders.isEmpty()) return Map.of();
+
+        List<CustomerOrder> located = orders.stream()
+                .filter(o -> o != null && o.getDeliveryLat() != null && o.getDeliveryLng() != null)
+                .toList();
+        // 顺路的订单合成一行，整组派给同一个骑手；以组内第一单的送货点找骑手
+        List<List<CustomerOrder>> rows = new ArrayList<>();
+        List<List<RiderSpatialIndex.Nearby>> nearby = new ArrayList<>();
+        LinkedHashMap<Long, Integer> colOf = new LinkedHashMap<>();
+        for (List<CustomerOrder> group : orderBundler.group(located)) {
+            CustomerOrder anchor = group.get(0);
+            List<RiderSpatialIndex.Nearby> near = riderSpatialIndex.nearest(anchor.getDeliveryLat(), anchor.getDeliveryLng(), nearestK, searchRadiusKm);
+            if (near.isEmpty()) continue;
+            rows.add(group);
+            nearby.add(near);
+            for (RiderSpatialIndex.Nearby n : near) {
+                colOf.putIfAbsent(n.staffId(), colOf.size());
+            }
+        }
+        if (rows.isEmpty()) return Map.of();
+
+        // 回库取最新状态和负载
+        Map<Long, DeliveryStaff> staffById = new HashMap<>();
+        for (DeliveryStaff s : deliveryStaffRepository.findAllById(colOf.keySet())) {
+            if ("ACTIVE".equalsIgnoreCase(s.getStatus())) staffById.put(s.getId(), s);
+        }
+
+        int[][] candCols = new int[rows.size()][];
+        double[][] candCosts = new double[rows.size()][];
+        for (int i = 0; i < rows.size(); i++) {
+            List<RiderSpatialIndex.Nearby> near = nearby.get(i);
+            double extraLegKm = orderBundler.extraLegKm(rows.get(i));
+            int[] cs = new int[near.size()];
+            double[] cc = new double[near.size()];
+            int k = 0;
+            for (RiderSpatialIndex.Nearby n : near) {
+                DeliveryStaff s = staffById.get(n.staffId());
+                if (s == null) continue;
+                int load = s.getCurrentLoad() == null ? 0 : s.getCurrentLoad();
+                cs[k] = colOf.get(n.staffId());
+                cc[k] = n.distanceKm() + extraLegKm + load * DeliveryAssignmentService.LOAD_WEIGHT_KM;
+                k++;
+            }
+            candCols[i] = k == cs.length ? cs : Arrays.copyOf(cs, k);
+            candCosts[i] = k == cc.length ? cc : Arrays.copyOf(cc, k);
+        }
+
+        int[] match = AssignmentSolver.solve(colOf.size(), candCols, candCosts);
+        Long[] staffIds = colOf.keySet().toArray(new Long[0]);
+        Map<Long, Long> out = new HashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            if (match[i] < 0) continue;
+            for (CustomerOrder o : rows.get(i)) {
+                out.put(o.getId(), staffIds[match[i]]);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.takeout.service;
+
+import com.example.takeout.service.MenuSnapshotCache.DishView;
+import com.example.takeout.service.MenuSnapshotCache.MenuSnapshot;
+import com.example.takeout.service.MenuSnapshotCache.PromotionView;
+import com.example.takeout.service.OrderPricingService.CartLine;
+import com.example.takeout.service.OrderPricingService.PricedCart;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * 购物车报价：计价结果缓存在服务端，前端拿到签名后的 quoteToken，下单时带上即可跳过重新计价。
+ * 报价时记下所报菜品的价格、上下架状态和饭店的满减规则；报价在过期、这些内容变化（商家改价/上下架/改满减）
+ * 或满减到点切换后自动作废，下单时退回正常计价。菜单快照按 menu.cache.ttl-seconds 重载但内容未变时报价仍有效，
+ * 所以有效期由 cart.quote.ttl-seconds 决定，而不受快照缓存时间限制。
+ */
+@Service
+public class CartQuoteService {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final OrderPricingService orderPricingService;
+    private final MenuSnapshotCache menuSnapshotCache;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final byte[] secret;
+    private final SecureRandom random = new SecureRandom();
+
+    private final Map<String, QuoteEntry> quotes;
+
+    public CartQuoteService(OrderPricingService orderPricingService,
+                            MenuSnapshotCache menuSnapshotCache,
+                            @Value("${cart.quote.ttl-seconds:300}") long ttlSeconds,
+                            @Value("${cart.quote.max-entries:10000}") int maxEntries,
+                            @Value("${cart.quote.secret:}") String secret) {
+        this.orderPricingService = orderPricingService;
+        this.menuSnapshotCache = menuSnapshotCache;
+        this.ttlMillis = Math.max(1, ttlSeconds) * 1000L;
+        this.maxEntries = Math.max(1, maxEntries);
+        if (secret == null || secret.isBlank()) {
+            // 未配置时每次启动随机生成，重启后旧报价自然失效
+            this.secret = new byte[32];
+            random.nextBytes(this.secret);
+        } else {
+            this.secret = secret.trim().getBytes(StandardCharsets.UTF_8);
+        }
+        this.quotes = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, QuoteEntry> eldest) {
+                return size() > CartQuoteService.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 计价并生成报价；校验失败抛出 IllegalArgumentException（同 OrderPricingService.price）。
+     */
+    public Quote quote(Long restaurantId, List<CartLine> lines) {
+        PricedCart cart = orderPricingService.price(restaurantId, lines);
+
+        long nowMillis = System.currentTimeMillis();
+        long expiresAtMillis = nowMillis + ttlMillis;
+        LocalDateTime now = LocalDateTime.now();
+        Optional<LocalDateTime> nextChange = cart.menu().promotionTable().nextChangeAfter(now);
+        if (nextChange.isPresent()) {
+            long changeMillis = nextChange.get().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            expiresAtMillis = Math.min(expiresAtMillis, changeMillis);
+        }
+
+        byte[] idBytes = new byte[12];
+        random.nextBytes(idBytes);
+        String quoteId = Base64.getUrlEncoder().withoutPadding().encodeToString(idBytes);
+        String payload = quoteId + ":" + restaurantId + ":" + expiresAtMillis;
+        String token = encode(payload.getBytes(StandardCharsets.UTF_8)) + "." + encode(sign(payload));
+
+        Map<Long, Integer> normalized = normalize(lines);
+        PriceBasis basis = PriceBasis.of(cart.menu(), normalized.keySet());
+        synchronized (quotes) {
+            quotes.put(quoteId, new QuoteEntry(restaurantId, normalized, cart, basis, expiresAtMillis));
+        }
+        return new Quote(token, cart, expiresAtMillis);
+    }
+
+    /**
+     * 用报价下单：令牌有效、菜品与数量一致且菜单快照未变时返回当时的计价结果，否则返回 empty。
+     */
+    public Optional<PricedCart> redeem(String token, Long restaurantId, List<CartLine> lines) {
+        if (token == null || token.isBlank() || restaurantId == null) return Optional.empty();
+        String payload = verify(token.trim());
+        if (payload == null) return Optional.empty();
+
+        String[] parts = payload.split(":");
+        if (parts.length != 3) return Optional.empty();
+        long expiresAtMillis;
+        try {
+            if (!restaurantId.equals(Long.valueOf(parts[1]))) return Optional.empty();
+            expiresAtMillis = Long.parseLong(parts[2]);
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+        if (System.currentTimeMillis() >= expiresAtMillis) return Optional.empty();
+
+        QuoteEntry entry;
+        synchronized (quotes) {
+            entry = quotes.get(parts[0]);
+        }
+        if (entry == null || !entry.restaurantId().equals(restaurantId)) return Optional.empty();
+
+        Map<Long, Integer> requested = normalize(lines);
+        if (requested == null || !requested.equals(entry.lines())) return Optional.empty();
+
+        // 快照实例没变时菜单必然没变；实例变了（被失效或按 TTL 重载）再逐项比较报价依据
+        MenuSnapshot current = menuSnapshotCache.get(restaurantId).orElse(null);
+        if (current == null) return Optional.empty();
+        if (current != entry.cart().menu() && !entry.basis().equals(PriceBasis.of(current, entry.lines().keySet()))) {
+            return Optional.empty();
+        }
+        return Optional.of(entry.cart());
+    }
+
+    // 同一菜品多行合并；数量不合法时返回 null
+    private static Map<Long, Integer> normalize(List<CartLine> lines) {
+        if (lines == null || lines.isEmpty()) return null;
+        Map<Long, Integer> m = new TreeMap<>();
+        for (CartLine line : lines) {
+            if (line == null || line.dishId() == null || line.quantity() == null || line.quantity() <= 0) return null;
+            m.merge(line.dishId(), line.quantity(), Integer::sum);
+        }
+        return m;
+    }
+
+    private String verify(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0 || dot == token.length() - 1) return null;
+        try {
+            byte[] payloadBytes = Base64.getUrlDecoder().decode(token.substring(0, dot));
+            byte[] signature = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+            String payload = new String(payloadBytes, StandardCharsets.UTF_8);
+            if (!MessageDigest.isEqual(signature, sign(payload))) return null;
+            return payload;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private byte[] sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret, HMAC_ALGORITHM));
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to sign cart quote", e);
+        }
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    public record Quote(String token, PricedCart cart, long expiresAtMillis) {
+    }
+
+    private record QuoteEntry(Long restaurantId, Map<Long, Integer> lines, PricedCart cart, PriceBasis basis,
+                              long expiresAtMillis) {
+    }
+
+    /**
+     * 决定报价结果的菜单内容：所报菜品的上下架状态、原价与折后单价（菜品已删除时为 null），以及全部满减规则。
+     * 库存不在其中，下单时另行扣减校验。
+     */
+    private record PriceBasis(Map<Long, DishPrice> dishes, List<PromotionView> promotions) {
+
+        static PriceBasis of(MenuSnapshot menu, Iterable<Long> dishIds) {
+            Map<Long, DishPrice> dishes = new TreeMap<>();
+            for (Long id : dishIds) {
+                DishView d = menu.dishesById().get(id);
+                dishes.put(id, d == null ? null : new DishPrice(d.isAvailable(), d.listPrice(), d.payUnitPrice()));
+            }
+            return new PriceBasis(dishes, menu.promotions());
+        }
+    }
+
+    private record DishPrice(boolean available, Money listPrice, Money payUnitPrice) {
+    }
+}
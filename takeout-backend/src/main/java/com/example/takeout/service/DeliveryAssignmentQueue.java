@@ -0,0 +1,160 @@
+package com.example.takeout.service;
+
+import com.example.takeout.entity.CustomerOrder;
+import com.example.takeout.repository.CustomerOrderRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AUTO 派单模式下的异步派单队列：支付事务提交后投递订单号，由独立线程池选骑手，
+ * 暂无可用骑手或出错时按指数退避重试，支付请求不再等待骑手打分和地图接口。
+ */
+@Service
+public class DeliveryAssignmentQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(DeliveryAssignmentQueue.class);
+
+    private final DeliveryAssignmentService deliveryAssignmentService;
+    private final CustomerOrderRepository customerOrderRepository;
+    private final int maxAttempts;
+    private final long retryInitialMillis;
+    private final long retryMaxMillis;
+
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService retryTimer;
+    // 已在队列中或等待重试的订单，避免同一订单被重复投递
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+    private final Counter assigned;
+    private final Counter gaveUp;
+    private final Counter rejected;
+
+    public DeliveryAssignmentQueue(DeliveryAssignmentService deliveryAssignmentService,
+                                   CustomerOrderRepository customerOrderRepository,
+                                   MeterRegistry meterRegistry,
+                                   WorkerThreads workerThreads,
+                                   @Value("${delivery.assignment.workers:4}") int workerCount,
+                                   @Value("${delivery.assignment.queue-capacity:10000}") int queueCapacity,
+                                   @Value("${delivery.assignment.max-attempts:5}") int maxAttempts,
+                                   @Value("${delivery.assignment.retry-initial-ms:2000}") long retryInitialMillis,
+                                   @Value("${delivery.assignment.retry-max-ms:60000}") long retryMaxMillis) {
+        this.deliveryAssignmentService = deliveryAssignmentService;
+        this.customerOrderRepository = customerOrderRepository;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryInitialMillis = Math.max(100, retryInitialMillis);
+        this.retryMaxMillis = Math.max(this.retryInitialMillis, retryMaxMillis);
+
+        int n = Math.max(1, workerCount);
+        this.workers = new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, queueCapacity)),
+                workerThreads.numbered("delivery-assign-"));
+        this.retryTimer = Executors.newSingleThreadScheduledExecutor(workerThreads.named("delivery-assign-retry"));
+
+        Gauge.builder("delivery.assignment.queue.depth", workers, w -> w.getQueue().size())
+                .description("Paid orders waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("delivery.assignment.pending", pending, Set::size)
+                .description("Orders queued or waiting for retry")
+                .register(meterRegistry);
+        this.assigned = Counter.builder("delivery.assignment.assigned").register(meterRegistry);
+        this.gaveUp = Counter.builder("delivery.assignment.gave_up").register(meterRegistry);
+        this.rejected = Counter.builder("delivery.assignment.rejected").register(meterRegistry);
+    }
+
+    /**
+     * 投递一个待派单订单；处于事务中时等提交后再投递，避免工作线程读不到已支付状态。
+     */
+    public void submit(Long orderId) {
+        if (orderId == null) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(orderId);
+                }
+            });
+        } else {
+            enqueue(orderId);
+        }
+    }
+
+    private void enqueue(Long orderId) {
+        if (!pending.add(orderId)) return;
+        dispatch(orderId, 1);
+    }
+
+    private void dispatch(Long orderId, int attempt) {
+        try {
+            workers.execute(() -> process(orderId, attempt));
+        } catch (RejectedExecutionException e) {
+            // 队列已满或正在停机：放弃本次，HALL 兜底任务/管理员仍可处理
+            pending.remove(orderId);
+            rejected.increment();
+            log.warn("Delivery assignment queue full, dropped order {}", orderId);
+        }
+    }
+
+    private void process(Long orderId, int attempt) {
+        boolean retry;
+        try {
+            retry = deliveryAssignmentService.autoAssignIfPossible(orderId).isEmpty() && stillAssignable(orderId);
+            if (!retry) assigned.increment();
+        } catch (Exception e) {
+            log.warn("Auto assignment failed for order {} (attempt {})", orderId, attempt, e);
+            retry = true;
+        }
+        if (!retry) {
+            pending.remove(orderId);
+            return;
+        }
+        if (attempt >= maxAttempts) {
+            pending.remove(orderId);
+            gaveUp.increment();
+            log.info("Giving up auto assignment for order {} after {} attempts", orderId, attempt);
+            return;
+        }
+        long delay = Math.min(retryMaxMillis, retryInitialMillis << Math.min(20, attempt - 1));
+        try {
+            retryTimer.schedule(() -> dispatch(orderId, attempt + 1), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            pending.remove(orderId);
+        }
+    }
+
+    // 没分到骑手时，只有订单仍是已支付且未分配才值得重试
+    private boolean stillAssignable(Long orderId) {
+        Optional<CustomerOrder> orderOpt = customerOrderRepository.findById(orderId);
+        if (orderOpt.isEmpty()) return false;
+        CustomerOrder order = orderOpt.get();
+        return DeliveryAssignmentService.canAssign(order) && order.getDeliveryStaff() == null;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        retryTimer.shutdownNow();
+        workers.shutdown();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
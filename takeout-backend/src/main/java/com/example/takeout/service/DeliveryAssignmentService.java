@@ -4,36 +4,51 @@ import com.example.takeout.entity.CustomerOrder;
 import com.example.takeout.entity.DeliveryStaff;
 import com.example.takeout.repository.CustomerOrderRepository;
 import com.example.takeout.repository.DeliveryStaffRepository;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.beans.factory.annotation.Value;
 
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
 @Service
 public class DeliveryAssignmentService {
 
+    // 打分时每单在途负载折算成的距离（公里）
+    static final double LOAD_WEIGHT_KM = 0.8;
+
     private final CustomerOrderRepository customerOrderRepository;
     private final DeliveryStaffRepository deliveryStaffRepository;
-    private final ObjectMapper objectMapper;
-    private final HttpClient httpClient = HttpClient.newHttpClient();
-    private final String baiduAk;
+    private final RiderSpatialIndex riderSpatialIndex;
+    private final RouteMatrixService routeMatrixService;
+    private final OrderBundler orderBundler;
+    private final RiderHallFeed riderHallFeed;
+    private final OrderEventStream orderEventStream;
+    private final RiderLocationService riderLocationService;
+    private final int nearestK;
+    private final double searchRadiusKm;
 
     public DeliveryAssignmentService(CustomerOrderRepository customerOrderRepository,
                                      DeliveryStaffRepository deliveryStaffRepository,
-                                     ObjectMapper objectMapper,
-                                     @Value("${baidu.map.ak:}") String baiduAk) {
+                                     RiderSpatialIndex riderSpatialIndex,
+                                     RouteMatrixService routeMatrixService,
+                                     OrderBundler orderBundler,
+                                     RiderHallFeed riderHallFeed,
+                                     OrderEventStream orderEventStream,
+                                     RiderLocationService riderLocationService,
+                                     @Value("${delivery.assignment.nearest-k:20}") int nearestK,
+                                     @Value("${delivery.assignment.search-radius-km:10}") double searchRadiusKm) {
         this.customerOrderRepository = customerOrderRepository;
         this.deliveryStaffRepository = deliveryStaffRepository;
-        this.objectMapper = objectMapper;
-        this.baiduAk = baiduAk == null ? "" : baiduAk.trim();
+        this.riderSpatialIndex = riderSpatialIndex;
+        this.routeMatrixService = routeMatrixService;
+        this.orderBundler = orderBundler;
+        this.riderHallFeed = riderHallFeed;
+        this.orderEventStream = orderEventStream;
+        this.riderLocationService = riderLocationService;
+        this.nearestK = Math.max(1, nearestK);
+        this.searchRadiusKm = searchRadiusKm > 0 ? searchRadiusKm : 10;
     }
 
     @Transactional
@@ -45,10 +60,18 @@ public class DeliveryAssignmentService {
         if (order.getDeliveryStaff() != null && order.getDeliveryStaff().getId() != null) {
             return Optional.of(order.getDeliveryStaff());
         }
-        List<DeliveryStaff> candidates = deliveryStaffRepository.findAssignable();
-        if (candidates.isEmpty()) return Optional.empty();
-        DeliveryStaff staff = pickBest(order, candidates);
-        assign(order, staff);
+        List<DeliveryStaff> candidates = nearbyCandidates(order);
+        if (candidates.isEmpty()) {
+            candidates = deliveryStaffRepository.findAssignable();
+        }
+        Optional<OrderBundler.Offer> bundle = orderBundler.findOpenBundle(order);
+        if (candidates.isEmpty() && bundle.isEmpty()) return Optional.empty();
+        Pick pick = pickBest(order, candidates);
+        // 顺路合单只算额外一段路，比单独派给别的骑手更划算时就并进去
+        DeliveryStaff staff = bundle.isPresent() && (pick == null || bundle.get().score() <= pick.score())
+                ? bundle.get().staff()
+                : pick.staff();
+        if (!assign(order, staff)) return Optional.empty();
         return Optional.of(staff);
     }
 
@@ -71,17 +94,32 @@ public class DeliveryAssignmentService {
             if (prevId.equals(target.getId())) return Optional.of(target);
             decrementLoad(prevId);
         }
-        assign(order, target);
+        if (!assign(order, target)) return Optional.empty();
         return Optional.of(target);
     }
 
+    /**
+     * 批量派单的落地：订单仍待分配且骑手仍在线时才分配，否则返回空。
+     */
+    @Transactional
+    public Optional<DeliveryStaff> assignIfStillFree(Long orderId, Long deliveryStaffId) {
+        Optional<CustomerOrder> orderOpt = customerOrderRepository.findById(orderId);
+        if (orderOpt.isEmpty()) return Optional.empty();
+        CustomerOrder order = orderOpt.get();
+        if (!canAssign(order) || order.getDeliveryStaff() != null) return Optional.empty();
+        Optional<DeliveryStaff> staffOpt = deliveryStaffRepository.findById(deliveryStaffId);
+        if (staffOpt.isEmpty() || !"ACTIVE".equalsIgnoreCase(staffOpt.get().getStatus())) return Optional.empty();
+        if (!assign(order, staffOpt.get())) return Optional.empty();
+        return staffOpt;
+    }
+
     @Transactional
     public void decrementLoadIfAssigned(Long deliveryStaffId) {
         if (deliveryStaffId == null) return;
         decrementLoad(deliveryStaffId);
     }
 
-    private static boolean canAssign(CustomerOrder order) {
+    static boolean canAssign(CustomerOrder order) {
         if (order == null) return false;
         String payStatus = order.getPayStatus() == null ? "" : order.getPayStatus();
         String status = order.getStatus() == null ? "" : order.getStatus();
@@ -89,64 +127,55 @@ public class DeliveryAssignmentService {
                 && ("PAID".equalsIgnoreCase(status) || "DELIVERING".equalsIgnoreCase(status));
     }
 
-    private DeliveryStaff pickBest(CustomerOrder order, List<DeliveryStaff> candidates) {
+    // 先用内存索引取配送地址附近最近的 k 个骑手，再按 id 回库取最新状态和负载；附近没人时由调用方退回全量
+    private List<DeliveryStaff> nearbyCandidates(CustomerOrder order) {
+        Double lat = order.getDeliveryLat();
+        Double lng = order.getDeliveryLng();
+        if (lat == null || lng == null) return List.of();
+        List<Long> ids = riderSpatialIndex.nearest(lat, lng, nearestK, searchRadiusKm).stream()
+                .map(RiderSpatialIndex.Nearby::staffId)
+                .toList();
+        if (ids.isEmpty()) return List.of();
+        return deliveryStaffRepository.findAllById(ids).stream()
+                .filter(s -> "ACTIVE".equalsIgnoreCase(s.getStatus()))
+                .toList();
+    }
+
+    private Pick pickBest(CustomerOrder order, List<DeliveryStaff> candidates) {
         if (candidates == null || candidates.isEmpty()) return null;
         Double lat = order == null ? null : order.getDeliveryLat();
         Double lng = order == null ? null : order.getDeliveryLng();
         if (lat == null || lng == null) {
-            return candidates.get(0);
+            return new Pick(candidates.get(0), Double.POSITIVE_INFINITY);
         }
 
-        double loadWeight = 0.8;
+        // 有坐标的骑手一次性批量取驾车距离；坐标取内存里的最新上报
+        List<DeliveryStaff> located = new ArrayList<>(candidates.size());
+        List<BaiduMapService.Coord> origins = new ArrayList<>(candidates.size());
+        for (DeliveryStaff s : candidates) {
+            RiderLocationService.Fix fix = riderLocationService.positionOf(s);
+            if (fix == null) continue;
+            located.add(s);
+            origins.add(new BaiduMapService.Coord(fix.lat(), fix.lng()));
+        }
+        if (located.isEmpty()) return new Pick(candidates.get(0), Double.POSITIVE_INFINITY);
+        double[] distKm = routeMatrixService.drivingDistancesKm(origins, new BaiduMapService.Coord(lat, lng));
+
         DeliveryStaff best = null;
         double bestScore = Double.POSITIVE_INFINITY;
-        for (DeliveryStaff s : candidates) {
-            if (s == null) continue;
-            Double slat = s.getCurrentLat();
-            Double slng = s.getCurrentLng();
-            if (slat == null || slng == null) continue;
-            double distKm = resolveDistanceKm(slat, slng, lat, lng).orElseGet(() -> haversineKm(slat, slng, lat, lng));
+        for (int i = 0; i < located.size(); i++) {
+            DeliveryStaff s = located.get(i);
             int load = s.getCurrentLoad() == null ? 0 : s.getCurrentLoad();
-            double score = distKm + (load * loadWeight);
+            double score = distKm[i] + (load * LOAD_WEIGHT_KM);
             if (score < bestScore) {
                 bestScore = score;
                 best = s;
             }
         }
-        if (best != null) return best;
-        return candidates.get(0);
+        return new Pick(best, bestScore);
     }
 
-    private Optional<Double> resolveDistanceKm(double fromLat, double fromLng, double toLat, double toLng) {
-        if (baiduAk.isEmpty()) return Optional.empty();
-        try {
-            String url = "https://api.map.baidu.com/routematrix/v2/driving"
-                    + "?output=json"
-                    + "&origins=" + fromLat + "," + fromLng
-                    + "&destinations=" + toLat + "," + toLng
-                    + "&ak=" + baiduAk;
-            HttpRequest req = HttpRequest.newBuilder(URI.create(url))
-                    .GET()
-                    .header("User-Agent", "takeout-backend")
-                    .build();
-            HttpResponse<String> resp = httpClient.send(req, HttpResponse.BodyHandlers.ofString());
-            if (resp.statusCode() != 200) return Optional.empty();
-
-            JsonNode root = objectMapper.readTree(resp.body());
-            int status = root.path("status").asInt(-1);
-            if (status != 0) return Optional.empty();
-            JsonNode results = root.path("result");
-            if (!results.isArray() || results.isEmpty()) return Optional.empty();
-            JsonNode distance = results.get(0).path("distance");
-            double meters = distance.path("value").asDouble(-1);
-            if (meters <= 0) return Optional.empty();
-            return Optional.of(meters / 1000.0);
-        } catch (Exception ignored) {
-            return Optional.empty();
-        }
-    }
-
-    private static double haversineKm(double lat1, double lon1, double lat2, double lon2) {
+    static double haversineKm(double lat1, double lon1, double lat2, double lon2) {
         double r = 6371.0088;
         double dLat = Math.toRadians(lat2 - lat1);
         double dLon = Math.toRadians(lon2 - lon1);
@@ -156,21 +185,29 @@ public class DeliveryAssignmentService {
         return r * c;
     }
 
-    private void assign(CustomerOrder order, DeliveryStaff staff) {
-        if (order == null || staff == null) return;
-        order.setDeliveryStaff(staff);
-        customerOrderRepository.save(order);
-
-        Integer load = staff.getCurrentLoad() == null ? 0 : staff.getCurrentLoad();
-        staff.setCurrentLoad(load + 1);
-        deliveryStaffRepository.save(staff);
+    /**
+     * 落库分配。订单原本无人接时用条件更新占用，和骑手抢单并发时输的一方返回 false。
+     */
+    private boolean assign(CustomerOrder order, DeliveryStaff staff) {
+        if (order == null || staff == null) return false;
+        if (order.getDeliveryStaff() == null) {
+            if (customerOrderRepository.assignIfUnassigned(order.getId(), staff) == 0) return false;
+            // 同步内存里的实体，避免同一事务后续按旧值判断；此时已持有行锁，刷回也不会覆盖别人
+            order.setDeliveryStaff(staff);
+        } else {
+            order.setDeliveryStaff(staff);
+            customerOrderRepository.save(order);
+        }
+        deliveryStaffRepository.incrementLoad(staff.getId());
+        riderHallFeed.changed(order.getId());
+        orderEventStream.publish(order.getId(), OrderEventStream.ASSIGNED);
+        return true;
     }
 
     private void decrementLoad(Long staffId) {
-        deliveryStaffRepository.findById(staffId).ifPresent(staff -> {
-            Integer load = staff.getCurrentLoad() == null ? 0 : staff.getCurrentLoad();
-            staff.setCurrentLoad(Math.max(0, load - 1));
-            deliveryStaffRepository.save(staff);
-        });
+        deliveryStaffRepository.decrementLoad(staffId);
+    }
+
+    private record Pick(DeliveryStaff staff, double score) {
     }
 }
@@ -0,0 +1,21 @@
+package com.example.takeout.service;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 本地（不走网络）的驾车距离来源。配置了才有实现，调用方按 Optional 注入，
+ * 拿不到结果的部分仍走百度接口或直线距离。
+ */
+public interface DistanceProvider {
+
+    /**
+     * 每个起点到终点的驾车距离（公里），顺序与 origins 一致；算不出的（不在路网范围内、不可达）为 NaN。
+     */
+    double[] drivingDistancesKm(List<BaiduMapService.Coord> origins, BaiduMapService.Coord destination);
+
+    /**
+     * 单段驾车路线；算不出时为空。
+     */
+    Optional<BaiduMapService.RouteInfo> drivingRoute(double fromLat, double fromLng, double toLat, double toLng);
+}
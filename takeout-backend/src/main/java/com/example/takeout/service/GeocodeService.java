@@ -0,0 +1,316 @@
+package com.example.takeout.service;
+
+import com.example.takeout.entity.GeocodeEntry;
+import com.example.takeout.entity.Restaurant;
+import com.example.takeout.repository.GeocodeEntryRepository;
+import com.example.takeout.repository.RestaurantRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.text.Normalizer;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 地址解析缓存：按规范化后的地址文本（同一栋楼的不同房间视为同一地址）存到 geocode_cache，
+ * 饭店、收货地址、订单共用。保存地址时把解析任务交给后台线程，调百度接口并写缓存，
+ * 需要时再把坐标回填到饭店 / 订单上；路线等请求只查缓存，不在请求线程里调地图接口。
+ */
+@Service
+public class GeocodeService {
+
+    private static final Logger log = LoggerFactory.getLogger(GeocodeService.class);
+
+    private static final String OK = "OK";
+    private static final String NOT_FOUND = "NOT_FOUND";
+
+    private static final String FILL_RESTAURANT_SQL =
+            "update restaurants set lat = ?, lng = ? where id = ? and (lat is null or lng is null)";
+    private static final String FILL_ORDER_SQL =
+            "update orders set delivery_lat = ?, delivery_lng = ? where id = ? and (delivery_lat is null or delivery_lng is null)";
+
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    // 楼栋标记（88号、3栋、A座、5号楼……），其后只剩单元/楼层/房间号时截掉
+    private static final Pattern BUILDING = Pattern.compile("[0-9a-z]+(号楼|号院|栋|幢|座|号)");
+    private static final Pattern ROOM_TAIL = Pattern.compile("[-0-9a-z单元层楼室房号#]*");
+
+    private final GeocodeEntryRepository geocodeEntryRepository;
+    private final RestaurantRepository restaurantRepository;
+    private final BaiduMapService baiduMapService;
+    private final JdbcTemplate jdbcTemplate;
+    private final long retryMillis;
+    private final int maxEntries;
+
+    // 规范化地址 -> 解析结果（含解析失败）；库里的一份热数据
+    private final LinkedHashMap<String, Cached> cache;
+    private final ThreadPoolExecutor worker;
+    private final Set<Task> queued = ConcurrentHashMap.newKeySet();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter lookups;
+    private final Counter dropped;
+
+    public GeocodeService(GeocodeEntryRepository geocodeEntryRepository,
+                          RestaurantRepository restaurantRepository,
+                          BaiduMapService baiduMapService,
+                          JdbcTemplate jdbcTemplate,
+                          MeterRegistry meterRegistry,
+                          WorkerThreads workerThreads,
+                          @Value("${delivery.geocode.queue-capacity:10000}") int queueCapacity,
+                          @Value("${delivery.geocode.retry-hours:24}") long retryHours,
+                          @Value("${delivery.geocode.cache-max-entries:20000}") int maxEntries) {
+        this.geocodeEntryRepository = geocodeEntryRepository;
+        this.restaurantRepository = restaurantRepository;
+        this.baiduMapService = baiduMapService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.retryMillis = Math.max(1, retryHours) * 3600_000L;
+        this.maxEntries = Math.max(16, maxEntries);
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                return size() > GeocodeService.this.maxEntries;
+            }
+        };
+        // 单线程顺序解析：同一地址排队的多个任务只有第一个真正调接口，也顺带限制了对地图接口的并发
+        this.worker = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, queueCapacity)),
+                workerThreads.named("geocode-worker"));
+
+        this.hits = Counter.builder("geocode.cache.hits").register(meterRegistry);
+        this.misses = Counter.builder("geocode.cache.misses").register(meterRegistry);
+        this.lookups = Counter.builder("geocode.lookups").register(meterRegistry);
+        this.dropped = Counter.builder("geocode.dropped").register(meterRegistry);
+        Gauge.builder("geocode.queue.size", worker, w -> w.getQueue().size())
+                .register(meterRegistry);
+    }
+
+    /**
+     * 启动时把还没有坐标的饭店排进解析队列。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (!enabled()) return;
+        for (Restaurant r : restaurantRepository.findByAddressIsNotNullAndLatIsNull()) {
+            prefetchForRestaurant(r.getId(), r.getAddress());
+        }
+    }
+
+    /**
+     * 只查缓存（内存、库），不调地图接口；没有结果时排进后台解析，返回空。
+     */
+    public Optional<BaiduMapService.Coord> cached(String address) {
+        return cached(address, null, null);
+    }
+
+    /**
+     * 同 {@link #cached(String)}，并在解析到坐标后回填到饭店上。
+     */
+    public Optional<BaiduMapService.Coord> cachedForRestaurant(Long restaurantId, String address) {
+        return cached(address, Target.RESTAURANT, restaurantId);
+    }
+
+    /**
+     * 同 {@link #cached(String)}，并在解析到坐标后回填到订单上。
+     */
+    public Optional<BaiduMapService.Coord> cachedForOrder(Long orderId, String address) {
+        return cached(address, Target.ORDER, orderId);
+    }
+
+    /**
+     * 地址保存后预先解析，只写缓存。
+     */
+    public void prefetch(String address) {
+        submitAfterCommit(address, null, null);
+    }
+
+    /**
+     * 饭店地址保存后预先解析，解析到后回填饭店坐标（只填空着的）。
+     */
+    public void prefetchForRestaurant(Long restaurantId, String address) {
+        submitAfterCommit(address, Target.RESTAURANT, restaurantId);
+    }
+
+    /**
+     * 订单没有收货坐标时预先解析，解析到后回填订单坐标（只填空着的）。
+     */
+    public void prefetchForOrder(Long orderId, String address) {
+        submitAfterCommit(address, Target.ORDER, orderId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    /**
+     * 规范化地址：全角转半角、去空白、转小写，楼栋号之后只剩单元/楼层/房间号的部分截掉。
+     */
+    public static String normalize(String address) {
+        if (address == null) return "";
+        String s = Normalizer.normalize(address, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        s = SPACES.matcher(s).replaceAll("");
+        Matcher m = BUILDING.matcher(s);
+        int cut = -1;
+        while (m.find()) {
+            if (ROOM_TAIL.matcher(s.substring(m.end())).matches()) {
+                cut = m.end();
+                break;
+            }
+        }
+        if (cut > 0) s = s.substring(0, cut);
+        return s.length() > 255 ? s.substring(0, 255) : s;
+    }
+
+    private Optional<BaiduMapService.Coord> cached(String address, Target target, Long targetId) {
+        String key = normalize(address);
+        if (key.isEmpty()) return Optional.empty();
+        Cached c = load(key);
+        if (c != null && c.coord() != null) {
+            hits.increment();
+            // 命中也排一次回填（不调接口），之后这个饭店/订单就自带坐标了
+            if (target != null) submit(new Task(key, address, target, targetId));
+            return Optional.of(c.coord());
+        }
+        misses.increment();
+        if (c == null || c.isStale(System.currentTimeMillis(), retryMillis)) {
+            submit(new Task(key, address, target, targetId));
+        }
+        return Optional.empty();
+    }
+
+    private void submitAfterCommit(String address, Target target, Long targetId) {
+        String key = normalize(address);
+        if (key.isEmpty() || !enabled()) return;
+        Task task = new Task(key, address, target, targetId);
+        // 新建的饭店/订单要等事务提交后才能被回填语句看到
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(task);
+                }
+            });
+        } else {
+            submit(task);
+        }
+    }
+
+    private void submit(Task task) {
+        if (!enabled()) return;
+        // 同一任务还在排队时不重复排（路线页反复刷新）
+        if (!queued.add(task)) return;
+        try {
+            worker.execute(() -> {
+                queued.remove(task);
+                try {
+                    resolve(task);
+                } catch (Exception e) {
+                    log.warn("Geocode task failed for {}", task.key(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 队列已满或正在关闭：下次用到这个地址时会再排队
+            queued.remove(task);
+            dropped.increment();
+        }
+    }
+
+    private void resolve(Task task) {
+        long now = System.currentTimeMillis();
+        Cached c = load(task.key());
+        if (c == null || (c.coord() == null && c.isStale(now, retryMillis))) {
+            lookups.increment();
+            Optional<BaiduMapService.Coord> coord = baiduMapService.geocode(task.address());
+            c = store(task, coord.orElse(null));
+        }
+        if (c.coord() == null || task.target() == null) return;
+        String sql = task.target() == Target.RESTAURANT ? FILL_RESTAURANT_SQL : FILL_ORDER_SQL;
+        jdbcTemplate.update(sql, c.coord().lat(), c.coord().lng(), task.targetId());
+    }
+
+    private Cached load(String key) {
+        synchronized (cache) {
+            Cached c = cache.get(key);
+            if (c != null) return c;
+        }
+        Cached c = geocodeEntryRepository.findByAddressKey(key).map(GeocodeService::toCached).orElse(null);
+        if (c != null) {
+            synchronized (cache) {
+                cache.put(key, c);
+            }
+        }
+        return c;
+    }
+
+    private Cached store(Task task, BaiduMapService.Coord coord) {
+        GeocodeEntry e = geocodeEntryRepository.findByAddressKey(task.key()).orElseGet(GeocodeEntry::new);
+        e.setAddressKey(task.key());
+        if (e.getAddress() == null) e.setAddress(task.address().length() > 255 ? task.address().substring(0, 255) : task.address());
+        e.setLat(coord == null ? null : coord.lat());
+        e.setLng(coord == null ? null : coord.lng());
+        e.setStatus(coord == null ? NOT_FOUND : OK);
+        e.setUpdatedAt(LocalDateTime.now());
+        try {
+            e = geocodeEntryRepository.save(e);
+        } catch (DataIntegrityViolationException ex) {
+            // 其他实例刚写入同一地址，以库里的为准
+            e = geocodeEntryRepository.findByAddressKey(task.key()).orElse(e);
+        }
+        Cached c = toCached(e);
+        synchronized (cache) {
+            cache.put(task.key(), c);
+        }
+        return c;
+    }
+
+    private boolean enabled() {
+        return !baiduMapService.getAk().isEmpty();
+    }
+
+    private static Cached toCached(GeocodeEntry e) {
+        BaiduMapService.Coord coord = OK.equals(e.getStatus()) && e.getLat() != null && e.getLng() != null
+                ? new BaiduMapService.Coord(e.getLat(), e.getLng())
+                : null;
+        long at = e.getUpdatedAt() == null ? 0
+                : e.getUpdatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return new Cached(coord, at);
+    }
+
+    private enum Target {
+        RESTAURANT, ORDER
+    }
+
+    private record Task(String key, String address, Target target, Long targetId) {
+    }
+
+    private record Cached(BaiduMapService.Coord coord, long updatedAtMillis) {
+        boolean isStale(long now, long retryMillis) {
+            return now - updatedAtMillis >= retryMillis;
+        }
+    }
+}
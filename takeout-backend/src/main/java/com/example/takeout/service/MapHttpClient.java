@@ -0,0 +1,231 @@
+package com.example.takeout.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * 地图接口共用的 HTTP 客户端：一个 HttpClient、全部 sendAsync，带连接/请求超时和全局并发上限。
+ * 每个接口（geocode、route、routematrix……）各有一个熔断器：最近若干次调用失败率过高时熔断一段时间，
+ * 期间直接返回空，调用方照常走直线距离等兜底；到期后放一个探测请求，成功才恢复。
+ * 百度接口的业务错误（配额、并发超限、AK 失效等）放在 HTTP 200 的响应体里，由调用方传入的判断决定是否算失败。
+ * 返回的 future 不会异常完成，拿不到 200 响应体、或响应体被判为失败时结果为空。
+ */
+@Service
+public class MapHttpClient {
+
+    private final HttpClient httpClient;
+    private final MeterRegistry meterRegistry;
+    private final String baseUrl;
+    private final Duration requestTimeout;
+    private final int maxConcurrent;
+    private final Semaphore permits;
+    private final int windowSize;
+    private final int minCalls;
+    private final int failureRatePercent;
+    private final long openMillis;
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    public MapHttpClient(MeterRegistry meterRegistry,
+                         WorkerThreads workerThreads,
+                         @Value("${baidu.map.base-url:https://api.map.baidu.com}") String baseUrl,
+                         @Value("${baidu.map.client.connect-timeout-ms:1000}") long connectTimeoutMillis,
+                         @Value("${baidu.map.client.request-timeout-ms:3000}") long requestTimeoutMillis,
+                         @Value("${baidu.map.client.max-concurrent:32}") int maxConcurrent,
+                         @Value("${baidu.map.client.breaker.window:20}") int windowSize,
+                         @Value("${baidu.map.client.breaker.min-calls:10}") int minCalls,
+                         @Value("${baidu.map.client.breaker.failure-rate-percent:50}") int failureRatePercent,
+                         @Value("${baidu.map.client.breaker.open-ms:30000}") long openMillis) {
+        this.meterRegistry = meterRegistry;
+        String b = baseUrl == null || baseUrl.isBlank() ? "https://api.map.baidu.com" : baseUrl.trim();
+        this.baseUrl = b.endsWith("/") ? b.substring(0, b.length() - 1) : b;
+        this.requestTimeout = Duration.ofMillis(Math.max(50, requestTimeoutMillis));
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.permits = new Semaphore(this.maxConcurrent);
+        this.windowSize = Math.max(1, windowSize);
+        this.minCalls = Math.max(1, Math.min(this.windowSize, minCalls));
+        this.failureRatePercent = Math.max(1, Math.min(100, failureRatePercent));
+        this.openMillis = Math.max(1000, openMillis);
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(Math.max(50, connectTimeoutMillis)));
+        if (workerThreads.isVirtual()) {
+            // 默认是一个无上限的平台线程池；虚拟线程模式下回调也跑在虚拟线程上
+            builder.executor(Executors.newThreadPerTaskExecutor(workerThreads.numbered("map-http-")));
+        }
+        this.httpClient = builder.build();
+
+        Gauge.builder("map.client.inflight", this, c -> c.maxConcurrent - c.permits.availablePermits())
+                .register(meterRegistry);
+    }
+
+    public CompletableFuture<Optional<String>> get(String endpoint, String pathAndQuery) {
+        return get(endpoint, pathAndQuery, requestTimeout, body -> true);
+    }
+
+    public CompletableFuture<Optional<String>> get(String endpoint, String pathAndQuery, Predicate<String> serviceOk) {
+        return get(endpoint, pathAndQuery, requestTimeout, serviceOk);
+    }
+
+    /**
+     * GET baseUrl + pathAndQuery。熔断中或并发已满时立即返回空，不排队等待。
+     * serviceOk 判断 200 响应体在业务上是否成功，返回 false 或抛异常时按失败计入熔断器。
+     */
+    public CompletableFuture<Optional<String>> get(String endpoint, String pathAndQuery, Duration timeout, Predicate<String> serviceOk) {
+        Endpoint ep = endpoints.computeIfAbsent(endpoint, this::newEndpoint);
+        long now = System.currentTimeMillis();
+        Admission admission = ep.breaker.admit(now);
+        if (admission == Admission.REJECTED) {
+            ep.rejectedOpen.increment();
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        if (!permits.tryAcquire()) {
+            ep.breaker.abandon(admission);
+            ep.rejectedSaturated.increment();
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        long start = System.nanoTime();
+        try {
+            HttpRequest req = HttpRequest.newBuilder(URI.create(baseUrl + pathAndQuery))
+                    .GET()
+                    .timeout(timeout.compareTo(requestTimeout) < 0 ? timeout : requestTimeout)
+                    .header("User-Agent", "takeout-backend")
+                    .build();
+            return httpClient.sendAsync(req, HttpResponse.BodyHandlers.ofString())
+                    .handle((resp, e) -> {
+                        permits.release();
+                        ep.latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        boolean ok = e == null && resp.statusCode() == 200 && serviceOk(serviceOk, resp.body());
+                        if (!ok) ep.failures.increment();
+                        ep.breaker.record(admission, ok, System.currentTimeMillis());
+                        return ok ? Optional.of(resp.body()) : Optional.<String>empty();
+                    });
+        } catch (Exception e) {
+            // URL 拼错之类的本地错误，不算接口失败
+            permits.release();
+            ep.breaker.abandon(admission);
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+    }
+
+    private static boolean serviceOk(Predicate<String> serviceOk, String body) {
+        try {
+            return serviceOk.test(body);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private Endpoint newEndpoint(String name) {
+        Breaker breaker = new Breaker(windowSize, minCalls, failureRatePercent, openMillis);
+        Gauge.builder("map.client.breaker.state", breaker, b -> b.state(System.currentTimeMillis()))
+                .description("0 closed, 1 open, 2 half-open")
+                .tag("endpoint", name)
+                .register(meterRegistry);
+        return new Endpoint(
+                breaker,
+                Timer.builder("map.client.latency")
+                        .tag("endpoint", name)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry),
+                Counter.builder("map.client.failures").tag("endpoint", name).register(meterRegistry),
+                Counter.builder("map.client.rejected").tag("endpoint", name).tag("reason", "open").register(meterRegistry),
+                Counter.builder("map.client.rejected").tag("endpoint", name).tag("reason", "saturated").register(meterRegistry));
+    }
+
+    private record Endpoint(Breaker breaker, Timer latency, Counter failures, Counter rejectedOpen, Counter rejectedSaturated) {
+    }
+
+    private enum Admission {
+        CLOSED, PROBE, REJECTED
+    }
+
+    /**
+     * 按最近 window 次调用计失败率的熔断器。熔断到期后只放行一个探测请求，
+     * 探测的结果决定恢复还是继续熔断；熔断前已发出的请求晚到的结果不计入。
+     */
+    private static final class Breaker {
+        private final boolean[] outcomes;
+        private final int minCalls;
+        private final int failureRatePercent;
+        private final long openMillis;
+        private int next;
+        private int count;
+        private int failures;
+        private long openUntil;
+        private boolean probing;
+
+        Breaker(int window, int minCalls, int failureRatePercent, long openMillis) {
+            this.outcomes = new boolean[window];
+            this.minCalls = minCalls;
+            this.failureRatePercent = failureRatePercent;
+            this.openMillis = openMillis;
+        }
+
+        synchronized Admission admit(long now) {
+            if (openUntil == 0) return Admission.CLOSED;
+            if (now < openUntil || probing) return Admission.REJECTED;
+            probing = true;
+            return Admission.PROBE;
+        }
+
+        synchronized void record(Admission admission, boolean ok, long now) {
+            if (admission == Admission.PROBE) {
+                probing = false;
+                if (ok) {
+                    openUntil = 0;
+                    next = 0;
+                    count = 0;
+                    failures = 0;
+                } else {
+                    openUntil = now + openMillis;
+                }
+                return;
+            }
+            if (openUntil != 0) return;
+            if (count == outcomes.length) {
+                if (!outcomes[next]) failures--;
+            } else {
+                count++;
+            }
+            outcomes[next] = ok;
+            if (!ok) failures++;
+            next = (next + 1) % outcomes.length;
+            if (count >= minCalls && failures * 100 >= failureRatePercent * count) {
+                openUntil = now + openMillis;
+                next = 0;
+                count = 0;
+                failures = 0;
+            }
+        }
+
+        /**
+         * 放行了但没真正发出请求（并发已满等），归还探测名额。
+         */
+        synchronized void abandon(Admission admission) {
+            if (admission == Admission.PROBE) probing = false;
+        }
+
+        synchronized int state(long now) {
+            if (openUntil == 0) return 0;
+            return now < openUntil && !probing ? 1 : 2;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.takeout.service;
+
+import com.example.takeout.entity.Dish;
+import com.example.takeout.entity.DishCategory;
+import com.example.takeout.entity.RestaurantPromotion;
+import com.example.takeout.repository.DishCategoryRepository;
+import com.example.takeout.repository.DishRepository;
+import com.example.takeout.repository.RestaurantPromotionRepository;
+import com.example.takeout.repository.RestaurantRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 每个饭店一份不可变的菜单快照（菜品、分类、满减规则），供公开浏览和下单计价共用。
+ * 商家改菜单/满减时调用 {@link #evict(Long)} 失效；TTL 只是兜底，防止绕过控制器的写入长期不可见。
+ * 失效只作用于本节点：多实例部署时，其他节点在 TTL（menu.cache.ttl-seconds）内仍可能按旧菜单展示和计价。
+ */
+@Service
+public class MenuSnapshotCache {
+
+    private final RestaurantRepository restaurantRepository;
+    private final DishRepository dishRepository;
+    private final DishCategoryRepository dishCategoryRepository;
+    private final RestaurantPromotionRepository restaurantPromotionRepository;
+    private final int maxRestaurants;
+    private final long ttlMillis;
+
+    private final Map<Long, MenuSnapshot> snapshots;
+    private final AtomicLong generation = new AtomicLong();
+
+    public MenuSnapshotCache(RestaurantRepository restaurantRepository,
+                             DishRepository dishRepository,
+                             DishCategoryRepository dishCategoryRepository,
+                             RestaurantPromotionRepository restaurantPromotionRepository,
+                             @Value("${menu.cache.max-restaurants:500}") int maxRestaurants,
+                             @Value("${menu.cache.ttl-seconds:60}") long ttlSeconds) {
+        this.restaurantRepository = restaurantRepository;
+        this.dishRepository = dishRepository;
+        this.dishCategoryRepository = dishCategoryRepository;
+        this.restaurantPromotionRepository = restaurantPromotionRepository;
+        this.maxRestaurants = Math.max(1, maxRestaurants);
+        this.ttlMillis = Math.max(1, ttlSeconds) * 1000L;
+        this.snapshots = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MenuSnapshot> eldest) {
+                return size() > MenuSnapshotCache.this.maxRestaurants;
+            }
+        };
+    }
+
+    /**
+     * 返回饭店的菜单快照；饭店不存在时返回 empty（不做负缓存）。
+     */
+    public Optional<MenuSnapshot> get(Long restaurantId) {
+        if (restaurantId == null) return Optional.empty();
+        long now = System.currentTimeMillis();
+        synchronized (snapshots) {
+            MenuSnapshot cached = snapshots.get(restaurantId);
+            if (cached != null && now - cached.loadedAtMillis() < ttlMillis) {
+                return Optional.of(cached);
+            }
+        }
+
+        long gen = generation.get();
+        Optional<MenuSnapshot> loaded = load(restaurantId, now);
+        loaded.ifPresent(snapshot -> {
+            synchronized (snapshots) {
+                // 加载期间发生过失效则丢弃本次结果，避免把旧数据写回缓存
+                if (generation.get() == gen) {
+                    snapshots.put(restaurantId, snapshot);
+                }
+            }
+        });
+        return loaded;
+    }
+
+    /**
+     * 失效某饭店的快照。处于事务中时，提交后会再失效一次，避免并发读在提交前把旧数据重新装回。
+     */
+    public void evict(Long restaurantId) {
+        if (restaurantId == null) return;
+        evictNow(restaurantId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictNow(restaurantId);
+                }
+            });
+        }
+    }
+
+    private void evictNow(Long restaurantId) {
+        synchronized (snapshots) {
+            generation.incrementAndGet();
+            snapshots.remove(restaurantId);
+        }
+    }
+
+    private Optional<MenuSnapshot> load(Long restaurantId, long now) {
+        if (!restaurantRepository.existsById(restaurantId)) return Optional.empty();
+
+        List<DishView> dishes = dishRepository.findByRestaurant_Id(restaurantId).stream()
+                .map(MenuSnapshotCache::toView)
+                .toList();
+        List<CategoryView> categories = dishCategoryRepository.findByRestaurant_Id(restaurantId).stream()
+                .map(c -> new CategoryView(c.getId(), c.getName(), c.getSortOrder()))
+                .sorted(Comparator.comparing(CategoryView::sortOrder, Comparator.nullsLast(Comparator.naturalOrder()))
+                        .thenComparing(CategoryView::id))
+                .toList();
+        List<PromotionView> promotions = restaurantPromotionRepository.findByRestaurant_IdOrderByCreatedAtDesc(restaurantId).stream()
+                .filter(p -> "ACTIVE".equalsIgnoreCase(p.getStatus()))
+                .map(MenuSnapshotCache::toView)
+                .sorted(Comparator.comparing(PromotionView::thresholdAmount).reversed()
+                        .thenComparing(Comparator.comparing(PromotionView::discountAmount).reversed())
+                        .thenComparing(Comparator.comparing(PromotionView::id).reversed()))
+                .toList();
+
+        Map<Long, DishView> byId = dishes.stream().collect(Collectors.toUnmodifiableMap(DishView::id, Function.identity()));
+        return Optional.of(new MenuSnapshot(restaurantId, dishes, byId, categories, promotions,
+                PromotionTable.compile(promotions), now));
+    }
+
+    private static DishView toView(Dish d) {
+        DishCategory category = d.getCategory();
+        Money listPrice = Money.ofYuan(d.getPrice());
+        return new DishView(
+                d.getId(),
+                category != null ? category.getId() : null,
+                d.getName(),
+                d.getPrice(),
+                d.getStatus(),
+                d.getStock(),
+                d.getDiscountType(),
+                d.getDiscountValue(),
+                listPrice,
+                OrderPricingService.calcPayUnitPrice(d.getDiscountType(), d.getDiscountValue(), listPrice)
+        );
+    }
+
+    private static PromotionView toView(RestaurantPromotion p) {
+        return new PromotionView(
+                p.getId(),
+                p.getType(),
+                p.getThresholdAmount() == null ? BigDecimal.ZERO : p.getThresholdAmount(),
+                p.getDiscountAmount() == null ? BigDecimal.ZERO : p.getDiscountAmount(),
+                p.getStartAt(),
+                p.getEndAt()
+        );
+    }
+
+    public record MenuSnapshot(Long restaurantId,
+                               List<DishView> dishes,
+                               Map<Long, DishView> dishesById,
+                               List<CategoryView> categories,
+                               List<PromotionView> promotions,
+                               PromotionTable promotionTable,
+                               long loadedAtMillis) {
+
+        public List<DishView> availableDishes() {
+            return dishes.stream().filter(DishView::isAvailable).toList();
+        }
+
+        /**
+         * 当前时间生效的满减规则，顺序同 RestaurantPromotionRepository.findActiveAt。
+         */
+        public List<PromotionView> activePromotionsAt(LocalDateTime now) {
+            return promotions.stream().filter(p -> p.activeAt(now)).toList();
+        }
+    }
+
+    public record DishView(Long id,
+                           Long categoryId,
+                           String name,
+                           BigDecimal price,
+                           String status,
+                           Integer stock,
+                           String discountType,
+                           BigDecimal discountValue,
+                           Money listPrice,
+                           Money payUnitPrice) {
+
+        public boolean isAvailable() {
+            return "AVAILABLE".equalsIgnoreCase(status);
+        }
+    }
+
+    public record CategoryView(Long id, String name, Integer sortOrder) {
+    }
+
+    public record PromotionView(Long id,
+                                String type,
+                                BigDecimal thresholdAmount,
+                                BigDecimal discountAmount,
+                                LocalDateTime startAt,
+                                LocalDateTime endAt) {
+
+        public boolean activeAt(LocalDateTime now) {
+            if (startAt != null && startAt.isAfter(now)) return false;
+            return endAt == null || !endAt.isBefore(now);
+        }
+    }
+}
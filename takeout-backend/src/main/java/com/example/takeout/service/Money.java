@@ -0,0 +1,142 @@
+package com.example.takeout.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 以“分”为单位的定点金额，用于下单计价热路径，避免每个菜品行都分配一串 BigDecimal。
+ * 舍入规则统一为 HALF_UP（与原 BigDecimal 实现一致），只在读写实体时与 BigDecimal 互转。
+ * 数据库金额字段均为 DECIMAL(x,2)，因此 {@link #ofYuan(BigDecimal)} 对库中数据是精确的。
+ */
+public final class Money implements Comparable<Money> {
+
+    public static final Money ZERO = new Money(0L);
+
+    private static final long[] POW10 = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+            1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L,
+            10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L
+    };
+
+    private final long fen;
+
+    private Money(long fen) {
+        this.fen = fen;
+    }
+
+    public static Money ofFen(long fen) {
+        return fen == 0L ? ZERO : new Money(fen);
+    }
+
+    /**
+     * 元 -> 分，超过两位小数的部分按 HALF_UP 舍入；null 视为 0。
+     */
+    public static Money ofYuan(BigDecimal yuan) {
+        if (yuan == null) return ZERO;
+        return ofFen(yuan.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact());
+    }
+
+    public long fen() {
+        return fen;
+    }
+
+    /**
+     * 微信支付金额（分，int）。
+     */
+    public int toFenInt() {
+        return Math.toIntExact(fen);
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(fen, 2);
+    }
+
+    public Money plus(Money other) {
+        return ofFen(Math.addExact(fen, other.fen));
+    }
+
+    public Money minus(Money other) {
+        return ofFen(Math.subtractExact(fen, other.fen));
+    }
+
+    public Money times(long quantity) {
+        return ofFen(Math.multiplyExact(fen, quantity));
+    }
+
+    /**
+     * 乘以任意系数，结果按 HALF_UP 舍入到分。
+     */
+    public Money multiplyHalfUp(BigDecimal factor) {
+        if (factor == null) return ZERO;
+        if (factor.precision() > 18) return ofFen(slowScale(fen, factor));
+        return ofFen(scaleHalfUp(fen, factor.unscaledValue().longValue(), factor.scale(), factor));
+    }
+
+    /**
+     * 按百分比（如 5.5 表示 5.5%）计算，结果按 HALF_UP 舍入到分。
+     */
+    public Money percentHalfUp(BigDecimal percent) {
+        if (percent == null) return ZERO;
+        return multiplyHalfUp(percent.movePointLeft(2));
+    }
+
+    public Money atLeastZero() {
+        return fen < 0 ? ZERO : this;
+    }
+
+    public Money min(Money other) {
+        return fen <= other.fen ? this : other;
+    }
+
+    public boolean isPositive() {
+        return fen > 0;
+    }
+
+    public boolean isNegative() {
+        return fen < 0;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(fen, other.fen);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money m && m.fen == fen;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(fen);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+
+    // fen * unscaled * 10^-scale，HALF_UP；溢出或精度超出 long 时退回 BigDecimal
+    private static long scaleHalfUp(long fen, long unscaled, int scale, BigDecimal factor) {
+        if (scale >= 0 && scale < POW10.length) {
+            long product;
+            try {
+                product = Math.multiplyExact(fen, unscaled);
+            } catch (ArithmeticException overflow) {
+                return slowScale(fen, factor);
+            }
+            long den = POW10[scale];
+            long q = product / den;
+            long r = product % den;
+            if (Math.abs(r) * 2 >= den) {
+                q += product < 0 ? -1 : 1;
+            }
+            return q;
+        }
+        return slowScale(fen, factor);
+    }
+
+    private static long slowScale(long fen, BigDecimal factor) {
+        return BigDecimal.valueOf(fen).multiply(factor).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+}
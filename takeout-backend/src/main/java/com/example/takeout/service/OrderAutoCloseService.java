@@ -4,7 +4,6 @@ import com.example.takeout.entity.DeliveryStaff;
 import com.example.takeout.entity.CustomerOrder;
 import com.example.takeout.entity.PaymentLog;
 import com.example.takeout.repository.CustomerOrderRepository;
-import com.example.takeout.repository.PaymentLogRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
@@ -13,13 +12,17 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class OrderAutoCloseService {
 
     private final CustomerOrderRepository customerOrderRepository;
-    private final PaymentLogRepository paymentLogRepository;
+    private final PaymentLogSink paymentLogSink;
     private final DeliveryAssignmentService deliveryAssignmentService;
+    private final BatchAssignmentService batchAssignmentService;
+    private final RiderHallFeed riderHallFeed;
+    private final OrderEventStream orderEventStream;
 
     private final long unpaidTimeoutMinutes;
     private final long paidUnassignedAutoAssignMinutes;
@@ -27,15 +30,21 @@ public class OrderAutoCloseService {
     private final String deliveryAssignmentMode;
 
     public OrderAutoCloseService(CustomerOrderRepository customerOrderRepository,
-                                 PaymentLogRepository paymentLogRepository,
+                                 PaymentLogSink paymentLogSink,
                                  DeliveryAssignmentService deliveryAssignmentService,
+                                 BatchAssignmentService batchAssignmentService,
+                                 RiderHallFeed riderHallFeed,
+                                 OrderEventStream orderEventStream,
                                  @Value("${order.timeout.unpaid-minutes:15}") long unpaidTimeoutMinutes,
                                  @Value("${order.timeout.paid-unassigned-auto-assign-minutes:0}") long paidUnassignedAutoAssignMinutes,
                                  @Value("${order.timeout.paid-unassigned-minutes:0}") long paidUnassignedTimeoutMinutes,
                                  @Value("${delivery.assignment.mode:HALL}") String deliveryAssignmentMode) {
         this.customerOrderRepository = customerOrderRepository;
-        this.paymentLogRepository = paymentLogRepository;
+        this.paymentLogSink = paymentLogSink;
         this.deliveryAssignmentService = deliveryAssignmentService;
+        this.batchAssignmentService = batchAssignmentService;
+        this.riderHallFeed = riderHallFeed;
+        this.orderEventStream = orderEventStream;
         this.unpaidTimeoutMinutes = Math.max(1, unpaidTimeoutMinutes);
         this.paidUnassignedAutoAssignMinutes = Math.max(0, paidUnassignedAutoAssignMinutes);
         this.paidUnassignedTimeoutMinutes = Math.max(0, paidUnassignedTimeoutMinutes);
@@ -60,6 +69,7 @@ public class OrderAutoCloseService {
             o.setCancelReason("支付超时，系统自动取消");
             o.setFinishedAt(now);
             customerOrderRepository.save(o);
+            orderEventStream.publish(o.getId(), OrderEventStream.CANCELED);
         }
     }
 
@@ -70,10 +80,12 @@ public class OrderAutoCloseService {
         List<CustomerOrder> stale = customerOrderRepository.findStalePaidUnassignedOrders(deadline);
         if (stale.isEmpty()) return;
         for (CustomerOrder o : stale) {
+            boolean refunded = false;
             o.setStatus("CANCELED");
             o.setCancelReason("长时间无人接单，系统自动取消并退款");
             o.setFinishedAt(now);
             if ("PAID".equalsIgnoreCase(o.getPayStatus())) {
+                refunded = true;
                 o.setPayStatus("REFUNDED");
                 o.setRefundedAt(now);
                 o.setCommissionAmount(BigDecimal.ZERO);
@@ -87,9 +99,12 @@ public class OrderAutoCloseService {
                 refundLog.setOperatorId(null);
                 refundLog.setStatus("SUCCESS");
                 refundLog.setNote("系统自动取消/退款");
-                paymentLogRepository.save(refundLog);
+                paymentLogSink.record(refundLog);
             }
             customerOrderRepository.save(o);
+            riderHallFeed.changed(o.getId());
+            orderEventStream.publish(o.getId(), OrderEventStream.CANCELED);
+            if (refunded) orderEventStream.publish(o.getId(), OrderEventStream.REFUNDED);
         }
     }
 
@@ -102,8 +117,14 @@ public class OrderAutoCloseService {
         List<CustomerOrder> stale = customerOrderRepository.findStalePaidUnassignedOrders(deadline);
         if (stale.isEmpty()) return;
 
+        // 超时订单一起做最小费用匹配，匹配不上的（无坐标/附近无骑手）再逐单兜底
+        Map<Long, Long> plan = batchAssignmentService.plan(stale);
         for (CustomerOrder o : stale) {
-            DeliveryStaff staff = deliveryAssignmentService.autoAssignIfPossible(o.getId()).orElse(null);
+            Long planned = plan.get(o.getId());
+            DeliveryStaff staff = planned == null ? null : deliveryAssignmentService.assignIfStillFree(o.getId(), planned).orElse(null);
+            if (staff == null) {
+                staff = deliveryAssignmentService.autoAssignIfPossible(o.getId()).orElse(null);
+            }
             if (staff == null) continue;
 
             // 抢单超时后自动派单：进入配送中，方便骑手端默认列表查看
@@ -111,6 +132,7 @@ public class OrderAutoCloseService {
                 if (updated.getDeliveryStaff() != null && updated.getDeliveryStaff().getId() != null) {
                     updated.setStatus("DELIVERING");
                     customerOrderRepository.save(updated);
+                    orderEventStream.publish(updated.getId(), OrderEventStream.DELIVERING);
                 }
             });
         }
@@ -0,0 +1,138 @@
+package com.example.takeout.service;
+
+import com.example.takeout.entity.CustomerOrder;
+import com.example.takeout.entity.DeliveryStaff;
+import com.example.takeout.repository.CustomerOrderRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * 顺路合单：同一饭店、支付时间相近、送货点相距不远的订单交给同一个骑手一起送。
+ */
+@Service
+public class OrderBundler {
+
+    private final CustomerOrderRepository customerOrderRepository;
+    private final boolean enabled;
+    private final Duration window;
+    private final double radiusKm;
+    private final int maxOrders;
+
+    public OrderBundler(CustomerOrderRepository customerOrderRepository,
+                        @Value("${delivery.bundle.enabled:true}") boolean enabled,
+                        @Value("${delivery.bundle.window-minutes:10}") long windowMinutes,
+                        @Value("${delivery.bundle.radius-km:1.5}") double radiusKm,
+                        @Value("${delivery.bundle.max-orders:3}") int maxOrders) {
+        this.customerOrderRepository = customerOrderRepository;
+        this.enabled = enabled;
+        this.window = Duration.ofMinutes(Math.max(1, windowMinutes));
+        this.radiusKm = radiusKm > 0 ? radiusKm : 1.5;
+        this.maxOrders = Math.max(1, maxOrders);
+    }
+
+    public boolean isEnabled() {
+        return enabled && maxOrders > 1;
+    }
+
+    /**
+     * 两单能否合并：同一饭店、都已支付且支付时间相差不超过窗口、送货点都有坐标且相距不超过半径。
+     */
+    public boolean compatible(CustomerOrder a, CustomerOrder b) {
+        if (a == null || b == null || a.getRestaurant() == null || b.getRestaurant() == null) return false;
+        if (!Objects.equals(a.getRestaurant().getId(), b.getRestaurant().getId())) return false;
+        if (a.getPaidAt() == null || b.getPaidAt() == null) return false;
+        if (Duration.between(a.getPaidAt(), b.getPaidAt()).abs().compareTo(window) > 0) return false;
+        return extraLegKm(a, b) <= radiusKm;
+    }
+
+    /**
+     * 把一批待派订单按顺路关系分组（贪心：按顺序放进第一个都兼容且未满的组）。
+     */
+    public List<List<CustomerOrder>> group(List<CustomerOrder> orders) {
+        List<List<CustomerOrder>> groups = new ArrayList<>();
+        for (CustomerOrder o : orders) {
+            List<CustomerOrder> target = null;
+            if (isEnabled()) {
+                for (List<CustomerOrder> g : groups) {
+                    if (g.size() < maxOrders && g.stream().allMatch(x -> compatible(x, o))) {
+                        target = g;
+                        break;
+                    }
+                }
+            }
+            if (target == null) {
+                target = new ArrayList<>(maxOrders);
+                groups.add(target);
+            }
+            target.add(o);
+        }
+        return groups;
+    }
+
+    /**
+     * 组内除第一单外，每单相对最近一个已在组内送货点的额外路程（公里）。
+     */
+    public double extraLegKm(List<CustomerOrder> group) {
+        double total = 0;
+        for (int i = 1; i < group.size(); i++) {
+            double best = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < i; j++) {
+                best = Math.min(best, extraLegKm(group.get(j), group.get(i)));
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    /**
+     * 找一个已接了同饭店订单、还没出发、且还能再带一单的骑手，按“额外路程 + 合单外的负载”打分取最优。
+     */
+    public Optional<Offer> findOpenBundle(CustomerOrder order) {
+        if (!isEnabled() || order == null || order.getRestaurant() == null || order.getPaidAt() == null) {
+            return Optional.empty();
+        }
+        if (order.getDeliveryLat() == null || order.getDeliveryLng() == null) return Optional.empty();
+
+        List<CustomerOrder> open = customerOrderRepository.findOpenBundleOrders(
+                order.getRestaurant().getId(), order.getPaidAt().minus(window), order.getId());
+        Map<Long, List<CustomerOrder>> byStaff = new LinkedHashMap<>();
+        for (CustomerOrder o : open) {
+            byStaff.computeIfAbsent(o.getDeliveryStaff().getId(), k -> new ArrayList<>()).add(o);
+        }
+
+        Offer best = null;
+        for (List<CustomerOrder> bundle : byStaff.values()) {
+            if (bundle.size() >= maxOrders) continue;
+            if (!bundle.stream().allMatch(x -> compatible(x, order))) continue;
+            DeliveryStaff staff = bundle.get(0).getDeliveryStaff();
+            if (!"ACTIVE".equalsIgnoreCase(staff.getStatus())) continue;
+
+            double extra = bundle.stream().mapToDouble(x -> extraLegKm(x, order)).min().orElse(0);
+            int load = staff.getCurrentLoad() == null ? 0 : staff.getCurrentLoad();
+            double score = extra + Math.max(0, load - bundle.size()) * DeliveryAssignmentService.LOAD_WEIGHT_KM;
+            if (best == null || score < best.score()) {
+                best = new Offer(staff, score, bundle.size());
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    private static double extraLegKm(CustomerOrder a, CustomerOrder b) {
+        if (a.getDeliveryLat() == null || a.getDeliveryLng() == null
+                || b.getDeliveryLat() == null || b.getDeliveryLng() == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return DeliveryAssignmentService.haversineKm(a.getDeliveryLat(), a.getDeliveryLng(), b.getDeliveryLat(), b.getDeliveryLng());
+    }
+
+    public record Offer(DeliveryStaff staff, double score, int bundleSize) {
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.takeout.service;
+
+import com.example.takeout.entity.CustomerOrder;
+import com.example.takeout.entity.OrderItem;
+import com.example.takeout.repository.CustomerOrderRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * 下单落库：订单头与明细在同一事务中写入。计价、幂等校验等都在事务外完成，事务只覆盖写库部分。
+ */
+@Service
+public class OrderCreationService {
+
+    private final CustomerOrderRepository customerOrderRepository;
+    private final OrderItemBatchWriter orderItemBatchWriter;
+
+    public OrderCreationService(CustomerOrderRepository customerOrderRepository,
+                                OrderItemBatchWriter orderItemBatchWriter) {
+        this.customerOrderRepository = customerOrderRepository;
+        this.orderItemBatchWriter = orderItemBatchWriter;
+    }
+
+    @Transactional
+    public CustomerOrder save(CustomerOrder order, List<OrderItem> items) {
+        CustomerOrder saved = customerOrderRepository.saveAndFlush(order);
+        orderItemBatchWriter.insertAll(saved.getId(), items);
+        return saved;
+    }
+}
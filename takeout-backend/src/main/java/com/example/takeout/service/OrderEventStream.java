@@ -0,0 +1,207 @@
+package com.example.takeout.service;
+
+import com.example.takeout.repository.CustomerOrderRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 食客订单状态推送（SSE）：支付、派单、配送、完成、取消、退款时推给该食客的在线连接，
+ * 前端不再轮询订单详情 / 支付状态。事件在事务提交后按主键回库取一次最新状态再推送，
+ * 没有任何在线连接时不查库。
+ */
+@Service
+public class OrderEventStream {
+
+    public static final String PAID = "PAID";
+    public static final String ASSIGNED = "ASSIGNED";
+    public static final String UNASSIGNED = "UNASSIGNED";
+    public static final String DELIVERING = "DELIVERING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String CANCELED = "CANCELED";
+    public static final String REFUNDED = "REFUNDED";
+
+    private static final Logger log = LoggerFactory.getLogger(OrderEventStream.class);
+
+    private final CustomerOrderRepository customerOrderRepository;
+    private final ObjectMapper objectMapper;
+    private final long sseTimeoutMillis;
+    private final int maxPerCustomer;
+    private final int maxSubscribers;
+
+    // 食客 id -> 该食客的在线连接
+    private final Map<Long, List<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ExecutorService worker;
+
+    public OrderEventStream(CustomerOrderRepository customerOrderRepository,
+                            ObjectMapper objectMapper,
+                            MeterRegistry meterRegistry,
+                            WorkerThreads workerThreads,
+                            @Value("${order.events.sse-timeout-ms:1800000}") long sseTimeoutMillis,
+                            @Value("${order.events.max-per-customer:5}") int maxPerCustomer,
+                            @Value("${order.events.max-subscribers:10000}") int maxSubscribers) {
+        this.customerOrderRepository = customerOrderRepository;
+        this.objectMapper = objectMapper;
+        this.sseTimeoutMillis = Math.max(10_000, sseTimeoutMillis);
+        this.maxPerCustomer = Math.max(1, maxPerCustomer);
+        this.maxSubscribers = Math.max(1, maxSubscribers);
+        this.worker = Executors.newSingleThreadExecutor(workerThreads.named("order-event-stream"));
+
+        Gauge.builder("order.events.subscribers", subscriberCount, AtomicInteger::get)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 订阅某个食客的订单事件；orderId 不为空时只推这一单。连接数超限时返回 null。
+     */
+    public SseEmitter subscribe(Long customerId, Long orderId) {
+        if (customerId == null || subscriberCount.get() >= maxSubscribers) return null;
+        SseEmitter emitter = new SseEmitter(sseTimeoutMillis);
+        Subscriber sub = new Subscriber(emitter, orderId);
+        boolean[] added = {false};
+        subscribers.compute(customerId, (k, list) -> {
+            if (list == null) list = new CopyOnWriteArrayList<>();
+            if (list.size() < maxPerCustomer) {
+                list.add(sub);
+                added[0] = true;
+            }
+            return list;
+        });
+        if (!added[0]) return null;
+        subscriberCount.incrementAndGet();
+
+        Runnable remove = () -> unsubscribe(customerId, sub);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+        // 先发一条注释，让浏览器立即确认连接已建立
+        if (!send(emitter, SseEmitter.event().comment("connected"))) remove.run();
+        return emitter;
+    }
+
+    /**
+     * 订单状态发生变化；处于事务中时等提交后再推送。
+     */
+    public void publish(Long orderId, String type) {
+        if (orderId == null || type == null) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    execute(() -> deliver(orderId, type));
+                }
+            });
+        } else {
+            execute(() -> deliver(orderId, type));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${order.events.heartbeat-ms:15000}")
+    public void heartbeat() {
+        if (subscriberCount.get() == 0) return;
+        execute(() -> subscribers.forEach((customerId, list) -> {
+            for (Subscriber sub : list) {
+                if (!send(sub.emitter(), SseEmitter.event().comment("ping"))) unsubscribe(customerId, sub);
+            }
+        }));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+        subscribers.values().forEach(list -> list.forEach(sub -> sub.emitter().complete()));
+        subscribers.clear();
+        subscriberCount.set(0);
+    }
+
+    private void deliver(Long orderId, String type) {
+        if (subscriberCount.get() == 0) return;
+        CustomerOrderRepository.OrderEventProjection view = customerOrderRepository.findOrderEventView(orderId).orElse(null);
+        if (view == null || view.getCustomerId() == null) return;
+        List<Subscriber> list = subscribers.get(view.getCustomerId());
+        if (list == null || list.isEmpty()) return;
+
+        OrderEvent event = new OrderEvent(type, view.getId(), view.getStatus(), view.getPayStatus(),
+                view.getPayAmount(), view.getDeliveryStaffId(), LocalDateTime.now());
+        String data;
+        try {
+            data = objectMapper.writeValueAsString(event);
+        } catch (Exception e) {
+            log.warn("Failed to serialize order event {}", event, e);
+            return;
+        }
+        for (Subscriber sub : list) {
+            if (sub.orderId() != null && !Objects.equals(sub.orderId(), orderId)) continue;
+            if (!send(sub.emitter(), SseEmitter.event().name("order").data(data))) {
+                unsubscribe(view.getCustomerId(), sub);
+            }
+        }
+    }
+
+    private void unsubscribe(Long customerId, Subscriber sub) {
+        subscribers.computeIfPresent(customerId, (k, list) -> {
+            if (list.remove(sub)) subscriberCount.decrementAndGet();
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    private boolean send(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            worker.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.warn("Order event task failed", e);
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // 正在关闭
+        }
+    }
+
+    private record Subscriber(SseEmitter emitter, Long orderId) {
+    }
+
+    /**
+     * 推送给食客端的订单事件。type 为触发的动作，status / payStatus 为推送时订单的最新状态。
+     */
+    public record OrderEvent(String type,
+                             Long orderId,
+                             String status,
+                             String payStatus,
+                             BigDecimal payAmount,
+                             Long deliveryStaffId,
+                             LocalDateTime at) {
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.takeout.service;
+
+import com.example.takeout.entity.CustomerOrder;
+import com.example.takeout.repository.CustomerOrderRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 下单幂等：同一食客的同一 Idempotency-Key 只会真正创建一次订单。
+ * 内存中记录进行中/已完成的请求（带 TTL），并发的重复请求等待第一个请求的结果；
+ * 重启或 TTL 过期后由 orders.idempotency_key 唯一列兜底。
+ */
+@Service
+public class OrderIdempotencyService {
+
+    public static final int MAX_KEY_LENGTH = 64;
+
+    private final CustomerOrderRepository customerOrderRepository;
+    private final long ttlMillis;
+    private final long waitMillis;
+    private final ConcurrentHashMap<String, Slot> slots = new ConcurrentHashMap<>();
+
+    public OrderIdempotencyService(CustomerOrderRepository customerOrderRepository,
+                                   @Value("${order.idempotency.ttl-minutes:30}") long ttlMinutes,
+                                   @Value("${order.idempotency.wait-ms:10000}") long waitMillis) {
+        this.customerOrderRepository = customerOrderRepository;
+        this.ttlMillis = Math.max(1, ttlMinutes) * 60_000L;
+        this.waitMillis = Math.max(100, waitMillis);
+    }
+
+    /**
+     * 按食客隔离的幂等键；未携带时返回 null，超长时抛出 IllegalArgumentException。
+     */
+    public static String scopedKey(Long customerId, String rawKey) {
+        if (customerId == null || rawKey == null || rawKey.isBlank()) return null;
+        String k = rawKey.trim();
+        if (k.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key 过长（最多 " + MAX_KEY_LENGTH + " 个字符）");
+        }
+        return customerId + ":" + k;
+    }
+
+    /**
+     * 抢占幂等键。返回的 Claim 若 owner 为 true，调用方负责创建订单并调用 complete/release。
+     */
+    public Claim claim(String key) {
+        Slot mine = new Slot(System.currentTimeMillis());
+        Slot existing = slots.putIfAbsent(key, mine);
+        if (existing == null) return new Claim(key, mine, true);
+        return new Claim(key, existing, false);
+    }
+
+    /**
+     * 等待持有者的结果；持有者失败（已 release）或超时时返回 empty。
+     */
+    public Optional<CreatedOrder> await(Claim claim) {
+        try {
+            return Optional.ofNullable(claim.slot().result.get(waitMillis, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 数据库中已存在该幂等键的订单（重启 / TTL 过期 / 其他节点创建）。
+     */
+    public Optional<CreatedOrder> findPersisted(String key) {
+        return customerOrderRepository.findFirstByIdempotencyKey(key).map(CreatedOrder::of);
+    }
+
+    public void complete(Claim claim, CreatedOrder created) {
+        claim.slot().result.complete(created);
+    }
+
+    /**
+     * 持有者未能创建订单（参数错误/异常），释放键让后续重试重新执行。
+     */
+    public void release(Claim claim) {
+        slots.remove(claim.key(), claim.slot());
+        claim.slot().result.complete(null);
+    }
+
+    @Scheduled(fixedDelayString = "${order.idempotency.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        long deadline = System.currentTimeMillis() - ttlMillis;
+        slots.entrySet().removeIf(e -> e.getValue().createdAtMillis < deadline);
+    }
+
+    public record Claim(String key, Slot slot, boolean owner) {
+
+        public boolean pending() {
+            return !slot.result.isDone();
+        }
+    }
+
+    public record CreatedOrder(Long orderId, BigDecimal totalAmount, BigDecimal discountAmount, BigDecimal payAmount) {
+
+        public static CreatedOrder of(CustomerOrder order) {
+            return new CreatedOrder(order.getId(), order.getTotalAmount(), order.getDiscountAmount(), order.getPayAmount());
+        }
+    }
+
+    public static final class Slot {
+        private final long createdAtMillis;
+        private final CompletableFuture<CreatedOrder> result = new CompletableFuture<>();
+
+        private Slot(long createdAtMillis) {
+            this.createdAtMillis = createdAtMillis;
+        }
+    }
+}
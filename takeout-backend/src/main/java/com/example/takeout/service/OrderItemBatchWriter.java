@@ -0,0 +1,45 @@
+package com.example.takeout.service;
+
+import com.example.takeout.entity.OrderItem;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * order_items 使用 IDENTITY 主键，Hibernate 无法对其做批量插入；
+ * 这里直接走 JDBC batch（配合 MySQL rewriteBatchedStatements 合并为一条多值 INSERT）。
+ */
+@Service
+public class OrderItemBatchWriter {
+
+    private static final String INSERT_SQL = """
+            insert into order_items (order_id, dish_id, dish_name, unit_price, quantity, discount_info)
+            values (?, ?, ?, ?, ?, ?)
+            """;
+    private static final int BATCH_SIZE = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public OrderItemBatchWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void insertAll(Long orderId, List<OrderItem> items) {
+        if (orderId == null) throw new IllegalArgumentException("orderId is null");
+        if (items == null || items.isEmpty()) return;
+        jdbcTemplate.batchUpdate(INSERT_SQL, items, BATCH_SIZE, (ps, oi) -> {
+            ps.setLong(1, orderId);
+            ps.setLong(2, oi.getDish().getId());
+            ps.setString(3, oi.getDishName());
+            ps.setBigDecimal(4, oi.getUnitPrice());
+            ps.setInt(5, oi.getQuantity());
+            if (oi.getDiscountInfo() == null) {
+                ps.setNull(6, Types.VARCHAR);
+            } else {
+                ps.setString(6, oi.getDiscountInfo());
+            }
+        });
+    }
+}
@@ -3,7 +3,6 @@ package com.example.takeout.service;
 import com.example.takeout.entity.CustomerOrder;
 import com.example.takeout.entity.PaymentLog;
 import com.example.takeout.repository.CustomerOrderRepository;
-import com.example.takeout.repository.PaymentLogRepository;
 import com.example.takeout.repository.PlatformConfigRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -17,19 +16,28 @@ public class OrderPaymentService {
 
     private final CustomerOrderRepository customerOrderRepository;
     private final PlatformConfigRepository platformConfigRepository;
-    private final PaymentLogRepository paymentLogRepository;
-    private final DeliveryAssignmentService deliveryAssignmentService;
+    private final PaymentLogSink paymentLogSink;
+    private final DeliveryAssignmentQueue deliveryAssignmentQueue;
+    private final BatchAssignmentService batchAssignmentService;
+    private final RiderHallFeed riderHallFeed;
+    private final OrderEventStream orderEventStream;
     private final String deliveryAssignmentMode;
 
     public OrderPaymentService(CustomerOrderRepository customerOrderRepository,
                                PlatformConfigRepository platformConfigRepository,
-                               PaymentLogRepository paymentLogRepository,
-                               DeliveryAssignmentService deliveryAssignmentService,
+                               PaymentLogSink paymentLogSink,
+                               DeliveryAssignmentQueue deliveryAssignmentQueue,
+                               BatchAssignmentService batchAssignmentService,
+                               RiderHallFeed riderHallFeed,
+                               OrderEventStream orderEventStream,
                                @Value("${delivery.assignment.mode:HALL}") String deliveryAssignmentMode) {
         this.customerOrderRepository = customerOrderRepository;
         this.platformConfigRepository = platformConfigRepository;
-        this.paymentLogRepository = paymentLogRepository;
-        this.deliveryAssignmentService = deliveryAssignmentService;
+        this.paymentLogSink = paymentLogSink;
+        this.deliveryAssignmentQueue = deliveryAssignmentQueue;
+        this.batchAssignmentService = batchAssignmentService;
+        this.riderHallFeed = riderHallFeed;
+        this.orderEventStream = orderEventStream;
         this.deliveryAssignmentMode = deliveryAssignmentMode == null ? "HALL" : deliveryAssignmentMode.trim();
     }
 
@@ -66,8 +74,7 @@ public class OrderPaymentService {
                     .map(cfg -> cfg.getDefaultCommissionRate() == null ? BigDecimal.ZERO : cfg.getDefaultCommissionRate())
                     .orElse(BigDecimal.ZERO);
         }
-        BigDecimal commission = payAmount.multiply(rate).divide(BigDecimal.valueOf(100), 2, java.math.RoundingMode.HALF_UP);
-        order.setCommissionAmount(commission);
+        order.setCommissionAmount(Money.ofYuan(payAmount).percentHalfUp(rate).toBigDecimal());
 
         CustomerOrder saved = customerOrderRepository.save(order);
 
@@ -80,10 +87,15 @@ public class OrderPaymentService {
         payLog.setOperatorId(operatorId);
         payLog.setStatus("SUCCESS");
         payLog.setNote(note);
-        paymentLogRepository.save(payLog);
+        paymentLogSink.record(payLog);
+        riderHallFeed.changed(saved.getId());
+        orderEventStream.publish(saved.getId(), OrderEventStream.PAID);
 
         if ("AUTO".equalsIgnoreCase(deliveryAssignmentMode)) {
-            deliveryAssignmentService.autoAssignIfPossible(saved.getId());
+            // 提交后异步派单，支付回调/支付请求不等待选骑手
+            deliveryAssignmentQueue.submit(saved.getId());
+        } else if ("BATCH".equalsIgnoreCase(deliveryAssignmentMode)) {
+            batchAssignmentService.submit(saved.getId());
         }
 
         return saved;
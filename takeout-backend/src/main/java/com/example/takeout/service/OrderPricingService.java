@@ -0,0 +1,113 @@
+package com.example.takeout.service;
+
+import com.example.takeout.repository.DishRepository;
+import com.example.takeout.service.MenuSnapshotCache.DishView;
+import com.example.takeout.service.MenuSnapshotCache.MenuSnapshot;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Service
+public class OrderPricingService {
+
+    private final MenuSnapshotCache menuSnapshotCache;
+    private final DishRepository dishRepository;
+
+    public OrderPricingService(MenuSnapshotCache menuSnapshotCache, DishRepository dishRepository) {
+        this.menuSnapshotCache = menuSnapshotCache;
+        this.dishRepository = dishRepository;
+    }
+
+    /**
+     * 对购物车计价：菜品与满减规则取自饭店菜单快照，在内存中校验归属/上架状态。
+     * 校验失败抛出 IllegalArgumentException，message 可直接返回给前端。
+     */
+    public PricedCart price(Long restaurantId, List<CartLine> lines) {
+        if (restaurantId == null || lines == null || lines.isEmpty()) {
+            throw new IllegalArgumentException("参数不完整");
+        }
+        for (CartLine line : lines) {
+            if (line == null || line.dishId() == null || line.quantity() == null || line.quantity() <= 0) {
+                throw new IllegalArgumentException("菜品或数量不合法");
+            }
+        }
+        MenuSnapshot menu = menuSnapshotCache.get(restaurantId)
+                .orElseThrow(() -> new IllegalArgumentException("饭店不存在"));
+
+        Money totalOriginal = Money.ZERO;
+        Money totalPayBeforePromotion = Money.ZERO;
+        List<PricedLine> priced = new ArrayList<>(lines.size());
+        for (CartLine line : lines) {
+            DishView dish = menu.dishesById().get(line.dishId());
+            if (dish == null) {
+                // 只在出错时回库区分“不存在”和“不属于该饭店”
+                if (dishRepository.existsById(line.dishId())) {
+                    throw new IllegalArgumentException("菜品不属于该饭店");
+                }
+                throw new IllegalArgumentException("菜品不存在: " + line.dishId());
+            }
+            if (!dish.isAvailable()) {
+                throw new IllegalArgumentException("菜品已下架: " + dish.name());
+            }
+
+            // 折后单价在装载菜单快照时已算好，这里只剩整数加乘
+            int qty = line.quantity();
+            totalOriginal = totalOriginal.plus(dish.listPrice().times(qty));
+            totalPayBeforePromotion = totalPayBeforePromotion.plus(dish.payUnitPrice().times(qty));
+            priced.add(new PricedLine(dish.id(), dish.name(), dish.payUnitPrice(), qty));
+        }
+
+        Money promoDiscount = calculatePromotionDiscount(menu, totalPayBeforePromotion);
+        Money payAmount = totalPayBeforePromotion.minus(promoDiscount).atLeastZero();
+
+        return new PricedCart(priced, totalOriginal, totalPayBeforePromotion, promoDiscount, payAmount, menu);
+    }
+
+    private static Money calculatePromotionDiscount(MenuSnapshot menu, Money payBeforePromotion) {
+        if (menu == null) return Money.ZERO;
+        return menu.promotionTable().bestDiscount(payBeforePromotion, LocalDateTime.now());
+    }
+
+    /**
+     * 菜品折后单价。PERCENT 的折扣值 <= 1 视为比例，否则视为百分数；AMOUNT 为直减金额；结果不小于 0。
+     */
+    static Money calcPayUnitPrice(String discountType, BigDecimal discountValue, Money originalUnit) {
+        if (originalUnit == null) return Money.ZERO;
+        String t = discountType;
+        BigDecimal v = discountValue;
+        if (t == null || t.isBlank() || v == null) return originalUnit;
+
+        if ("PERCENT".equalsIgnoreCase(t)) {
+            BigDecimal ratio;
+            if (v.compareTo(BigDecimal.ONE) <= 0) {
+                ratio = v;
+            } else {
+                ratio = v.divide(BigDecimal.valueOf(100), 6, RoundingMode.HALF_UP);
+            }
+            return originalUnit.multiplyHalfUp(ratio).atLeastZero();
+        }
+        if ("AMOUNT".equalsIgnoreCase(t)) {
+            // 先减后舍入，与原实现在折扣值超过两位小数时保持一致
+            return Money.ofYuan(originalUnit.toBigDecimal().subtract(v)).atLeastZero();
+        }
+        return originalUnit;
+    }
+
+    public record CartLine(Long dishId, Integer quantity) {
+    }
+
+    public record PricedLine(Long dishId, String dishName, Money unitPrice, int quantity) {
+    }
+
+    public record PricedCart(List<PricedLine> lines,
+                             Money totalOriginal,
+                             Money payBeforePromotion,
+                             Money promotionDiscount,
+                             Money payAmount,
+                             MenuSnapshot menu) {
+    }
+}
@@ -0,0 +1,394 @@
+package com.example.takeout.service;
+
+import com.example.takeout.entity.PaymentLog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 支付流水异步写入：请求事务提交后把流水追加到本地日志文件（journal）并放入内存队列，
+ * 由后台线程批量 INSERT 到 payment_logs，不再占用请求事务。
+ * 已落库的位置记在 checkpoint 文件中；进程崩溃重启后重放 checkpoint 之后的记录，按 journal_id 去重。
+ * 数据本身有问题（外键、超长等）的记录会被拆批找出来，写入 dead-letter 文件并打错误日志，不阻塞后续流水。
+ */
+@Service
+public class PaymentLogSink {
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentLogSink.class);
+
+    private static final String INSERT_SQL = """
+            insert into payment_logs (order_id, type, amount, method, operator_role, operator_id, status, note, created_at, journal_id)
+            values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final WorkerThreads workerThreads;
+    private final Path journalFile;
+    private final Path checkpointFile;
+    private final Path deadLetterFile;
+    private final boolean fsync;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final long compactBytes;
+
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    // 持锁期间有文件写入/fsync；用 ReentrantLock 而不是 synchronized，虚拟线程等锁时不会钉住载体线程
+    private final ReentrantLock journalLock = new ReentrantLock();
+    private final Counter flushFailures;
+    private final Counter deadLetters;
+
+    // 以下字段仅由 flusher 线程访问
+    private final List<Entry> retry = new ArrayList<>();
+    private final List<Entry> recovered = new ArrayList<>();
+    // 当前批次里已转入 dead-letter 的记录，批次重试时不再重复处理
+    private final Set<String> deadLettered = new HashSet<>();
+
+    private FileChannel journal;
+    private long lastSeq;
+    private long checkpointSeq;
+    private ScheduledExecutorService flusher;
+
+    public PaymentLogSink(JdbcTemplate jdbcTemplate,
+                          ObjectMapper objectMapper,
+                          MeterRegistry meterRegistry,
+                          WorkerThreads workerThreads,
+                          @Value("${payment-log.journal.dir:data/payment-log-journal}") String journalDir,
+                          @Value("${payment-log.journal.fsync:false}") boolean fsync,
+                          @Value("${payment-log.batch-size:200}") int batchSize,
+                          @Value("${payment-log.flush-interval-ms:200}") long flushIntervalMillis,
+                          @Value("${payment-log.journal.compact-bytes:8388608}") long compactBytes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.objectMapper = objectMapper;
+        this.workerThreads = workerThreads;
+        Path dir = Paths.get(journalDir == null || journalDir.isBlank() ? "data/payment-log-journal" : journalDir.trim());
+        this.journalFile = dir.resolve("journal.log");
+        this.checkpointFile = dir.resolve("checkpoint");
+        this.deadLetterFile = dir.resolve("dead-letter.log");
+        this.fsync = fsync;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMillis = Math.max(10, flushIntervalMillis);
+        this.compactBytes = Math.max(0, compactBytes);
+
+        Gauge.builder("payment_log.queue.depth", depth, AtomicInteger::get)
+                .description("Payment log records waiting to be written to the database")
+                .register(meterRegistry);
+        this.flushFailures = Counter.builder("payment_log.flush.failures")
+                .description("Failed payment log batch inserts")
+                .register(meterRegistry);
+        this.deadLetters = Counter.builder("payment_log.dead_letters")
+                .description("Payment log records rejected by the database and moved to the dead-letter file")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        Files.createDirectories(journalFile.getParent());
+        checkpointSeq = readCheckpoint();
+        lastSeq = checkpointSeq;
+        replayJournal();
+        journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        flusher = Executors.newSingleThreadScheduledExecutor(workerThreads.named("payment-log-flusher"));
+        flusher.scheduleWithFixedDelay(this::flushSafely, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // 停机前尽量写完；写不完的留在 journal 里，下次启动重放
+        flushSafely();
+        try {
+            if (journal != null) journal.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * 记录一条支付流水。处于事务中时在提交后入队，事务回滚则丢弃。
+     */
+    public void record(PaymentLog paymentLog) {
+        if (paymentLog == null) return;
+        if (paymentLog.getOrder() == null || paymentLog.getOrder().getId() == null) {
+            throw new IllegalArgumentException("payment log order is null");
+        }
+        Entry entry = new Entry(
+                0L,
+                UUID.randomUUID().toString(),
+                paymentLog.getOrder().getId(),
+                paymentLog.getType(),
+                paymentLog.getAmount() == null ? BigDecimal.ZERO : paymentLog.getAmount(),
+                paymentLog.getMethod(),
+                paymentLog.getOperatorRole(),
+                paymentLog.getOperatorId(),
+                paymentLog.getStatus(),
+                paymentLog.getNote(),
+                paymentLog.getCreatedAt() == null ? LocalDateTime.now() : paymentLog.getCreatedAt()
+        );
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(entry);
+                }
+            });
+        } else {
+            enqueue(entry);
+        }
+    }
+
+    public int queueDepth() {
+        return depth.get();
+    }
+
+    private void enqueue(Entry entry) {
+        journalLock.lock();
+        try {
+            Entry sequenced = entry.withSeq(++lastSeq);
+            try {
+                byte[] line = (objectMapper.writeValueAsString(sequenced) + "\n").getBytes(StandardCharsets.UTF_8);
+                ByteBuffer buf = ByteBuffer.wrap(line);
+                while (buf.hasRemaining()) journal.write(buf);
+                if (fsync) journal.force(false);
+            } catch (IOException e) {
+                // journal 写失败不影响业务，只是失去崩溃恢复能力
+                log.warn("Failed to append payment log journal, seq={}", sequenced.seq(), e);
+            }
+            queue.add(sequenced);
+            depth.incrementAndGet();
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            flushFailures.increment();
+            log.warn("Payment log flush failed, will retry", e);
+        }
+    }
+
+    private void flush() throws IOException {
+        if (!recovered.isEmpty()) {
+            write(withoutPersisted(recovered));
+            checkpoint(recovered.get(recovered.size() - 1).seq());
+            recovered.clear();
+            deadLettered.clear();
+        }
+        while (true) {
+            boolean retrying = !retry.isEmpty();
+            if (!retrying) {
+                Entry e;
+                while (retry.size() < batchSize && (e = queue.poll()) != null) {
+                    retry.add(e);
+                }
+            }
+            if (retry.isEmpty()) break;
+            // 上次失败时这一批可能已部分写入（连接断开前已提交），重试前先去掉已落库的
+            write(retrying ? withoutPersisted(retry) : retry);
+            long seq = retry.get(retry.size() - 1).seq();
+            depth.addAndGet(-retry.size());
+            retry.clear();
+            deadLettered.clear();
+            checkpoint(seq);
+        }
+        compactIfDrained();
+    }
+
+    /**
+     * 写入一批。只有数据本身被数据库拒绝（DataIntegrityViolationException）时才拆批找出坏记录；
+     * 连接、超时等其他异常原样抛出，整批留到下次重试。
+     */
+    private void write(List<Entry> batch) throws IOException {
+        try {
+            insertBatch(batch);
+        } catch (DataIntegrityViolationException e) {
+            flushFailures.increment();
+            log.warn("Payment log batch of {} rejected, isolating bad records: {}", batch.size(), e.getMessage());
+            isolate(withoutPersisted(batch));
+        }
+    }
+
+    // 二分拆批：能整体写入的子批直接写入，拆到单条仍被拒绝的转入 dead-letter
+    private void isolate(List<Entry> batch) throws IOException {
+        if (batch.isEmpty()) return;
+        try {
+            insertBatch(batch);
+            return;
+        } catch (DataIntegrityViolationException e) {
+            if (batch.size() == 1) {
+                deadLetter(batch.get(0), e);
+                return;
+            }
+        }
+        int mid = batch.size() / 2;
+        isolate(withoutPersisted(batch.subList(0, mid)));
+        isolate(withoutPersisted(batch.subList(mid, batch.size())));
+    }
+
+    private void deadLetter(Entry entry, DataIntegrityViolationException cause) throws IOException {
+        byte[] line = (objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+        Files.write(deadLetterFile, line, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        deadLettered.add(entry.journalId());
+        deadLetters.increment();
+        log.error("Payment log record moved to dead-letter file {}: seq={}, journalId={}, orderId={}, type={}, amount={}, cause={}",
+                deadLetterFile, entry.seq(), entry.journalId(), entry.orderId(), entry.type(), entry.amount(),
+                cause.getMostSpecificCause().getMessage());
+    }
+
+    private void insertBatch(List<Entry> batch) {
+        if (batch.isEmpty()) return;
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, e) -> {
+            ps.setLong(1, e.orderId());
+            ps.setString(2, e.type());
+            ps.setBigDecimal(3, e.amount());
+            ps.setString(4, e.method());
+            ps.setString(5, e.operatorRole());
+            if (e.operatorId() == null) {
+                ps.setNull(6, Types.BIGINT);
+            } else {
+                ps.setLong(6, e.operatorId());
+            }
+            ps.setString(7, e.status());
+            ps.setString(8, e.note());
+            ps.setTimestamp(9, Timestamp.valueOf(e.createdAt()));
+            ps.setString(10, e.journalId());
+        });
+    }
+
+    // 过滤掉已经写入（崩溃前未来得及记 checkpoint / 失败的批次部分提交）和已转入 dead-letter 的记录
+    private List<Entry> withoutPersisted(List<Entry> entries) {
+        Set<String> persisted = new HashSet<>(deadLettered);
+        for (int i = 0; i < entries.size(); i += batchSize) {
+            List<String> ids = entries.subList(i, Math.min(entries.size(), i + batchSize)).stream()
+                    .map(Entry::journalId)
+                    .toList();
+            persisted.addAll(namedJdbcTemplate.queryForList(
+                    "select journal_id from payment_logs where journal_id in (:ids)",
+                    new MapSqlParameterSource("ids", ids),
+                    String.class));
+        }
+        return entries.stream().filter(e -> !persisted.contains(e.journalId())).toList();
+    }
+
+    private void checkpoint(long seq) throws IOException {
+        if (seq <= checkpointSeq) return;
+        Path tmp = checkpointFile.resolveSibling("checkpoint.tmp");
+        Files.writeString(tmp, Long.toString(seq), StandardCharsets.UTF_8);
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpointSeq = seq;
+    }
+
+    // 所有记录都已落库时截断 journal，避免文件无限增长
+    private void compactIfDrained() throws IOException {
+        journalLock.lock();
+        try {
+            if (lastSeq != checkpointSeq || !queue.isEmpty()) return;
+            if (journal.size() < compactBytes) return;
+            journal.truncate(0);
+            if (fsync) journal.force(false);
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    private long readCheckpoint() {
+        try {
+            if (!Files.exists(checkpointFile)) return 0L;
+            return Long.parseLong(Files.readString(checkpointFile, StandardCharsets.UTF_8).trim());
+        } catch (Exception e) {
+            log.warn("Unreadable payment log checkpoint, replaying whole journal", e);
+            return 0L;
+        }
+    }
+
+    private void replayJournal() throws IOException {
+        if (!Files.exists(journalFile)) return;
+        try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                Entry e;
+                try {
+                    e = objectMapper.readValue(line, Entry.class);
+                } catch (Exception partial) {
+                    // 崩溃时可能留下半行，跳过
+                    continue;
+                }
+                lastSeq = Math.max(lastSeq, e.seq());
+                if (e.seq() > checkpointSeq) recovered.add(e);
+            }
+        }
+        if (!recovered.isEmpty()) {
+            log.info("Replaying {} payment log records from journal", recovered.size());
+        }
+    }
+
+    record Entry(long seq,
+                 String journalId,
+                 Long orderId,
+                 String type,
+                 BigDecimal amount,
+                 String method,
+                 String operatorRole,
+                 Long operatorId,
+                 String status,
+                 String note,
+                 LocalDateTime createdAt) {
+
+        Entry withSeq(long s) {
+            return new Entry(s, journalId, orderId, type, amount, method, operatorRole, operatorId, status, note, createdAt);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.takeout.service;
+
+import com.example.takeout.service.MenuSnapshotCache.PromotionView;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * 预编译的满减规则表。
+ * 按规则的开始/结束时间把时间轴切成若干段，每段内生效的规则集合固定不变，
+ * 段内按门槛升序存放“门槛 -> 不超过该门槛时可得的最大减免”，查询只需两次二分查找。
+ * 因为时间段在编译时已经切好，规则到点生效/失效无需重新加载。
+ */
+public final class PromotionTable {
+
+    private static final PromotionTable EMPTY = new PromotionTable(new LocalDateTime[0], new Tiers[]{Tiers.NONE});
+
+    // 第 i 段覆盖 [boundaries[i-1], boundaries[i])，共 boundaries.length + 1 段
+    private final LocalDateTime[] boundaries;
+    private final Tiers[] segments;
+
+    private PromotionTable(LocalDateTime[] boundaries, Tiers[] segments) {
+        this.boundaries = boundaries;
+        this.segments = segments;
+    }
+
+    public static PromotionTable compile(List<PromotionView> promotions) {
+        List<PromotionView> rules = new ArrayList<>();
+        if (promotions != null) {
+            for (PromotionView p : promotions) {
+                if (p == null || !"FULL_REDUCTION".equalsIgnoreCase(p.type())) continue;
+                if (p.discountAmount() == null || p.discountAmount().compareTo(BigDecimal.ZERO) <= 0) continue;
+                if (p.startAt() != null && p.endAt() != null && p.endAt().isBefore(p.startAt())) continue;
+                rules.add(p);
+            }
+        }
+        if (rules.isEmpty()) return EMPTY;
+
+        TreeSet<LocalDateTime> points = new TreeSet<>();
+        for (PromotionView p : rules) {
+            if (p.startAt() != null) points.add(p.startAt());
+            // endAt 为闭区间，失效时刻是 endAt 之后的下一纳秒
+            if (p.endAt() != null) points.add(p.endAt().plusNanos(1));
+        }
+        LocalDateTime[] boundaries = points.toArray(new LocalDateTime[0]);
+
+        Tiers[] segments = new Tiers[boundaries.length + 1];
+        for (int i = 0; i < segments.length; i++) {
+            LocalDateTime at = i == 0
+                    ? (boundaries.length == 0 ? LocalDateTime.now() : boundaries[0].minusNanos(1))
+                    : boundaries[i - 1];
+            List<PromotionView> active = new ArrayList<>();
+            for (PromotionView p : rules) {
+                if (p.activeAt(at)) active.add(p);
+            }
+            segments[i] = Tiers.of(active);
+        }
+        return new PromotionTable(boundaries, segments);
+    }
+
+    public boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    /**
+     * 订单（菜品折后、满减前）金额在 at 时刻可享受的最大满减，不超过金额本身。
+     */
+    public Money bestDiscount(Money amount, LocalDateTime at) {
+        if (amount == null || !amount.isPositive()) return Money.ZERO;
+        Tiers tiers = segmentAt(at);
+        int idx = tiers.floorIndex(amount.fen());
+        if (idx < 0) return Money.ZERO;
+        return Money.ofFen(Math.min(tiers.bestUpTo[idx], amount.fen()));
+    }
+
+    /**
+     * 金额再凑多少能拿到更大减免：返回下一个能提升减免的档位。
+     */
+    public Optional<Tier> nextTier(Money amount, LocalDateTime at) {
+        long a = amount == null ? 0L : amount.fen();
+        Tiers tiers = segmentAt(at);
+        int idx = tiers.floorIndex(a);
+        long current = idx < 0 ? 0L : tiers.bestUpTo[idx];
+        for (int j = idx + 1; j < tiers.thresholds.length; j++) {
+            if (tiers.bestUpTo[j] > current) {
+                return Optional.of(new Tier(Money.ofFen(tiers.thresholds[j]), Money.ofFen(tiers.bestUpTo[j])));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * at 之后第一次有规则生效/失效的时刻；报价有效期不应跨过它。
+     */
+    public Optional<LocalDateTime> nextChangeAfter(LocalDateTime at) {
+        for (LocalDateTime b : boundaries) {
+            if (b.isAfter(at)) return Optional.of(b);
+        }
+        return Optional.empty();
+    }
+
+    private Tiers segmentAt(LocalDateTime at) {
+        if (boundaries.length == 0) return segments[0];
+        LocalDateTime t = at == null ? LocalDateTime.now() : at;
+        // 找到 <= t 的边界个数，即所在段的下标
+        int lo = 0;
+        int hi = boundaries.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (boundaries[mid].isAfter(t)) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return segments[lo];
+    }
+
+    public record Tier(Money thresholdAmount, Money discountAmount) {
+    }
+
+    private static final class Tiers {
+
+        static final Tiers NONE = new Tiers(new long[0], new long[0]);
+
+        // 金额均以分为单位
+        final long[] thresholds;
+        final long[] bestUpTo;
+
+        Tiers(long[] thresholds, long[] bestUpTo) {
+            this.thresholds = thresholds;
+            this.bestUpTo = bestUpTo;
+        }
+
+        static Tiers of(List<PromotionView> active) {
+            if (active.isEmpty()) return NONE;
+            long[][] rules = new long[active.size()][];
+            for (int i = 0; i < rules.length; i++) {
+                PromotionView p = active.get(i);
+                rules[i] = new long[]{Money.ofYuan(p.thresholdAmount()).fen(), Money.ofYuan(p.discountAmount()).fen()};
+            }
+            Arrays.sort(rules, (x, y) -> Long.compare(x[0], y[0]));
+
+            long[] thresholds = new long[rules.length];
+            long[] best = new long[rules.length];
+            int n = 0;
+            long running = 0L;
+            for (long[] rule : rules) {
+                running = Math.max(running, rule[1]);
+                if (n > 0 && thresholds[n - 1] == rule[0]) {
+                    best[n - 1] = running;
+                } else {
+                    thresholds[n] = rule[0];
+                    best[n] = running;
+                    n++;
+                }
+            }
+            return new Tiers(Arrays.copyOf(thresholds, n), Arrays.copyOf(best, n));
+        }
+
+        // 最后一个门槛 <= amount 的下标，没有则返回 -1
+        int floorIndex(long amount) {
+            int lo = 0;
+            int hi = thresholds.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (thresholds[mid] > amount) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return lo - 1;
+        }
+    }
+}
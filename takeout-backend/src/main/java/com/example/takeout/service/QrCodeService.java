@@ -2,35 +2,106 @@ package com.example.takeout.service;
 
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.EncodeHintType;
-import com.google.zxing.MultiFormatWriter;
 import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import com.google.zxing.client.j2se.MatrixToImageWriter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Service
 public class QrCodeService {
 
-    public byte[] toPng(String content, int size) {
-        if (content == null || content.isBlank()) throw new IllegalArgumentException("content is blank");
-        int s = Math.max(128, Math.min(512, size));
-        Map<EncodeHintType, Object> hints = new HashMap<>();
+    public static final int MIN_SIZE = 128;
+    public static final int MAX_SIZE = 512;
+
+    // 编码参数固定不变，所有请求共用；QRCodeWriter 无状态，可并发使用
+    private static final Map<EncodeHintType, Object> HINTS;
+
+    static {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
         hints.put(EncodeHintType.CHARACTER_SET, StandardCharsets.UTF_8.name());
         hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.M);
         hints.put(EncodeHintType.MARGIN, 1);
+        HINTS = Collections.unmodifiableMap(hints);
+    }
+
+    private final QRCodeWriter writer = new QRCodeWriter();
+    // 为空时走 MatrixToImageWriter(ImageIO)，否则直接输出 1 位 PNG
+    private final QrPngWriter pngWriter;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    // 同一订单反复点“支付”时 codeUrl 不变，直接复用已生成的 PNG（LRU，按条数和总字节数限制）
+    private final LinkedHashMap<CacheKey, byte[]> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes;
+
+    public QrCodeService(@Value("${qr.renderer:direct}") String renderer,
+                         @Value("${qr.cache.max-entries:1000}") int maxEntries,
+                         @Value("${qr.cache.max-bytes:16777216}") long maxBytes) {
+        this.pngWriter = "imageio".equalsIgnoreCase(renderer == null ? "" : renderer.trim())
+                ? null
+                : new QrPngWriter(Runtime.getRuntime().availableProcessors());
+        this.maxEntries = Math.max(0, maxEntries);
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    public static int clampSize(int size) {
+        return Math.max(MIN_SIZE, Math.min(MAX_SIZE, size));
+    }
+
+    /**
+     * 返回的数组可能被缓存共享，调用方不要修改。
+     */
+    public byte[] toPng(String content, int size) {
+        if (content == null || content.isBlank()) throw new IllegalArgumentException("content is blank");
+        CacheKey key = new CacheKey(content, clampSize(size));
+        byte[] png = cached(key);
+        if (png != null) return png;
+
+        png = render(key.content(), key.size());
+        put(key, png);
+        return png;
+    }
+
+    private byte[] render(String content, int s) {
         try {
-            BitMatrix bitMatrix = new MultiFormatWriter().encode(content, BarcodeFormat.QR_CODE, s, s, hints);
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            BitMatrix bitMatrix = writer.encode(content, BarcodeFormat.QR_CODE, s, s, HINTS);
+            if (pngWriter != null) {
+                return pngWriter.write(bitMatrix);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(2048);
             MatrixToImageWriter.writeToStream(bitMatrix, "PNG", out);
             return out.toByteArray();
         } catch (Exception e) {
             throw new IllegalStateException("Failed to generate QR code", e);
         }
     }
-}
 
+    private synchronized byte[] cached(CacheKey key) {
+        return cache.get(key);
+    }
+
+    private synchronized void put(CacheKey key, byte[] png) {
+        if (maxEntries == 0 || png.length > maxBytes) return;
+        byte[] old = cache.put(key, png);
+        if (old != null) cachedBytes -= old.length;
+        cachedBytes += png.length;
+        Iterator<byte[]> it = cache.values().iterator();
+        while (it.hasNext() && (cache.size() > maxEntries || cachedBytes > maxBytes)) {
+            cachedBytes -= it.next().length;
+            it.remove();
+        }
+    }
+
+    private record CacheKey(String content, int size) {
+    }
+}
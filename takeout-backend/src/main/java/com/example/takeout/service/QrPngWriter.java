@@ -0,0 +1,148 @@
+package com.example.takeout.service;
+
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 把 BitMatrix 直接写成 1 位灰度 PNG，不经过 BufferedImage / ImageIO。
+ * Deflater 和行缓冲放在一个小对象池里复用，避免每次请求重新分配。
+ */
+final class QrPngWriter {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] IHDR = {'I', 'H', 'D', 'R'};
+    private static final byte[] IDAT = {'I', 'D', 'A', 'T'};
+    private static final byte[] IEND = {'I', 'E', 'N', 'D'};
+
+    // 一个字节内的位顺序翻转并取反：BitArray 低位在前、1 表示黑；PNG 高位在前、1 表示白
+    private static final byte[] PACK = new byte[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            PACK[i] = (byte) ~(Integer.reverse(i) >>> 24);
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Encoder> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final int maxPooled;
+
+    QrPngWriter(int maxPooled) {
+        this.maxPooled = Math.max(1, maxPooled);
+    }
+
+    byte[] write(BitMatrix matrix) {
+        Encoder encoder = pool.poll();
+        if (encoder == null) {
+            encoder = new Encoder();
+        } else {
+            pooled.decrementAndGet();
+        }
+        try {
+            return encoder.encode(matrix);
+        } finally {
+            if (pooled.incrementAndGet() <= maxPooled) {
+                pool.offer(encoder);
+            } else {
+                pooled.decrementAndGet();
+                encoder.deflater.end();
+            }
+        }
+    }
+
+    private static final class Encoder {
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final CRC32 crc = new CRC32();
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        private final byte[] chunkHeader = new byte[8];
+        private byte[] deflateBuf = new byte[8192];
+        private byte[] raw = new byte[0];
+        private BitArray row = new BitArray(0);
+        private int[] prevBits = new int[0];
+
+        byte[] encode(BitMatrix matrix) {
+            int width = matrix.getWidth();
+            int height = matrix.getHeight();
+            int rowBytes = (width + 7) >>> 3;
+            int stride = rowBytes + 1;
+            if (raw.length < stride * height) raw = new byte[stride * height];
+
+            // 每行：1 字节过滤类型(0) + 打包后的像素；QR 模块是整块放大的，相邻行多数相同，直接复制上一行
+            int words = (rowBytes + 3) >>> 2;
+            if (prevBits.length < words) prevBits = new int[words];
+            for (int y = 0; y < height; y++) {
+                row = matrix.getRow(y, row);
+                int[] bits = row.getBitArray();
+                int off = y * stride;
+                raw[off] = 0;
+                if (y > 0 && sameWords(bits, prevBits, words)) {
+                    System.arraycopy(raw, off - stride + 1, raw, off + 1, rowBytes);
+                    continue;
+                }
+                for (int j = 0; j < rowBytes; j++) {
+                    raw[off + 1 + j] = PACK[(bits[j >>> 2] >>> ((j & 3) << 3)) & 0xFF];
+                }
+                System.arraycopy(bits, 0, prevBits, 0, words);
+            }
+
+            out.reset();
+            out.writeBytes(SIGNATURE);
+
+            byte[] ihdr = new byte[13];
+            putInt(ihdr, 0, width);
+            putInt(ihdr, 4, height);
+            ihdr[8] = 1; // 位深 1
+            ihdr[9] = 0; // 灰度；压缩/过滤/隔行方式均为 0
+            writeChunk(IHDR, ihdr, 0, ihdr.length);
+
+            deflater.reset();
+            deflater.setInput(raw, 0, stride * height);
+            deflater.finish();
+            int len = 0;
+            while (!deflater.finished()) {
+                if (len == deflateBuf.length) {
+                    byte[] bigger = new byte[deflateBuf.length * 2];
+                    System.arraycopy(deflateBuf, 0, bigger, 0, len);
+                    deflateBuf = bigger;
+                }
+                len += deflater.deflate(deflateBuf, len, deflateBuf.length - len);
+            }
+            writeChunk(IDAT, deflateBuf, 0, len);
+            writeChunk(IEND, deflateBuf, 0, 0);
+            return out.toByteArray();
+        }
+
+        private static boolean sameWords(int[] a, int[] b, int words) {
+            for (int i = 0; i < words; i++) {
+                if (a[i] != b[i]) return false;
+            }
+            return true;
+        }
+
+        private void writeChunk(byte[] type, byte[] data, int off, int len) {
+            putInt(chunkHeader, 0, len);
+            System.arraycopy(type, 0, chunkHeader, 4, 4);
+            out.write(chunkHeader, 0, 8);
+            out.write(data, off, len);
+            crc.reset();
+            crc.update(type);
+            crc.update(data, off, len);
+            int c = (int) crc.getValue();
+            putInt(chunkHeader, 0, c);
+            out.write(chunkHeader, 0, 4);
+        }
+
+        private static void putInt(byte[] b, int off, int v) {
+            b[off] = (byte) (v >>> 24);
+            b[off + 1] = (byte) (v >>> 16);
+            b[off + 2] = (byte) (v >>> 8);
+            b[off + 3] = (byte) v;
+        }
+    }
+}
@@ -15,6 +15,7 @@ public class RestaurantAdminService {
     private final DeliveryRatingRepository deliveryRatingRepository;
     private final RestaurantRatingRepository restaurantRatingRepository;
     private final CustomerOrderRepository customerOrderRepository;
+    private final MenuSnapshotCache menuSnapshotCache;
 
     public RestaurantAdminService(
             RestaurantRepository restaurantRepository,
@@ -24,7 +25,8 @@ public class RestaurantAdminService {
             OrderItemRepository orderItemRepository,
             DeliveryRatingRepository deliveryRatingRepository,
             RestaurantRatingRepository restaurantRatingRepository,
-            CustomerOrderRepository customerOrderRepository
+            CustomerOrderRepository customerOrderRepository,
+            MenuSnapshotCache menuSnapshotCache
     ) {
         this.restaurantRepository = restaurantRepository;
         this.restaurantUserRepository = restaurantUserRepository;
@@ -34,6 +36,7 @@ public class RestaurantAdminService {
         this.deliveryRatingRepository = deliveryRatingRepository;
         this.restaurantRatingRepository = restaurantRatingRepository;
         this.customerOrderRepository = customerOrderRepository;
+        this.menuSnapshotCache = menuSnapshotCache;
     }
 
     @Transactional
@@ -51,6 +54,7 @@ public class RestaurantAdminService {
         dishCategoryRepository.deleteByRestaurant_Id(restaurantId);
         restaurantUserRepository.deleteByRestaurant_Id(restaurantId);
         restaurantRepository.deleteById(restaurantId);
+        menuSnapshotCache.evict(restaurantId);
 
         return true;
     }
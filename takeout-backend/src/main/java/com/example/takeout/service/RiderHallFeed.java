@@ -0,0 +1,373 @@
+package com.example.takeout.service;
+
+import com.example.takeout.repository.CustomerOrderRepository;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 接单大厅推送：内存里维护“已支付、无人接”的订单集合，通过 SSE 把新增/移除实时推给在线骑手，
+ * 骑手端不再轮询大厅列表。订单状态变化的地方调用 {@link #changed(Long)}，提交后按主键回库确认一次；
+ * 另有低频全量对账，兜住未接入通知的改单路径。
+ * 所有集合变更和事件生成都在单个线程上顺序执行，新连接拿到的快照与后续增量不会错位。
+ * 实际写连接在一个小的发送线程池上做：每个连接有自己的有界待发队列，按顺序发送；
+ * 队列满或一次发送卡住超过 send-timeout-ms 的连接直接断开，慢连接不会拖慢其他骑手。
+ */
+@Service
+public class RiderHallFeed {
+
+    private static final Logger log = LoggerFactory.getLogger(RiderHallFeed.class);
+
+    private final CustomerOrderRepository customerOrderRepository;
+    private final ObjectMapper objectMapper;
+    private final long sseTimeoutMillis;
+    private final int snapshotLimit;
+    private final int maxSubscribers;
+    private final int maxPending;
+    private final long sendTimeoutMillis;
+
+    private final Map<Long, HallOrder> hall = new ConcurrentHashMap<>();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    // 已占用的连接名额，先占后建，保证不超过 max-subscribers
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ExecutorService worker;
+    private final ExecutorService senders;
+    private final Counter droppedSlow;
+
+    public RiderHallFeed(CustomerOrderRepository customerOrderRepository,
+                         ObjectMapper objectMapper,
+                         MeterRegistry meterRegistry,
+                         WorkerThreads workerThreads,
+                         @Value("${delivery.hall.sse-timeout-ms:1800000}") long sseTimeoutMillis,
+                         @Value("${delivery.hall.snapshot-limit:200}") int snapshotLimit,
+                         @Value("${delivery.hall.max-subscribers:2000}") int maxSubscribers,
+                         @Value("${delivery.hall.sender-threads:4}") int senderThreads,
+                         @Value("${delivery.hall.max-pending-events:256}") int maxPending,
+                         @Value("${delivery.hall.send-timeout-ms:10000}") long sendTimeoutMillis) {
+        this.customerOrderRepository = customerOrderRepository;
+        this.objectMapper = objectMapper;
+        this.sseTimeoutMillis = Math.max(10_000, sseTimeoutMillis);
+        this.snapshotLimit = Math.max(1, snapshotLimit);
+        this.maxSubscribers = Math.max(1, maxSubscribers);
+        this.maxPending = Math.max(8, maxPending);
+        this.sendTimeoutMillis = Math.max(1000, sendTimeoutMillis);
+        this.worker = Executors.newSingleThreadExecutor(workerThreads.named("rider-hall-feed"));
+        this.senders = Executors.newFixedThreadPool(Math.max(1, senderThreads), workerThreads.numbered("rider-hall-send-"));
+
+        Gauge.builder("rider.hall.size", hall, Map::size)
+                .register(meterRegistry);
+        Gauge.builder("rider.hall.subscribers", subscriberCount, AtomicInteger::get)
+                .register(meterRegistry);
+        this.droppedSlow = Counter.builder("rider.hall.dropped").description("slow subscribers disconnected")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        execute(this::reload);
+    }
+
+    /**
+     * 新的骑手连接：先推当前大厅快照（按下单时间倒序，最多 snapshot-limit 条），之后推增量。
+     * 快照和增量都带大厅总单数 total，快照之外的页由前端走分页查询。
+     * 在线连接数已满时返回 null。
+     */
+    public SseEmitter subscribe() {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            return null;
+        }
+        SseEmitter emitter = newEmitter();
+        Subscriber sub = new Subscriber(emitter, maxPending);
+        emitter.onCompletion(() -> close(sub));
+        emitter.onTimeout(() -> close(sub));
+        emitter.onError(e -> close(sub));
+        boolean queued = execute(() -> {
+            if (sub.closed.get()) return;
+            List<HallOrder> snapshot = new ArrayList<>(hall.values());
+            snapshot.sort(Comparator.comparing(HallOrder::createdAt, Comparator.nullsLast(Comparator.reverseOrder())));
+            if (snapshot.size() > snapshotLimit) snapshot = snapshot.subList(0, snapshotLimit);
+            String data = toJson(Map.of("items", snapshot, "total", hall.size()));
+            if (data == null) {
+                close(sub);
+                return;
+            }
+            subscribers.add(sub);
+            enqueue(sub, new Event("snapshot", data));
+        });
+        if (!queued) close(sub);
+        return emitter;
+    }
+
+    // 测试里替换成可控的连接
+    SseEmitter newEmitter() {
+        return new SseEmitter(sseTimeoutMillis);
+    }
+
+    /**
+     * 订单的支付/接单/取消等状态发生变化；处于事务中时等提交后再回库确认。
+     */
+    public void changed(Long orderId) {
+        if (orderId == null) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    execute(() -> refresh(orderId));
+                }
+            });
+        } else {
+            execute(() -> refresh(orderId));
+        }
+    }
+
+    @Scheduled(initialDelayString = "${delivery.hall.resync-ms:60000}", fixedDelayString = "${delivery.hall.resync-ms:60000}")
+    public void resync() {
+        execute(this::reload);
+    }
+
+    /**
+     * 心跳，同时断开一次发送卡住超过 send-timeout-ms 的连接。
+     */
+    @Scheduled(fixedDelayString = "${delivery.hall.heartbeat-ms:15000}")
+    public void heartbeat() {
+        if (subscribers.isEmpty()) return;
+        execute(() -> {
+            long now = System.currentTimeMillis();
+            for (Subscriber sub : subscribers) {
+                long since = sub.sendingSince;
+                if (since != 0 && now - since > sendTimeoutMillis) {
+                    drop(sub, "send timed out");
+                } else {
+                    enqueue(sub, Event.PING);
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+        senders.shutdownNow();
+        for (Subscriber sub : subscribers) {
+            sub.emitter.complete();
+        }
+        subscribers.clear();
+    }
+
+    private void refresh(Long orderId) {
+        HallOrder current = customerOrderRepository.findRiderHallOrder(orderId).map(RiderHallFeed::toHallOrder).orElse(null);
+        apply(orderId, current);
+    }
+
+    private void reload() {
+        Map<Long, HallOrder> fresh = new HashMap<>();
+        for (CustomerOrderRepository.RiderHallOrderProjection p : customerOrderRepository.findAllRiderHallOrders()) {
+            fresh.put(p.getId(), toHallOrder(p));
+        }
+        for (Long id : new ArrayList<>(hall.keySet())) {
+            if (!fresh.containsKey(id)) apply(id, null);
+        }
+        for (HallOrder o : fresh.values()) {
+            apply(o.id(), o);
+        }
+    }
+
+    private void apply(Long orderId, HallOrder current) {
+        if (current == null) {
+            if (hall.remove(orderId) != null) broadcast("remove", Map.of("id", orderId, "total", hall.size()));
+            return;
+        }
+        HallOrder prev = hall.put(orderId, current);
+        if (!Objects.equals(prev, current)) broadcast("add", new HallAdd(current, hall.size()));
+    }
+
+    private void broadcast(String name, Object payload) {
+        if (subscribers.isEmpty()) return;
+        String data = toJson(payload);
+        if (data == null) return;
+        Event event = new Event(name, data);
+        for (Subscriber sub : subscribers) {
+            enqueue(sub, event);
+        }
+    }
+
+    // 只在 worker 线程上调用，保证每个连接的入队顺序与大厅变更顺序一致
+    private void enqueue(Subscriber sub, Event event) {
+        if (sub.closed.get()) return;
+        if (!sub.pending.offer(event)) {
+            drop(sub, "too many pending events");
+            return;
+        }
+        if (sub.draining.compareAndSet(false, true)) {
+            try {
+                senders.execute(() -> drain(sub));
+            } catch (RejectedExecutionException e) {
+                sub.draining.set(false);
+            }
+        }
+    }
+
+    // 在发送线程上按顺序发完一个连接的待发事件；同一连接同时只有一个线程在发
+    private void drain(Subscriber sub) {
+        while (true) {
+            Event event = sub.pending.poll();
+            if (event == null) {
+                sub.draining.set(false);
+                // 释放标记后又有事件入队、但入队方没抢到标记时，由这里接着发
+                if (sub.pending.isEmpty() || !sub.draining.compareAndSet(false, true)) return;
+                continue;
+            }
+            if (sub.closed.get()) continue;
+            sub.sendingSince = System.currentTimeMillis();
+            boolean ok = send(sub.emitter, event);
+            sub.sendingSince = 0;
+            if (!ok) close(sub);
+        }
+    }
+
+    private boolean send(SseEmitter emitter, Event event) {
+        try {
+            emitter.send(event.name() == null
+                    ? SseEmitter.event().comment(event.data())
+                    : SseEmitter.event().name(event.name()).data(event.data()));
+            return true;
+        } catch (Exception e) {
+            // 连接已断开，容器稍后会回调 onCompletion/onError
+            return false;
+        }
+    }
+
+    private void drop(Subscriber sub, String reason) {
+        if (sub.closed.get()) return;
+        droppedSlow.increment();
+        log.info("Disconnecting slow rider hall subscriber: {}", reason);
+        close(sub);
+        try {
+            sub.emitter.complete();
+        } catch (Exception ignored) {
+        }
+    }
+
+    // 每个连接只释放一次名额
+    private void close(Subscriber sub) {
+        if (!sub.closed.compareAndSet(false, true)) return;
+        subscribers.remove(sub);
+        sub.pending.clear();
+        subscriberCount.decrementAndGet();
+    }
+
+    private String toJson(Object payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (Exception e) {
+            log.warn("Failed to serialize rider hall event", e);
+            return null;
+        }
+    }
+
+    private boolean execute(Runnable task) {
+        try {
+            worker.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.warn("Rider hall feed task failed", e);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException ignored) {
+            // 正在关闭
+            return false;
+        }
+    }
+
+    private static HallOrder toHallOrder(CustomerOrderRepository.RiderHallOrderProjection p) {
+        return new HallOrder(
+                p.getId(),
+                p.getRestaurantId(),
+                p.getRestaurantName(),
+                p.getCustomerId(),
+                p.getCustomerUsername(),
+                p.getStatus(),
+                p.getPayStatus(),
+                p.getPayAmount(),
+                p.getCreatedAt(),
+                p.getPaidAt(),
+                p.getAddressDetail(),
+                p.getContactName(),
+                p.getContactPhone()
+        );
+    }
+
+    /**
+     * 推送给骑手端的大厅订单，字段与 /api/rider/hall-orders 列表项一致。
+     */
+    public record HallOrder(Long id,
+                            Long restaurantId,
+                            String restaurantName,
+                            Long customerId,
+                            String customerUsername,
+                            String status,
+                            String payStatus,
+                            BigDecimal payAmount,
+                            LocalDateTime createdAt,
+                            LocalDateTime paidAt,
+                            String addressDetail,
+                            String contactName,
+                            String contactPhone) {
+    }
+
+    // add 事件：订单字段平铺，另加大厅总单数
+    private record HallAdd(@JsonUnwrapped HallOrder order, int total) {
+    }
+
+    // 待发事件；name 为空时是注释（心跳）
+    private record Event(String name, String data) {
+        static final Event PING = new Event(null, "ping");
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final ArrayBlockingQueue<Event> pending;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // 当前这次发送的开始时间，0 表示没有在发
+        private volatile long sendingSince;
+
+        Subscriber(SseEmitter emitter, int maxPending) {
+            this.emitter = emitter;
+            this.pending = new ArrayBlockingQueue<>(maxPending);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.takeout.service;
+
+import com.example.takeout.repository.DeliveryStaffRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 骑手负载对账：定期按订单表重算每个骑手的实际在途单数，与 current_load 不一致的记日志并纠正。
+ * 负载平时靠原子增减维护，这里兜住漏减（如进程中途退出）和手工改库造成的偏差。
+ */
+@Service
+public class RiderLoadReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(RiderLoadReconciler.class);
+
+    private final DeliveryStaffRepository deliveryStaffRepository;
+    private final Counter corrections;
+    // 最近一次对账的偏差总量（各骑手 |记录值 - 实际值| 之和）
+    private final AtomicLong lastDrift = new AtomicLong();
+
+    public RiderLoadReconciler(DeliveryStaffRepository deliveryStaffRepository,
+                               MeterRegistry meterRegistry) {
+        this.deliveryStaffRepository = deliveryStaffRepository;
+        Gauge.builder("delivery.load.drift", lastDrift, AtomicLong::get)
+                .register(meterRegistry);
+        this.corrections = Counter.builder("delivery.load.corrections").register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${delivery.load.reconcile-initial-delay-ms:60000}",
+            fixedDelayString = "${delivery.load.reconcile-interval-ms:300000}")
+    @Transactional
+    public void reconcile() {
+        List<DeliveryStaffRepository.LoadDriftProjection> drift = deliveryStaffRepository.findLoadDrift();
+        long total = 0;
+        for (DeliveryStaffRepository.LoadDriftProjection d : drift) {
+            long recorded = d.getRecordedLoad() == null ? 0 : d.getRecordedLoad();
+            long actual = d.getActualLoad() == null ? 0 : d.getActualLoad();
+            total += Math.abs(recorded - actual);
+            log.warn("Rider {} load drift: recorded {}, actual {}", d.getDeliveryStaffId(), recorded, actual);
+        }
+        lastDrift.set(total);
+        if (drift.isEmpty()) return;
+
+        // 重算语句本身按订单表取当前值，对账期间新增的增减也不会被覆盖成旧数
+        int fixed = deliveryStaffRepository.recomputeLoad(
+                drift.stream().map(DeliveryStaffRepository.LoadDriftProjection::getDeliveryStaffId).toList());
+        corrections.increment(fixed);
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.takeout.service;
+
+import com.example.takeout.entity.DeliveryStaff;
+import com.example.takeout.repository.DeliveryStaffRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 骑手位置上报的内存管道：每个骑手只保留最新一次坐标，上报时只改内存和派单索引，不访问数据库；
+ * 有变化的骑手记入待写集合，定时用一条 JDBC batch 把最新坐标写回 delivery_staff。
+ * 同一骑手在一个写库周期内的多次上报自然合并成一次 UPDATE。
+ * 派单打分、骑手路线、统计等读坐标的地方优先读这里，库里的坐标最多落后一个写库周期。
+ * 每次上报同时追加到骑手历史轨迹（{@link RiderTrackStore}）。
+ */
+@Service
+public class RiderLocationService {
+
+    private static final Logger log = LoggerFactory.getLogger(RiderLocationService.class);
+
+    // 未知骑手缓存的上限，超出时先清过期项，仍超出则整体清空，防止乱填 id 把内存撑大
+    private static final int MAX_UNKNOWN = 10_000;
+
+    private static final String UPDATE_SQL = """
+            update delivery_staff set current_lat = ?, current_lng = ?, location_updated_at = ?
+            where id = ?
+            """;
+
+    private final DeliveryStaffRepository deliveryStaffRepository;
+    private final RiderSpatialIndex riderSpatialIndex;
+    private final RiderTrackStore riderTrackStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final long unknownTtlMillis;
+
+    // 骑手 id -> 最新坐标
+    private final Map<Long, Fix> latest = new ConcurrentHashMap<>();
+    // 骑手 id -> 是否 ACTIVE；上报时据此判断骑手是否存在、是否进派单索引，免得每次上报查库
+    private final Map<Long, Boolean> activeById = new ConcurrentHashMap<>();
+    // 库里查不到的骑手 id -> 过期时间（毫秒）；过期前的上报直接拒绝，不再查库
+    private final Map<Long, Long> unknownUntil = new ConcurrentHashMap<>();
+    // 坐标已变、尚未写库的骑手
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    // 定时写库与停机写库互斥；持锁期间有批量写库，用 ReentrantLock 避免虚拟线程钉住载体线程
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final Counter pings;
+    private final Counter flushedRows;
+    private final Counter flushFailures;
+    private final Counter unknownRejected;
+
+    public RiderLocationService(DeliveryStaffRepository deliveryStaffRepository,
+                                RiderSpatialIndex riderSpatialIndex,
+                                RiderTrackStore riderTrackStore,
+                                JdbcTemplate jdbcTemplate,
+                                MeterRegistry meterRegistry,
+                                @Value("${delivery.location.batch-size:500}") int batchSize,
+                                @Value("${delivery.location.unknown-staff-ttl-ms:30000}") long unknownTtlMillis) {
+        this.deliveryStaffRepository = deliveryStaffRepository;
+        this.riderSpatialIndex = riderSpatialIndex;
+        this.riderTrackStore = riderTrackStore;
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = Math.max(1, batchSize);
+        this.unknownTtlMillis = Math.max(0, unknownTtlMillis);
+
+        this.pings = Counter.builder("rider.location.pings").register(meterRegistry);
+        this.flushedRows = Counter.builder("rider.location.flushed").register(meterRegistry);
+        this.flushFailures = Counter.builder("rider.location.flush.failures").register(meterRegistry);
+        this.unknownRejected = Counter.builder("rider.location.unknown").register(meterRegistry);
+        Gauge.builder("rider.location.pending", dirty, Set::size)
+                .register(meterRegistry);
+        Gauge.builder("rider.location.tracked", latest, Map::size)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        for (DeliveryStaff s : deliveryStaffRepository.findAll()) {
+            activeById.put(s.getId(), isActive(s));
+            if (s.getCurrentLat() != null && s.getCurrentLng() != null) {
+                // 启动后已经收到的上报比库里的新，不覆盖
+                latest.putIfAbsent(s.getId(), new Fix(s.getCurrentLat(), s.getCurrentLng(), s.getLocationUpdatedAt()));
+            }
+        }
+    }
+
+    /**
+     * 记录一次骑手位置上报；骑手不存在时返回 false。
+     */
+    public boolean record(Long staffId, double lat, double lng) {
+        if (staffId == null) return false;
+        Boolean active = activeById.get(staffId);
+        if (active == null) {
+            Long until = unknownUntil.get(staffId);
+            if (until != null && until > System.currentTimeMillis()) {
+                unknownRejected.increment();
+                return false;
+            }
+            // 启动后新建的骑手，查一次库后缓存；查不到的 id 在 TTL 内不再查库
+            DeliveryStaff s = deliveryStaffRepository.findById(staffId).orElse(null);
+            if (s == null) {
+                rememberUnknown(staffId);
+                unknownRejected.increment();
+                return false;
+            }
+            unknownUntil.remove(staffId);
+            active = isActive(s);
+            activeById.put(staffId, active);
+        }
+        pings.increment();
+        Fix fix = new Fix(lat, lng, LocalDateTime.now());
+        latest.put(staffId, fix);
+        dirty.add(staffId);
+        if (active) riderSpatialIndex.put(staffId, lat, lng);
+        riderTrackStore.append(staffId, lat, lng, fix.at());
+        return true;
+    }
+
+    public Optional<Fix> latest(Long staffId) {
+        return staffId == null ? Optional.empty() : Optional.ofNullable(latest.get(staffId));
+    }
+
+    /**
+     * 骑手当前坐标：优先内存里的最新上报，没有时用实体上的（库里的）坐标；都没有返回 null。
+     */
+    public Fix positionOf(DeliveryStaff staff) {
+        if (staff == null) return null;
+        Fix fix = staff.getId() == null ? null : latest.get(staff.getId());
+        if (fix != null) return fix;
+        if (staff.getCurrentLat() == null || staff.getCurrentLng() == null) return null;
+        return new Fix(staff.getCurrentLat(), staff.getCurrentLng(), staff.getLocationUpdatedAt());
+    }
+
+    /**
+     * 管理员新建/修改骑手后调用：刷新状态缓存，并按最新坐标同步派单索引。
+     */
+    public void staffChanged(DeliveryStaff staff) {
+        if (staff == null || staff.getId() == null) return;
+        boolean active = isActive(staff);
+        activeById.put(staff.getId(), active);
+        unknownUntil.remove(staff.getId());
+        Fix fix = positionOf(staff);
+        if (active && fix != null) {
+            riderSpatialIndex.put(staff.getId(), fix.lat(), fix.lng());
+        } else {
+            riderSpatialIndex.remove(staff.getId());
+        }
+    }
+
+    public void staffRemoved(Long staffId) {
+        if (staffId == null) return;
+        activeById.remove(staffId);
+        latest.remove(staffId);
+        dirty.remove(staffId);
+        riderSpatialIndex.remove(staffId);
+    }
+
+    @Scheduled(fixedDelayString = "${delivery.location.flush-ms:3000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * 把待写集合里骑手的最新坐标批量写库。先摘掉待写标记再取坐标，期间的新上报会重新打标记，下一轮再写。
+     */
+    void flush() {
+        flushLock.lock();
+        try {
+            if (dirty.isEmpty()) return;
+            List<Row> rows = new ArrayList<>(dirty.size());
+            for (Long id : dirty) {
+                if (!dirty.remove(id)) continue;
+                Fix fix = latest.get(id);
+                if (fix != null) rows.add(new Row(id, fix));
+            }
+            for (int from = 0; from < rows.size(); from += batchSize) {
+                List<Row> chunk = rows.subList(from, Math.min(rows.size(), from + batchSize));
+                try {
+                    jdbcTemplate.batchUpdate(UPDATE_SQL, chunk, chunk.size(), (ps, row) -> {
+                        ps.setDouble(1, row.fix().lat());
+                        ps.setDouble(2, row.fix().lng());
+                        ps.setTimestamp(3, row.fix().at() == null ? null : Timestamp.valueOf(row.fix().at()));
+                        ps.setLong(4, row.staffId());
+                    });
+                    flushedRows.increment(chunk.size());
+                } catch (Exception e) {
+                    // 写库失败的骑手重新标记，下一轮重试（届时写的是更新后的坐标）
+                    chunk.forEach(row -> dirty.add(row.staffId()));
+                    flushFailures.increment();
+                    log.warn("Rider location flush failed for {} riders, will retry", chunk.size(), e);
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void rememberUnknown(Long staffId) {
+        if (unknownTtlMillis == 0) return;
+        long now = System.currentTimeMillis();
+        if (unknownUntil.size() >= MAX_UNKNOWN) {
+            unknownUntil.values().removeIf(until -> until <= now);
+            if (unknownUntil.size() >= MAX_UNKNOWN) unknownUntil.clear();
+        }
+        unknownUntil.put(staffId, now + unknownTtlMillis);
+    }
+
+    private static boolean isActive(DeliveryStaff s) {
+        return "ACTIVE".equalsIgnoreCase(s.getStatus());
+    }
+
+    private record Row(Long staffId, Fix fix) {
+    }
+
+    /**
+     * 骑手的一次定位；at 为服务端收到上报的时间。
+     */
+    public record Fix(double lat, double lng, LocalDateTime at) {
+    }
+}
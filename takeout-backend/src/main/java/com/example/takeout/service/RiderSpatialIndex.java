@@ -0,0 +1,154 @@
+package com.example.takeout.service;
+
+import com.example.takeout.entity.DeliveryStaff;
+import com.example.takeout.repository.DeliveryStaffRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 在线骑手位置的内存网格索引（经纬度按固定角度切格子），派单时只查询附近的 k 个骑手，
+ * 不再每单全表加载骑手。由骑手上报位置、管理员修改骑手状态时更新，启动时从库里加载一次。
+ */
+@Service
+public class RiderSpatialIndex {
+
+    private static final double KM_PER_DEG_LAT = 111.32;
+
+    private final DeliveryStaffRepository deliveryStaffRepository;
+    private final double cellDeg;
+
+    private final Map<Long, Position> positions = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> cells = new ConcurrentHashMap<>();
+
+    public RiderSpatialIndex(DeliveryStaffRepository deliveryStaffRepository,
+                             @Value("${delivery.index.cell-deg:0.01}") double cellDeg) {
+        this.deliveryStaffRepository = deliveryStaffRepository;
+        this.cellDeg = cellDeg > 0 ? cellDeg : 0.01;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        for (DeliveryStaff s : deliveryStaffRepository.findAll()) {
+            update(s);
+        }
+    }
+
+    /**
+     * 按骑手当前状态和坐标更新索引；非 ACTIVE 或没有坐标的骑手会被移出。
+     */
+    public void update(DeliveryStaff staff) {
+        if (staff == null || staff.getId() == null) return;
+        boolean active = "ACTIVE".equalsIgnoreCase(staff.getStatus());
+        if (!active || staff.getCurrentLat() == null || staff.getCurrentLng() == null) {
+            remove(staff.getId());
+            return;
+        }
+        put(staff.getId(), staff.getCurrentLat(), staff.getCurrentLng());
+    }
+
+    public void put(Long staffId, double lat, double lng) {
+        long cell = cellKey(lat, lng);
+        positions.compute(staffId, (id, old) -> {
+            if (old != null && old.cell() != cell) {
+                removeFromCell(old.cell(), id);
+            }
+            if (old == null || old.cell() != cell) {
+                cells.compute(cell, (k, ids) -> {
+                    Set<Long> set = ids == null ? ConcurrentHashMap.newKeySet() : ids;
+                    set.add(id);
+                    return set;
+                });
+            }
+            return new Position(lat, lng, cell);
+        });
+    }
+
+    public void remove(Long staffId) {
+        if (staffId == null) return;
+        positions.computeIfPresent(staffId, (id, old) -> {
+            removeFromCell(old.cell(), id);
+            return null;
+        });
+    }
+
+    public int size() {
+        return positions.size();
+    }
+
+    /**
+     * 返回距离 (lat,lng) radiusKm 以内最近的至多 k 个骑手，按距离升序。
+     * 从所在格子开始一圈圈向外扩，已找到 k 个且第 k 个比下一圈可能出现的最近点还近时停止。
+     */
+    public List<Nearby> nearest(double lat, double lng, int k, double radiusKm) {
+        if (k <= 0 || positions.isEmpty()) return List.of();
+        int cy = (int) Math.floor(lat / cellDeg);
+        int cx = (int) Math.floor(lng / cellDeg);
+        // 一个格子在东西方向最窄（取搜索范围内纬度最高处），用它估算“第 r 圈以内保证覆盖的距离”
+        double latEdge = Math.min(89.0, Math.abs(lat) + radiusKm / KM_PER_DEG_LAT + cellDeg);
+        double minCellKm = cellDeg * KM_PER_DEG_LAT * Math.cos(Math.toRadians(latEdge));
+        int maxRing = (int) Math.ceil(radiusKm / Math.max(minCellKm, 1e-6)) + 1;
+
+        PriorityQueue<Nearby> best = new PriorityQueue<>(Comparator.comparingDouble(Nearby::distanceKm).reversed());
+        for (int r = 0; r <= maxRing; r++) {
+            for (int dy = -r; dy <= r; dy++) {
+                boolean edgeRow = dy == -r || dy == r;
+                for (int dx = -r; dx <= r; dx += edgeRow ? 1 : 2 * r) {
+                    Set<Long> ids = cells.get(pack(cy + dy, cx + dx));
+                    if (ids != null) collect(ids, lat, lng, k, radiusKm, best);
+                    if (r == 0) break;
+                }
+            }
+            // 第 r 圈之外的点距离至少 r * minCellKm
+            if (best.size() >= k && best.peek().distanceKm() <= r * minCellKm) break;
+        }
+        List<Nearby> out = new ArrayList<>(best);
+        out.sort(Comparator.comparingDouble(Nearby::distanceKm));
+        return out;
+    }
+
+    private void collect(Set<Long> ids, double lat, double lng, int k, double radiusKm, PriorityQueue<Nearby> best) {
+        for (Long id : ids) {
+            Position p = positions.get(id);
+            if (p == null) continue;
+            double d = DeliveryAssignmentService.haversineKm(lat, lng, p.lat(), p.lng());
+            if (d > radiusKm) continue;
+            if (best.size() < k) {
+                best.add(new Nearby(id, d));
+            } else if (d < best.peek().distanceKm()) {
+                best.poll();
+                best.add(new Nearby(id, d));
+            }
+        }
+    }
+
+    private void removeFromCell(long cell, Long id) {
+        cells.computeIfPresent(cell, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private long cellKey(double lat, double lng) {
+        return pack((int) Math.floor(lat / cellDeg), (int) Math.floor(lng / cellDeg));
+    }
+
+    private static long pack(int y, int x) {
+        return ((long) y << 32) | (x & 0xFFFFFFFFL);
+    }
+
+    private record Position(double lat, double lng, long cell) {
+    }
+
+    public record Nearby(Long staffId, double distanceKm) {
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.takeout.service;
+
+import com.example.takeout.entity.RiderTrackChunk;
+import com.example.takeout.repository.RiderTrackChunkRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 骑手历史轨迹：每个骑手在内存里有一个正在写的轨迹段，位置上报时把点差分编码追加进去；
+ * 点数、字节数或时长到上限后封段，定时用 JDBC batch 一次插入若干段到 rider_track_chunks。
+ * 库里只有追加插入，没有更新，一段几百个点只占一行。
+ * 订单的轨迹取接单骑手在该单支付到结束这段时间内的点（库里的段 + 尚未落库的段）。
+ */
+@Service
+public class RiderTrackStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RiderTrackStore.class);
+
+    private static final String INSERT_SQL = """
+            insert into rider_track_chunks (delivery_staff_id, started_at, ended_at, point_count, data)
+            values (?, ?, ?, ?, ?)
+            """;
+    // data 列长 8192，留出最后一个点的余量
+    private static final int MAX_CHUNK_BYTES = 8192 - 64;
+
+    private final RiderTrackChunkRepository riderTrackChunkRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxPoints;
+    private final long maxAgeMillis;
+    private final int batchSize;
+
+    // 骑手 id -> 正在写的轨迹段；只在 ConcurrentHashMap.compute 内访问，同一骑手的追加天然串行
+    private final Map<Long, TrackCodec.Writer> open = new ConcurrentHashMap<>();
+    // 已封段、待落库
+    private final Queue<Sealed> sealed = new ConcurrentLinkedQueue<>();
+    // 落库只能有一个线程在做（见 writePending）；持锁期间有批量写库，用 ReentrantLock 避免虚拟线程钉住载体线程
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final Counter points;
+    private final Counter chunksWritten;
+    private final Counter bytesWritten;
+    private final Counter flushFailures;
+
+    public RiderTrackStore(RiderTrackChunkRepository riderTrackChunkRepository,
+                           JdbcTemplate jdbcTemplate,
+                           MeterRegistry meterRegistry,
+                           @Value("${delivery.track.chunk-max-points:360}") int maxPoints,
+                           @Value("${delivery.track.chunk-max-age-ms:600000}") long maxAgeMillis,
+                           @Value("${delivery.track.batch-size:200}") int batchSize) {
+        this.riderTrackChunkRepository = riderTrackChunkRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxPoints = Math.max(2, maxPoints);
+        this.maxAgeMillis = Math.max(1000, maxAgeMillis);
+        this.batchSize = Math.max(1, batchSize);
+
+        this.points = Counter.builder("rider.track.points").register(meterRegistry);
+        this.chunksWritten = Counter.builder("rider.track.chunks").register(meterRegistry);
+        this.bytesWritten = Counter.builder("rider.track.bytes").register(meterRegistry);
+        this.flushFailures = Counter.builder("rider.track.flush.failures").register(meterRegistry);
+        Gauge.builder("rider.track.pending", sealed, Queue::size)
+                .register(meterRegistry);
+    }
+
+    public void append(Long staffId, double lat, double lng, LocalDateTime at) {
+        if (staffId == null || at == null) return;
+        long atMillis = toMillis(at);
+        open.compute(staffId, (id, w) -> {
+            if (w == null) w = new TrackCodec.Writer();
+            w.append(lat, lng, atMillis);
+            if (w.count() >= maxPoints || w.size() >= MAX_CHUNK_BYTES) {
+                seal(id, w);
+                return null;
+            }
+            return w;
+        });
+        points.increment();
+    }
+
+    /**
+     * 骑手在 [from, to] 内的轨迹点，按时间升序。
+     */
+    public List<TrackCodec.Point> track(Long staffId, LocalDateTime from, LocalDateTime to) {
+        if (staffId == null || from == null || to == null || to.isBefore(from)) return List.of();
+        long fromMillis = toMillis(from);
+        long toMillis = toMillis(to);
+        // 段的流向是 open → sealed → 库，读取按相反顺序：先读正在写的段，再读队列，最后查库。
+        // 这样读的过程中被封段或落库的段一定会在后面的一步里读到；同一段读到两次时以时间为键去重
+        TreeMap<Long, TrackCodec.Point> merged = new TreeMap<>();
+        byte[][] current = new byte[1][];
+        open.computeIfPresent(staffId, (id, w) -> {
+            current[0] = w.toByteArray();
+            return w;
+        });
+        if (current[0] != null) collect(current[0], fromMillis, toMillis, merged);
+        for (Sealed s : sealed) {
+            if (staffId.equals(s.staffId())) collect(s.data(), fromMillis, toMillis, merged);
+        }
+        for (RiderTrackChunk c : riderTrackChunkRepository.findOverlapping(staffId, from, to)) {
+            collect(c.getData(), fromMillis, toMillis, merged);
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    /**
+     * 封掉写了太久的段，再把待落库的段批量插入。
+     */
+    @Scheduled(fixedDelayString = "${delivery.track.flush-ms:5000}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        for (Long staffId : open.keySet()) {
+            open.computeIfPresent(staffId, (id, w) -> {
+                if (now - w.firstMillis() < maxAgeMillis) return w;
+                seal(id, w);
+                return null;
+            });
+        }
+        writePending();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Long staffId : open.keySet()) {
+            open.computeIfPresent(staffId, (id, w) -> {
+                seal(id, w);
+                return null;
+            });
+        }
+        writePending();
+    }
+
+    private void writePending() {
+        writeLock.lock();
+        try {
+            while (!sealed.isEmpty()) {
+                // 只有这里会摘队头，取出的一批正好是队头的这几段
+                List<Sealed> batch = new ArrayList<>(batchSize);
+                Iterator<Sealed> it = sealed.iterator();
+                while (it.hasNext() && batch.size() < batchSize) batch.add(it.next());
+                if (!insert(batch)) return;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 插入成功后才从队列里摘掉，失败的留在队列里下一轮重试。
+     */
+    private boolean insert(List<Sealed> batch) {
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, c) -> {
+                ps.setLong(1, c.staffId());
+                ps.setTimestamp(2, Timestamp.valueOf(toLocal(c.startedMillis())));
+                ps.setTimestamp(3, Timestamp.valueOf(toLocal(c.endedMillis())));
+                ps.setInt(4, c.pointCount());
+                ps.setBytes(5, c.data());
+            });
+        } catch (Exception e) {
+            flushFailures.increment();
+            log.warn("Rider track flush failed for {} chunks, will retry", batch.size(), e);
+            return false;
+        }
+        for (Sealed c : batch) {
+            sealed.poll();
+            bytesWritten.increment(c.data().length);
+        }
+        chunksWritten.increment(batch.size());
+        return true;
+    }
+
+    private void seal(Long staffId, TrackCodec.Writer w) {
+        if (w.count() == 0) return;
+        sealed.add(new Sealed(staffId, w.firstMillis(), w.lastMillis(), w.count(), w.toByteArray()));
+    }
+
+    private static void collect(byte[] data, long fromMillis, long toMillis, TreeMap<Long, TrackCodec.Point> out) {
+        for (TrackCodec.Point p : TrackCodec.decode(data)) {
+            if (p.atMillis() >= fromMillis && p.atMillis() <= toMillis) out.put(p.atMillis(), p);
+        }
+    }
+
+    private static long toMillis(LocalDateTime t) {
+        return t.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    public static LocalDateTime toLocal(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    private record Sealed(Long staffId, long startedMillis, long endedMillis, int pointCount, byte[] data) {
+    }
+}
@@ -0,0 +1,650 @@
+package com.example.takeout.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 离线路网：生成文件时做 contraction hierarchies 预处理（按重要度逐个收缩节点、补捷径边），
+ * 文件里只存向上图（边指向更重要的节点）和反向存放的向下图，都是按节点压缩的 CSR，加载时只读内存映射，边数组不进堆。
+ * 查询从起点沿向上图、从终点沿向下图各做一次很小的 Dijkstra，在相遇点取最小值，城市级路网一次只涉及几百个节点。
+ * <p>
+ * 文件格式（大端 int）：魔数、节点数 n、向上边数 mu、向下边数 md，然后依次是
+ * lat[n]、lng[n]（1e-6 度，坐标系需与业务坐标一致）、
+ * upFirst[n+1]、upTarget[mu]、upMeters[mu]、upDeciseconds[mu]、
+ * downFirst[n+1]、downSource[md]、downMeters[md]、downDeciseconds[md]。
+ * 用 {@link Builder} 从任意路网数据（如 OSM 导出的路段）生成。
+ * <p>
+ * 权重为用时（0.1 秒），距离随路径累加。实例线程安全，搜索状态用完放回池里复用。
+ */
+public final class RoadGraph {
+
+    static final int MAGIC = 0x52474832;
+
+    // 节点网格索引的格子大小（度，约 500 米）
+    private static final double CELL_DEG = 0.005;
+    private static final double EARTH_RADIUS_M = 6371008.8;
+
+    private final int nodeCount;
+    private final int upCount;
+    private final int downCount;
+    private final IntBuffer lat;
+    private final IntBuffer lng;
+    private final IntBuffer upFirst;
+    private final IntBuffer upTarget;
+    private final IntBuffer upMeters;
+    private final IntBuffer upDeciseconds;
+    private final IntBuffer downFirst;
+    private final IntBuffer downSource;
+    private final IntBuffer downMeters;
+    private final IntBuffer downDeciseconds;
+
+    // 网格索引：cellKeys 升序，cellStart[i]..cellStart[i+1] 是 nodesByCell 中落在该格的节点
+    private final long[] cellKeys;
+    private final int[] cellStart;
+    private final int[] nodesByCell;
+
+    // 空闲的搜索状态；并发查询数一般很小，用完归还，不按线程各留一份
+    private final Queue<Search> idle = new ConcurrentLinkedQueue<>();
+
+    private RoadGraph(ByteBuffer buf) {
+        if (buf.capacity() < 16 || buf.getInt(0) != MAGIC) throw new IllegalArgumentException("not a road graph file");
+        this.nodeCount = buf.getInt(4);
+        this.upCount = buf.getInt(8);
+        this.downCount = buf.getInt(12);
+        int n = nodeCount;
+        long expected = 16L + 4L * (2L * n + 2L * (n + 1) + 3L * upCount + 3L * downCount);
+        if (n < 0 || upCount < 0 || downCount < 0 || buf.capacity() < expected) {
+            throw new IllegalArgumentException("truncated road graph file");
+        }
+        int[] off = {16};
+        this.lat = ints(buf, off, n);
+        this.lng = ints(buf, off, n);
+        this.upFirst = ints(buf, off, n + 1);
+        this.upTarget = ints(buf, off, upCount);
+        this.upMeters = ints(buf, off, upCount);
+        this.upDeciseconds = ints(buf, off, upCount);
+        this.downFirst = ints(buf, off, n + 1);
+        this.downSource = ints(buf, off, downCount);
+        this.downMeters = ints(buf, off, downCount);
+        this.downDeciseconds = ints(buf, off, downCount);
+
+        long[] keyed = new long[n];
+        for (int v = 0; v < n; v++) keyed[v] = cellKey(cellOf(lat.get(v)), cellOf(lng.get(v)));
+        // 按格子排序：高位放格子序号，低位放节点号
+        long[] distinct = Arrays.stream(keyed).distinct().sorted().toArray();
+        long[] packed = new long[n];
+        for (int v = 0; v < n; v++) packed[v] = ((long) Arrays.binarySearch(distinct, keyed[v]) << 32) | v;
+        Arrays.sort(packed);
+        this.cellKeys = distinct;
+        this.cellStart = new int[distinct.length + 1];
+        this.nodesByCell = new int[n];
+        for (int i = 0; i < n; i++) {
+            nodesByCell[i] = (int) packed[i];
+            cellStart[(int) (packed[i] >>> 32) + 1]++;
+        }
+        for (int c = 0; c < distinct.length; c++) cellStart[c + 1] += cellStart[c];
+    }
+
+    public static RoadGraph load(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            // 映射在通道关闭后仍然有效
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return new RoadGraph(buf);
+        }
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int edgeCount() {
+        return upCount + downCount;
+    }
+
+    public double lat(int node) {
+        return lat.get(node) / 1e6;
+    }
+
+    public double lng(int node) {
+        return lng.get(node) / 1e6;
+    }
+
+    /**
+     * 离坐标最近、且不超过 maxMeters 的节点；没有时返回 -1。
+     */
+    public int nearestNode(double pLat, double pLng, double maxMeters) {
+        int ring = (int) Math.ceil(maxMeters / (CELL_DEG * 111_000 * Math.max(0.2, Math.cos(Math.toRadians(pLat)))));
+        int cLat = cellOf((int) Math.round(pLat * 1e6));
+        int cLng = cellOf((int) Math.round(pLng * 1e6));
+        // 候选之间用平面近似比较（按微度平方），只对选中的节点算一次球面距离
+        int pLatMicro = (int) Math.round(pLat * 1e6);
+        int pLngMicro = (int) Math.round(pLng * 1e6);
+        double lngScale = Math.cos(Math.toRadians(pLat));
+        int best = -1;
+        double bestSq = Double.POSITIVE_INFINITY;
+        for (int dLat = -ring; dLat <= ring; dLat++) {
+            for (int dLng = -ring; dLng <= ring; dLng++) {
+                int idx = Arrays.binarySearch(cellKeys, cellKey(cLat + dLat, cLng + dLng));
+                if (idx < 0) continue;
+                for (int i = cellStart[idx]; i < cellStart[idx + 1]; i++) {
+                    int v = nodesByCell[i];
+                    double dy = lat.get(v) - pLatMicro;
+                    double dx = (lng.get(v) - pLngMicro) * lngScale;
+                    double sq = dx * dx + dy * dy;
+                    if (sq < bestSq) {
+                        bestSq = sq;
+                        best = v;
+                    }
+                }
+            }
+        }
+        if (best < 0 || distanceMeters(pLat, pLng, lat(best), lng(best)) > maxMeters) return -1;
+        return best;
+    }
+
+    /**
+     * from 到 to 用时最短的路径；不可达时返回 null。
+     */
+    public Cost shortest(int from, int to) {
+        if (from == to) return new Cost(0, 0);
+        Search fwd = borrow();
+        Search bwd = borrow();
+        try {
+            fwd.relax(from, 0, 0);
+            bwd.relax(to, 0, 0);
+            double best = Double.POSITIVE_INFINITY;
+            int meet = -1;
+            // 两个方向交替推进，队头都不小于当前最优时停止
+            while (true) {
+                boolean fwdOpen = !fwd.heapEmpty() && fwd.minKey() < best;
+                boolean bwdOpen = !bwd.heapEmpty() && bwd.minKey() < best;
+                if (!fwdOpen && !bwdOpen) break;
+                if (fwdOpen) {
+                    int u = fwd.pop();
+                    if (u >= 0) {
+                        if (bwd.isReached(u) && fwd.seconds[u] + bwd.seconds[u] < best) {
+                            best = fwd.seconds[u] + bwd.seconds[u];
+                            meet = u;
+                        }
+                        expandUp(fwd, u);
+                    }
+                }
+                if (bwdOpen) {
+                    int u = bwd.pop();
+                    if (u >= 0) {
+                        if (fwd.isReached(u) && fwd.seconds[u] + bwd.seconds[u] < best) {
+                            best = fwd.seconds[u] + bwd.seconds[u];
+                            meet = u;
+                        }
+                        expandDown(bwd, u);
+                    }
+                }
+            }
+            return meet < 0 ? null : new Cost(fwd.meters[meet] + bwd.meters[meet], best);
+        } finally {
+            idle.offer(fwd);
+            idle.offer(bwd);
+        }
+    }
+
+    /**
+     * 每个起点到同一终点用时最短的路径：终点方向只搜一次（向下图的完整搜索空间），
+     * 每个起点再做一次向上搜索与之拼接。结果与 sources 一一对应，起点为 -1 或不可达时为 null。
+     */
+    public Cost[] shortestToTarget(int[] sources, int to) {
+        Cost[] out = new Cost[sources.length];
+        Search bwd = borrow();
+        Search fwd = borrow();
+        try {
+            bwd.relax(to, 0, 0);
+            while (!bwd.heapEmpty()) {
+                int u = bwd.pop();
+                if (u >= 0) expandDown(bwd, u);
+            }
+            for (int i = 0; i < sources.length; i++) {
+                int src = sources[i];
+                if (src < 0) continue;
+                fwd.reset();
+                fwd.relax(src, 0, 0);
+                double best = Double.POSITIVE_INFINITY;
+                int meet = -1;
+                while (!fwd.heapEmpty() && fwd.minKey() < best) {
+                    int u = fwd.pop();
+                    if (u < 0) continue;
+                    if (bwd.isSettled(u) && fwd.seconds[u] + bwd.seconds[u] < best) {
+                        best = fwd.seconds[u] + bwd.seconds[u];
+                        meet = u;
+                    }
+                    expandUp(fwd, u);
+                }
+                if (meet >= 0) out[i] = new Cost(fwd.meters[meet] + bwd.meters[meet], best);
+            }
+            return out;
+        } finally {
+            idle.offer(bwd);
+            idle.offer(fwd);
+        }
+    }
+
+    private void expandUp(Search s, int u) {
+        double su = s.seconds[u];
+        double mu = s.meters[u];
+        // stall-on-demand：u 能经更重要的邻居更快到达时，当前标签不是最短，不往上扩展
+        for (int e = downFirst.get(u), end = downFirst.get(u + 1); e < end; e++) {
+            int w = downSource.get(e);
+            if (s.isReached(w) && s.seconds[w] + downDeciseconds.get(e) / 10.0 < su) return;
+        }
+        for (int e = upFirst.get(u), end = upFirst.get(u + 1); e < end; e++) {
+            int v = upTarget.get(e);
+            double sv = su + upDeciseconds.get(e) / 10.0;
+            if (s.improves(v, sv)) s.relax(v, sv, mu + upMeters.get(e));
+        }
+    }
+
+    private void expandDown(Search s, int u) {
+        double su = s.seconds[u];
+        double mu = s.meters[u];
+        for (int e = upFirst.get(u), end = upFirst.get(u + 1); e < end; e++) {
+            int w = upTarget.get(e);
+            if (s.isReached(w) && s.seconds[w] + upDeciseconds.get(e) / 10.0 < su) return;
+        }
+        for (int e = downFirst.get(u), end = downFirst.get(u + 1); e < end; e++) {
+            int v = downSource.get(e);
+            double sv = su + downDeciseconds.get(e) / 10.0;
+            if (s.improves(v, sv)) s.relax(v, sv, mu + downMeters.get(e));
+        }
+    }
+
+    private Search borrow() {
+        Search s = idle.poll();
+        if (s == null) s = new Search(nodeCount);
+        s.reset();
+        return s;
+    }
+
+    static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.pow(Math.sin(dLat / 2), 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.pow(Math.sin(dLng / 2), 2);
+        return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static IntBuffer ints(ByteBuffer buf, int[] offset, int count) {
+        int start = offset[0];
+        offset[0] += 4 * count;
+        return buf.duplicate().position(start).limit(start + 4 * count).slice().asIntBuffer();
+    }
+
+    private static int cellOf(int micro) {
+        return (int) Math.floor(micro / (CELL_DEG * 1e6));
+    }
+
+    private static long cellKey(int cLat, int cLng) {
+        return ((long) cLat << 32) | (cLng & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 路径长度（米）与用时（秒）。
+     */
+    public record Cost(double meters, double seconds) {
+    }
+
+    /**
+     * 一次 Dijkstra 独占的状态：按代号懒清零，堆里允许同一节点有多个条目，弹出时跳过过期的。
+     */
+    private static final class Search {
+        final double[] seconds;
+        final double[] meters;
+        final int[] stamp;
+        final int[] settled;
+        int generation;
+
+        int[] heapNode = new int[256];
+        double[] heapKey = new double[256];
+        int heapSize;
+
+        Search(int n) {
+            this.seconds = new double[n];
+            this.meters = new double[n];
+            this.stamp = new int[n];
+            this.settled = new int[n];
+        }
+
+        void reset() {
+            generation++;
+            heapSize = 0;
+        }
+
+        boolean improves(int v, double sv) {
+            return settled[v] != generation && (stamp[v] != generation || sv < seconds[v]);
+        }
+
+        boolean isReached(int v) {
+            return stamp[v] == generation;
+        }
+
+        boolean isSettled(int v) {
+            return settled[v] == generation;
+        }
+
+        void settle(int v) {
+            settled[v] = generation;
+        }
+
+        void relax(int v, double sv, double mv) {
+            stamp[v] = generation;
+            seconds[v] = sv;
+            meters[v] = mv;
+            push(v, sv);
+        }
+
+        boolean heapEmpty() {
+            return heapSize == 0;
+        }
+
+        double minKey() {
+            return heapKey[0];
+        }
+
+        /**
+         * 弹出堆顶并标记为已确定；已确定过的过期条目返回 -1。
+         */
+        int pop() {
+            int v = heapNode[0];
+            heapSize--;
+            if (heapSize > 0) {
+                int lastNode = heapNode[heapSize];
+                double lastKey = heapKey[heapSize];
+                int i = 0;
+                while (true) {
+                    int c = 2 * i + 1;
+                    if (c >= heapSize) break;
+                    if (c + 1 < heapSize && heapKey[c + 1] < heapKey[c]) c++;
+                    if (heapKey[c] >= lastKey) break;
+                    heapNode[i] = heapNode[c];
+                    heapKey[i] = heapKey[c];
+                    i = c;
+                }
+                heapNode[i] = lastNode;
+                heapKey[i] = lastKey;
+            }
+            if (settled[v] == generation) return -1;
+            settled[v] = generation;
+            return v;
+        }
+
+        private void push(int v, double key) {
+            if (heapSize == heapNode.length) {
+                heapNode = Arrays.copyOf(heapNode, heapSize * 2);
+                heapKey = Arrays.copyOf(heapKey, heapSize * 2);
+            }
+            int i = heapSize++;
+            while (i > 0) {
+                int p = (i - 1) / 2;
+                if (heapKey[p] <= key) break;
+                heapNode[i] = heapNode[p];
+                heapKey[i] = heapKey[p];
+                i = p;
+            }
+            heapNode[i] = v;
+            heapKey[i] = key;
+        }
+    }
+
+    /**
+     * 生成路网文件：逐个加节点、加有向边（双向路加两条），最后收缩并写出。
+     * 收缩是离线的一次性开销，城市级路网在单机上几秒到几分钟。
+     */
+    public static final class Builder {
+
+        // 见证搜索最多确定的节点数；超出时保守地补捷径，只多几条边，不影响正确性
+        private static final int WITNESS_SETTLE_LIMIT = 500;
+
+        private int[] nodeLat = new int[1024];
+        private int[] nodeLng = new int[1024];
+        private int nodes;
+        private Adj[] out = new Adj[1024];
+        private Adj[] in = new Adj[1024];
+
+        public int addNode(double lat, double lng) {
+            if (nodes == nodeLat.length) {
+                nodeLat = Arrays.copyOf(nodeLat, nodes * 2);
+                nodeLng = Arrays.copyOf(nodeLng, nodes * 2);
+                out = Arrays.copyOf(out, nodes * 2);
+                in = Arrays.copyOf(in, nodes * 2);
+            }
+            nodeLat[nodes] = (int) Math.round(lat * 1e6);
+            nodeLng[nodes] = (int) Math.round(lng * 1e6);
+            out[nodes] = new Adj();
+            in[nodes] = new Adj();
+            return nodes++;
+        }
+
+        public void addEdge(int from, int to, double meters, double seconds) {
+            if (from < 0 || from >= nodes || to < 0 || to >= nodes) throw new IllegalArgumentException("unknown node");
+            if (from == to) return;
+            int m = (int) Math.max(1, Math.round(meters));
+            int ds = (int) Math.max(1, Math.round(seconds * 10));
+            out[from].put(to, ds, m);
+            in[to].put(from, ds, m);
+        }
+
+        /**
+         * 按道路等级估算用时：长度 / 车速（公里/时）。
+         */
+        public void addEdgeAtSpeed(int from, int to, double speedKmh) {
+            double m = distanceMeters(nodeLat[from] / 1e6, nodeLng[from] / 1e6, nodeLat[to] / 1e6, nodeLng[to] / 1e6);
+            addEdge(from, to, m, m / (speedKmh / 3.6));
+        }
+
+        public void writeTo(Path path) throws IOException {
+            int[] rank = contract();
+
+            // 边 u->x：x 更重要的进向上图（挂在 u 上），否则进向下图（反向挂在 x 上）
+            int[] upFirst = new int[nodes + 1];
+            int[] downFirst = new int[nodes + 1];
+            for (int u = 0; u < nodes; u++) {
+                Adj a = out[u];
+                for (int i = 0; i < a.size; i++) {
+                    int x = a.node[i];
+                    if (rank[x] > rank[u]) upFirst[u + 1]++;
+                    else downFirst[x + 1]++;
+                }
+            }
+            for (int v = 0; v < nodes; v++) {
+                upFirst[v + 1] += upFirst[v];
+                downFirst[v + 1] += downFirst[v];
+            }
+            int mu = upFirst[nodes];
+            int md = downFirst[nodes];
+            int[] upTarget = new int[mu];
+            int[] upMeters = new int[mu];
+            int[] upDs = new int[mu];
+            int[] downSource = new int[md];
+            int[] downMeters = new int[md];
+            int[] downDs = new int[md];
+            int[] upFill = Arrays.copyOf(upFirst, nodes);
+            int[] downFill = Arrays.copyOf(downFirst, nodes);
+            for (int u = 0; u < nodes; u++) {
+                Adj a = out[u];
+                for (int i = 0; i < a.size; i++) {
+                    int x = a.node[i];
+                    if (rank[x] > rank[u]) {
+                        int k = upFill[u]++;
+                        upTarget[k] = x;
+                        upMeters[k] = a.meters[i];
+                        upDs[k] = a.weight[i];
+                    } else {
+                        int k = downFill[x]++;
+                        downSource[k] = u;
+                        downMeters[k] = a.meters[i];
+                        downDs[k] = a.weight[i];
+                    }
+                }
+            }
+
+            try (OutputStream os = Files.newOutputStream(path);
+                 DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os, 1 << 16))) {
+                dos.writeInt(MAGIC);
+                dos.writeInt(nodes);
+                dos.writeInt(mu);
+                dos.writeInt(md);
+                writeInts(dos, nodeLat, nodes);
+                writeInts(dos, nodeLng, nodes);
+                writeInts(dos, upFirst, nodes + 1);
+                writeInts(dos, upTarget, mu);
+                writeInts(dos, upMeters, mu);
+                writeInts(dos, upDs, mu);
+                writeInts(dos, downFirst, nodes + 1);
+                writeInts(dos, downSource, md);
+                writeInts(dos, downMeters, md);
+                writeInts(dos, downDs, md);
+            }
+        }
+
+        /**
+         * 按“补捷径数 - 删掉的边数 + 已收缩的邻居数”从小到大逐个收缩，优先级懒更新；返回每个节点的收缩次序。
+         */
+        private int[] contract() {
+            int[] rank = new int[nodes];
+            boolean[] contracted = new boolean[nodes];
+            int[] contractedNeighbors = new int[nodes];
+            Search witness = new Search(nodes);
+            PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+            for (int v = 0; v < nodes; v++) {
+                queue.add(new long[]{priority(v, contracted, contractedNeighbors, witness), v});
+            }
+            int next = 0;
+            while (!queue.isEmpty()) {
+                long[] top = queue.poll();
+                int v = (int) top[1];
+                if (contracted[v]) continue;
+                long p = priority(v, contracted, contractedNeighbors, witness);
+                if (!queue.isEmpty() && p > queue.peek()[0]) {
+                    queue.add(new long[]{p, v});
+                    continue;
+                }
+                shortcuts(v, contracted, witness, true);
+                contracted[v] = true;
+                rank[v] = next++;
+                Adj o = out[v];
+                for (int i = 0; i < o.size; i++) contractedNeighbors[o.node[i]]++;
+                Adj n = in[v];
+                for (int i = 0; i < n.size; i++) contractedNeighbors[n.node[i]]++;
+            }
+            return rank;
+        }
+
+        private long priority(int v, boolean[] contracted, int[] contractedNeighbors, Search witness) {
+            int added = shortcuts(v, contracted, witness, false);
+            int removed = 0;
+            Adj o = out[v];
+            for (int i = 0; i < o.size; i++) if (!contracted[o.node[i]]) removed++;
+            Adj n = in[v];
+            for (int i = 0; i < n.size; i++) if (!contracted[n.node[i]]) removed++;
+            return (long) added - removed + contractedNeighbors[v];
+        }
+
+        /**
+         * 收缩 v 需要的捷径：对每个入邻居 u 做限定的见证搜索（绕开 v），找不到不更慢的替代路径时为 u->v->x 补一条 u->x。
+         * apply 为 false 时只计数。
+         */
+        private int shortcuts(int v, boolean[] contracted, Search witness, boolean apply) {
+            Adj ins = in[v];
+            Adj outs = out[v];
+            int count = 0;
+            for (int i = 0; i < ins.size; i++) {
+                int u = ins.node[i];
+                if (contracted[u]) continue;
+                int wu = ins.weight[i];
+                int maxOut = 0;
+                for (int j = 0; j < outs.size; j++) {
+                    int x = outs.node[j];
+                    if (!contracted[x] && x != u) maxOut = Math.max(maxOut, outs.weight[j]);
+                }
+                if (maxOut == 0) continue;
+                double limit = (double) wu + maxOut;
+
+                witness.reset();
+                witness.settle(v);
+                witness.relax(u, 0, 0);
+                int settledCount = 0;
+                while (!witness.heapEmpty() && witness.minKey() <= limit && settledCount < WITNESS_SETTLE_LIMIT) {
+                    int a = witness.pop();
+                    if (a < 0) continue;
+                    settledCount++;
+                    Adj ao = out[a];
+                    for (int k = 0; k < ao.size; k++) {
+                        int b = ao.node[k];
+                        if (contracted[b]) continue;
+                        double sb = witness.seconds[a] + ao.weight[k];
+                        if (witness.improves(b, sb)) witness.relax(b, sb, 0);
+                    }
+                }
+
+                for (int j = 0; j < outs.size; j++) {
+                    int x = outs.node[j];
+                    if (contracted[x] || x == u) continue;
+                    int via = wu + outs.weight[j];
+                    if (witness.isReached(x) && witness.seconds[x] <= via) continue;
+                    count++;
+                    if (apply) {
+                        int m = ins.meters[i] + outs.meters[j];
+                        out[u].put(x, via, m);
+                        in[x].put(u, via, m);
+                    }
+                }
+            }
+            return count;
+        }
+
+        private static void writeInts(DataOutputStream dos, int[] values, int count) throws IOException {
+            for (int i = 0; i < count; i++) dos.writeInt(values[i]);
+        }
+    }
+
+    /**
+     * 构建期的邻接表：同一邻居只保留用时最短的一条。
+     */
+    private static final class Adj {
+        int[] node = new int[4];
+        int[] weight = new int[4];
+        int[] meters = new int[4];
+        int size;
+
+        void put(int v, int w, int m) {
+            for (int i = 0; i < size; i++) {
+                if (node[i] == v) {
+                    if (w < weight[i]) {
+                        weight[i] = w;
+                        meters[i] = m;
+                    }
+                    return;
+                }
+            }
+            if (size == node.length) {
+                node = Arrays.copyOf(node, size * 2);
+                weight = Arrays.copyOf(weight, size * 2);
+                meters = Arrays.copyOf(meters, size * 2);
+            }
+            node[size] = v;
+            weight[size] = w;
+            meters[size] = m;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.takeout.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于离线路网文件的驾车距离：起终点吸附到最近的路网节点，再在内存映射的路网上求最短用时路径。
+ * 派单时多个骑手到同一配送地址只做一次反向搜索。吸附不到节点或不可达的返回 NaN / 空，由调用方兜底。
+ */
+@Service
+@ConditionalOnProperty(prefix = "delivery.road-graph", name = "enabled", havingValue = "true")
+public class RoadGraphDistanceProvider implements DistanceProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(RoadGraphDistanceProvider.class);
+
+    // 坐标到吸附节点这一小段按步行/非机动车估算
+    private static final double ACCESS_SPEED_MPS = 15 / 3.6;
+
+    private final RoadGraph graph;
+    private final double maxSnapMeters;
+
+    private final Timer queryTimer;
+    private final Counter misses;
+
+    public RoadGraphDistanceProvider(MeterRegistry meterRegistry,
+                                     @Value("${delivery.road-graph.path:}") String path,
+                                     @Value("${delivery.road-graph.max-snap-meters:500}") double maxSnapMeters) {
+        if (path == null || path.isBlank()) {
+            throw new IllegalStateException("Missing config: delivery.road-graph.path");
+        }
+        try {
+            this.graph = RoadGraph.load(Path.of(path.trim()));
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalStateException("Failed to load road graph: " + path, e);
+        }
+        this.maxSnapMeters = maxSnapMeters > 0 ? maxSnapMeters : 500;
+        log.info("Road graph loaded from {}: {} nodes, {} edges", path, graph.nodeCount(), graph.edgeCount());
+
+        this.queryTimer = Timer.builder("road.graph.query").register(meterRegistry);
+        this.misses = Counter.builder("road.graph.misses").register(meterRegistry);
+    }
+
+    @Override
+    public double[] drivingDistancesKm(List<BaiduMapService.Coord> origins, BaiduMapService.Coord destination) {
+        double[] out = new double[origins.size()];
+        Arrays.fill(out, Double.NaN);
+        long start = System.nanoTime();
+        int to = graph.nearestNode(destination.lat(), destination.lng(), maxSnapMeters);
+        if (to >= 0) {
+            int[] from = new int[origins.size()];
+            for (int i = 0; i < from.length; i++) {
+                BaiduMapService.Coord o = origins.get(i);
+                from[i] = graph.nearestNode(o.lat(), o.lng(), maxSnapMeters);
+            }
+            RoadGraph.Cost[] costs = graph.shortestToTarget(from, to);
+            double tail = snapMeters(destination.lat(), destination.lng(), to);
+            for (int i = 0; i < from.length; i++) {
+                if (costs[i] == null) continue;
+                BaiduMapService.Coord o = origins.get(i);
+                out[i] = (snapMeters(o.lat(), o.lng(), from[i]) + costs[i].meters() + tail) / 1000.0;
+            }
+        }
+        queryTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        for (double d : out) {
+            if (Double.isNaN(d)) misses.increment();
+        }
+        return out;
+    }
+
+    @Override
+    public Optional<BaiduMapService.RouteInfo> drivingRoute(double fromLat, double fromLng, double toLat, double toLng) {
+        long start = System.nanoTime();
+        Optional<BaiduMapService.RouteInfo> route = Optional.empty();
+        int from = graph.nearestNode(fromLat, fromLng, maxSnapMeters);
+        int to = from < 0 ? -1 : graph.nearestNode(toLat, toLng, maxSnapMeters);
+        if (to >= 0) {
+            RoadGraph.Cost cost = graph.shortest(from, to);
+            if (cost != null) {
+                double access = snapMeters(fromLat, fromLng, from) + snapMeters(toLat, toLng, to);
+                double meters = cost.meters() + access;
+                double seconds = cost.seconds() + access / ACCESS_SPEED_MPS;
+                route = Optional.of(new BaiduMapService.RouteInfo(meters / 1000.0, seconds > 0 ? seconds / 60.0 : null, "road_graph"));
+            }
+        }
+        queryTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (route.isEmpty()) misses.increment();
+        return route;
+    }
+
+    private double snapMeters(double lat, double lng, int node) {
+        return RoadGraph.distanceMeters(lat, lng, graph.lat(node), graph.lng(node));
+    }
+}
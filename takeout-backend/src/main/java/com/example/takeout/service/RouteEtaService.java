@@ -0,0 +1,172 @@
+package com.example.takeout.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 驾车路线/ETA：配置了离线路网时直接本地计算；否则走百度接口，结果按起终点网格取整后缓存，带有效期和条数上限。
+ * 一次请求的多段路线并发去取，共用一个等待预算；超出预算的段先用直线距离顶上，
+ * 晚到的结果仍会写进缓存，下次刷新即可命中。同一段路线同时只发一次请求。
+ */
+@Service
+public class RouteEtaService {
+
+    private final BaiduMapService baiduMapService;
+    private final Optional<DistanceProvider> localDistance;
+    private final long budgetMillis;
+    private final double gridDeg;
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    private final LinkedHashMap<GridKey, CachedRoute> cache;
+    private final Map<GridKey, CompletableFuture<Optional<BaiduMapService.RouteInfo>>> inflight = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter timeouts;
+
+    public RouteEtaService(BaiduMapService baiduMapService,
+                           Optional<DistanceProvider> localDistance,
+                           MeterRegistry meterRegistry,
+                           @Value("${delivery.route.budget-ms:1500}") long budgetMillis,
+                           @Value("${delivery.route.cache-grid-deg:0.001}") double gridDeg,
+                           @Value("${delivery.route.cache-ttl-seconds:300}") long ttlSeconds,
+                           @Value("${delivery.route.cache-max-entries:20000}") int maxEntries) {
+        this.baiduMapService = baiduMapService;
+        this.localDistance = localDistance;
+        this.budgetMillis = Math.max(50, budgetMillis);
+        this.gridDeg = gridDeg > 0 ? gridDeg : 0.001;
+        this.ttlMillis = Math.max(1, ttlSeconds) * 1000L;
+        this.maxEntries = Math.max(16, maxEntries);
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<GridKey, CachedRoute> eldest) {
+                return size() > RouteEtaService.this.maxEntries;
+            }
+        };
+
+        this.hits = Counter.builder("route.cache.hits").register(meterRegistry);
+        this.misses = Counter.builder("route.cache.misses").register(meterRegistry);
+        this.timeouts = Counter.builder("route.cache.timeouts").register(meterRegistry);
+        Gauge.builder("route.cache.size", this, RouteEtaService::size)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 按顺序返回每段的驾车路线；拿不到的（未配置 AK、接口失败、超出预算）用直线距离估算。
+     */
+    public List<BaiduMapService.RouteInfo> drivingRoutes(List<Leg> legs) {
+        long now = System.currentTimeMillis();
+        List<BaiduMapService.RouteInfo> out = new ArrayList<>(legs.size());
+        List<CompletableFuture<Optional<BaiduMapService.RouteInfo>>> pending = new ArrayList<>(legs.size());
+        for (Leg leg : legs) {
+            Optional<BaiduMapService.RouteInfo> local = localDistance
+                    .flatMap(p -> p.drivingRoute(leg.fromLat(), leg.fromLng(), leg.toLat(), leg.toLng()));
+            if (local.isPresent()) {
+                out.add(local.get());
+                pending.add(null);
+                continue;
+            }
+            GridKey key = gridKey(leg);
+            CachedRoute c = cached(key, now);
+            if (c != null) {
+                hits.increment();
+                out.add(c.route());
+                pending.add(null);
+            } else {
+                misses.increment();
+                out.add(null);
+                pending.add(fetch(key, leg));
+            }
+        }
+
+        List<CompletableFuture<Optional<BaiduMapService.RouteInfo>>> waiting = pending.stream()
+                .filter(f -> f != null && !f.isDone())
+                .toList();
+        if (!waiting.isEmpty()) {
+            try {
+                CompletableFuture.allOf(waiting.toArray(new CompletableFuture[0])).get(budgetMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // 超出预算：已返回的段照常使用，其余走直线距离
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception ignored) {
+            }
+        }
+
+        for (int i = 0; i < legs.size(); i++) {
+            CompletableFuture<Optional<BaiduMapService.RouteInfo>> f = pending.get(i);
+            if (f == null) continue;
+            Optional<BaiduMapService.RouteInfo> route = Optional.empty();
+            if (f.isDone()) {
+                route = f.getNow(Optional.empty());
+            } else {
+                timeouts.increment();
+            }
+            Leg leg = legs.get(i);
+            out.set(i, route.orElseGet(() -> BaiduMapService.haversineFallback(leg.fromLat(), leg.fromLng(), leg.toLat(), leg.toLng())));
+        }
+        return out;
+    }
+
+    private CompletableFuture<Optional<BaiduMapService.RouteInfo>> fetch(GridKey key, Leg leg) {
+        CompletableFuture<Optional<BaiduMapService.RouteInfo>> created = new CompletableFuture<>();
+        CompletableFuture<Optional<BaiduMapService.RouteInfo>> existing = inflight.putIfAbsent(key, created);
+        if (existing != null) return existing;
+        baiduMapService.drivingRouteAsync(leg.fromLat(), leg.fromLng(), leg.toLat(), leg.toLng())
+                .whenComplete((route, e) -> {
+                    // 只缓存真正拿到的路线；失败的下次再试
+                    Optional<BaiduMapService.RouteInfo> result = route == null ? Optional.empty() : route;
+                    result.ifPresent(r -> put(key, new CachedRoute(r, System.currentTimeMillis() + ttlMillis)));
+                    inflight.remove(key, created);
+                    created.complete(result);
+                });
+        return created;
+    }
+
+    private GridKey gridKey(Leg leg) {
+        return new GridKey(
+                Math.round(leg.fromLat() / gridDeg), Math.round(leg.fromLng() / gridDeg),
+                Math.round(leg.toLat() / gridDeg), Math.round(leg.toLng() / gridDeg));
+    }
+
+    private synchronized CachedRoute cached(GridKey key, long now) {
+        CachedRoute c = cache.get(key);
+        if (c == null) return null;
+        if (c.expiresAtMillis() <= now) {
+            cache.remove(key);
+            return null;
+        }
+        return c;
+    }
+
+    private synchronized void put(GridKey key, CachedRoute value) {
+        cache.put(key, value);
+    }
+
+    private synchronized int size() {
+        return cache.size();
+    }
+
+    public record Leg(double fromLat, double fromLng, double toLat, double toLng) {
+    }
+
+    private record GridKey(long originLat, long originLng, long destLat, long destLng) {
+    }
+
+    private record CachedRoute(BaiduMapService.RouteInfo route, long expiresAtMillis) {
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.takeout.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+/**
+ * 批量驾车距离：配置了离线路网时先在本地算；其余的多个起点（骑手）到一个终点（配送地址）合并成百度 routematrix 请求，
+ * 分块并发发送，整体受时间预算限制；结果按粗网格缓存，超时或失败的部分用直线距离兜底。
+ */
+@Service
+public class RouteMatrixService {
+
+    // routematrix 单次请求 起点数×终点数 上限
+    private static final int MAX_ELEMENTS = 50;
+
+    private final ObjectMapper objectMapper;
+    private final MapHttpClient mapHttpClient;
+    private final String baiduAk;
+    private final long budgetMillis;
+    private final double gridDeg;
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    private final LinkedHashMap<GridKey, CachedDistance> cache;
+    private final Optional<DistanceProvider> localDistance;
+    private final Predicate<String> serviceOk;
+
+    public RouteMatrixService(ObjectMapper objectMapper,
+                              MapHttpClient mapHttpClient,
+                              Optional<DistanceProvider> localDistance,
+                              @Value("${baidu.map.ak:}") String baiduAk,
+                              @Value("${delivery.distance.budget-ms:800}") long budgetMillis,
+                              @Value("${delivery.distance.cache-grid-deg:0.002}") double gridDeg,
+                              @Value("${delivery.distance.cache-ttl-seconds:600}") long ttlSeconds,
+                              @Value("${delivery.distance.cache-max-entries:20000}") int maxEntries) {
+        this.objectMapper = objectMapper;
+        this.mapHttpClient = mapHttpClient;
+        this.localDistance = localDistance;
+        this.serviceOk = BaiduMapService.serviceOk(objectMapper);
+        this.baiduAk = baiduAk == null ? "" : baiduAk.trim();
+        this.budgetMillis = Math.max(50, budgetMillis);
+        this.gridDeg = gridDeg > 0 ? gridDeg : 0.002;
+        this.ttlMillis = Math.max(1, ttlSeconds) * 1000L;
+        this.maxEntries = Math.max(16, maxEntries);
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<GridKey, CachedDistance> eldest) {
+                return size() > RouteMatrixService.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 返回每个起点到终点的驾车距离（公里），顺序与 origins 一致；拿不到的用直线距离。
+     */
+    public double[] drivingDistancesKm(List<BaiduMapService.Coord> origins, BaiduMapService.Coord destination) {
+        int n = origins.size();
+        // 本地路网是精确值且很便宜，不进缓存；算不出的再走缓存和接口
+        double[] out = localDistance.map(p -> p.drivingDistancesKm(origins, destination)).orElse(null);
+        if (out == null) {
+            out = new double[n];
+            Arrays.fill(out, Double.NaN);
+        }
+        long now = System.currentTimeMillis();
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (!Double.isNaN(out[i])) continue;
+            CachedDistance c = cached(gridKey(origins.get(i), destination), now);
+            if (c != null) {
+                out[i] = c.distanceKm();
+            } else {
+                missing.add(i);
+            }
+        }
+
+        if (!missing.isEmpty() && !baiduAk.isEmpty()) {
+            fetch(origins, destination, missing, out, now);
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (Double.isNaN(out[i])) {
+                BaiduMapService.Coord o = origins.get(i);
+                out[i] = DeliveryAssignmentService.haversineKm(o.lat(), o.lng(), destination.lat(), destination.lng());
+            }
+        }
+        return out;
+    }
+
+    private void fetch(List<BaiduMapService.Coord> origins,
+                       BaiduMapService.Coord destination,
+                       List<Integer> missing,
+                       double[] out,
+                       long now) {
+        List<List<Integer>> chunks = new ArrayList<>();
+        for (int i = 0; i < missing.size(); i += MAX_ELEMENTS) {
+            chunks.add(missing.subList(i, Math.min(missing.size(), i + MAX_ELEMENTS)));
+        }
+        List<CompletableFuture<Optional<String>>> futures = new ArrayList<>(chunks.size());
+        for (List<Integer> chunk : chunks) {
+            StringBuilder originsParam = new StringBuilder();
+            for (int idx : chunk) {
+                if (!originsParam.isEmpty()) originsParam.append("%7C");
+                BaiduMapService.Coord o = origins.get(idx);
+                originsParam.append(o.lat()).append(',').append(o.lng());
+            }
+            String path = "/routematrix/v2/driving"
+                    + "?output=json"
+                    + "&origins=" + originsParam
+                    + "&destinations=" + destination.lat() + "," + destination.lng()
+                    + "&ak=" + baiduAk;
+            futures.add(mapHttpClient.get("routematrix", path, Duration.ofMillis(budgetMillis), serviceOk));
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(budgetMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // 超出预算：已返回的块照常使用，其余走直线距离
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ignored) {
+        }
+
+        for (int c = 0; c < chunks.size(); c++) {
+            CompletableFuture<Optional<String>> f = futures.get(c);
+            if (!f.isDone()) continue;
+            Optional<String> body = f.join();
+            if (body.isEmpty()) continue;
+            List<Integer> chunk = chunks.get(c);
+            double[] meters = parse(body.get(), chunk.size());
+            if (meters == null) continue;
+            for (int k = 0; k < chunk.size(); k++) {
+                if (meters[k] <= 0) continue;
+                int idx = chunk.get(k);
+                out[idx] = meters[k] / 1000.0;
+                put(gridKey(origins.get(idx), destination), new CachedDistance(out[idx], now + ttlMillis));
+            }
+        }
+    }
+
+    private double[] parse(String body, int expected) {
+        try {
+            JsonNode root = objectMapper.readTree(body);
+            if (root.path("status").asInt(-1) != 0) return null;
+            JsonNode results = root.path("result");
+            if (!results.isArray() || results.size() != expected) return null;
+            double[] meters = new double[expected];
+            for (int i = 0; i < expected; i++) {
+                meters[i] = results.get(i).path("distance").path("value").asDouble(-1);
+            }
+            return meters;
+        } catch (Exception ignored) {
+            return null;
+        }
+    }
+
+    private GridKey gridKey(BaiduMapService.Coord o, BaiduMapService.Coord d) {
+        return new GridKey(
+                Math.round(o.lat() / gridDeg), Math.round(o.lng() / gridDeg),
+                Math.round(d.lat() / gridDeg), Math.round(d.lng() / gridDeg));
+    }
+
+    private synchronized CachedDistance cached(GridKey key, long now) {
+        CachedDistance c = cache.get(key);
+        if (c == null) return null;
+        if (c.expiresAtMillis() <= now) {
+            cache.remove(key);
+            return null;
+        }
+        return c;
+    }
+
+    private synchronized void put(GridKey key, CachedDistance value) {
+        cache.put(key, value);
+    }
+
+    private record GridKey(long originLat, long originLng, long destLat, long destLng) {
+    }
+
+    private record CachedDistance(double distanceKm, long expiresAtMillis) {
+    }
+}
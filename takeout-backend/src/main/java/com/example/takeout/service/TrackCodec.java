@@ -0,0 +1,117 @@
+package com.example.takeout.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 轨迹段的紧凑编码：坐标按 1e-6 度取整，时间按毫秒；第一个点存绝对值，之后每个点只存与上一点的差，
+ * 差值做 zigzag 后按 varint 写出。骑手几秒一报、每次移动几十米，一个点通常只占 5~7 字节。
+ */
+public final class TrackCodec {
+
+    private static final double SCALE = 1e6;
+
+    private TrackCodec() {
+    }
+
+    public static List<Point> decode(byte[] data) {
+        List<Point> out = new ArrayList<>();
+        if (data == null) return out;
+        int[] pos = {0};
+        long t = 0;
+        long lat = 0;
+        long lng = 0;
+        while (pos[0] < data.length) {
+            t += unzigzag(readVarLong(data, pos));
+            lat += unzigzag(readVarLong(data, pos));
+            lng += unzigzag(readVarLong(data, pos));
+            out.add(new Point(lat / SCALE, lng / SCALE, t));
+        }
+        return out;
+    }
+
+    private static long readVarLong(byte[] data, int[] pos) {
+        long v = 0;
+        int shift = 0;
+        while (true) {
+            if (pos[0] >= data.length) throw new IllegalArgumentException("truncated track chunk");
+            byte b = data[pos[0]++];
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+            shift += 7;
+        }
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * 逐点追加的编码缓冲，非线程安全。
+     */
+    public static final class Writer {
+        private byte[] buf = new byte[256];
+        private int size;
+        private int count;
+        private long firstMillis;
+        private long lastMillis;
+        private long lastLat;
+        private long lastLng;
+
+        public void append(double lat, double lng, long atMillis) {
+            long qLat = Math.round(lat * SCALE);
+            long qLng = Math.round(lng * SCALE);
+            if (count == 0) {
+                firstMillis = atMillis;
+                writeVarLong(zigzag(atMillis));
+                writeVarLong(zigzag(qLat));
+                writeVarLong(zigzag(qLng));
+            } else {
+                writeVarLong(zigzag(atMillis - lastMillis));
+                writeVarLong(zigzag(qLat - lastLat));
+                writeVarLong(zigzag(qLng - lastLng));
+            }
+            lastMillis = atMillis;
+            lastLat = qLat;
+            lastLng = qLng;
+            count++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        public long firstMillis() {
+            return firstMillis;
+        }
+
+        public long lastMillis() {
+            return lastMillis;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+
+        private void writeVarLong(long v) {
+            if (size + 10 > buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            while ((v & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[size++] = (byte) v;
+        }
+    }
+
+    public record Point(double lat, double lng, long atMillis) {
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.takeout.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 后台工作线程的统一创建入口。spring.threads.virtual.enabled=true（vt profile）时创建虚拟线程，
+ * 与 Tomcat 请求线程、@Scheduled 调度线程保持一致；否则是原来的守护平台线程。
+ * 各线程池的线程数/队列容量不变，仍用来限制对数据库和地图接口的并发。
+ */
+@Service
+public class WorkerThreads {
+
+    private final boolean virtual;
+
+    public WorkerThreads(@Value("${spring.threads.virtual.enabled:false}") boolean virtual) {
+        this.virtual = virtual;
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * 单线程执行器用：每个线程同名。
+     */
+    public ThreadFactory named(String name) {
+        return virtual
+                ? Thread.ofVirtual().name(name).factory()
+                : Thread.ofPlatform().name(name).daemon(true).factory();
+    }
+
+    /**
+     * 多线程池用：线程名为 prefix 加从 1 开始的序号。
+     */
+    public ThreadFactory numbered(String prefix) {
+        return virtual
+                ? Thread.ofVirtual().name(prefix, 1).factory()
+                : Thread.ofPlatform().name(prefix, 1).daemon(true).factory();
+    }
+}
@@ -4,6 +4,7 @@ import com.example.takeout.entity.Customer;
 import com.example.takeout.entity.CustomerAddress;
 import com.example.takeout.repository.CustomerAddressRepository;
 import com.example.takeout.repository.CustomerRepository;
+import com.example.takeout.service.GeocodeService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
@@ -19,11 +20,14 @@ public class CustomerAddressController {
 
     private final CustomerRepository customerRepository;
     private final CustomerAddressRepository addressRepository;
+    private final GeocodeService geocodeService;
 
     public CustomerAddressController(CustomerRepository customerRepository,
-                                     CustomerAddressRepository addressRepository) {
+                                     CustomerAddressRepository addressRepository,
+                                     GeocodeService geocodeService) {
         this.customerRepository = customerRepository;
         this.addressRepository = addressRepository;
+        this.geocodeService = geocodeService;
     }
 
     @GetMapping
@@ -76,6 +80,8 @@ public class CustomerAddressController {
         }
 
         CustomerAddress saved = addressRepository.save(a);
+        // 提前解析进地址缓存，用这个地址下单时就能直接带上坐标
+        geocodeService.prefetch(saved.getAddressDetail());
         return ResponseEntity.status(HttpStatus.CREATED).body(toRow(saved));
     }
 
@@ -104,6 +110,7 @@ public class CustomerAddressController {
         }
 
         CustomerAddress saved = addressRepository.save(a);
+        geocodeService.prefetch(saved.getAddressDetail());
         return ResponseEntity.ok(toRow(saved));
     }
 
@@ -2,22 +2,37 @@ package com.example.takeout.web;
 
 import com.example.takeout.entity.*;
 import com.example.takeout.repository.*;
+import com.example.takeout.service.BaiduMapService;
+import com.example.takeout.service.CartQuoteService;
+import com.example.takeout.service.GeocodeService;
+import com.example.takeout.service.Money;
+import com.example.takeout.service.OrderCreationService;
+import com.example.takeout.service.OrderEventStream;
+import com.example.takeout.service.OrderIdempotencyService;
 import com.example.takeout.service.OrderPaymentService;
+import com.example.takeout.service.OrderPricingService;
+import com.example.takeout.service.PaymentLogSink;
 import com.example.takeout.service.QrCodeService;
+import com.example.takeout.service.RiderHallFeed;
 import com.example.takeout.service.WechatPayFacade;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -29,16 +44,24 @@ import java.util.Optional;
 @RequestMapping("/api/customer")
 public class CustomerOrderController {
 
+    private static final int PAY_QR_SIZE = 260;
+
     private final CustomerRepository customerRepository;
     private final RestaurantRepository restaurantRepository;
     private final DishRepository dishRepository;
     private final CustomerOrderRepository customerOrderRepository;
     private final OrderItemRepository orderItemRepository;
     private final DeliveryStaffRepository deliveryStaffRepository;
-    private final RestaurantPromotionRepository restaurantPromotionRepository;
+    private final OrderPricingService orderPricingService;
+    private final CartQuoteService cartQuoteService;
+    private final OrderCreationService orderCreationService;
+    private final OrderIdempotencyService orderIdempotencyService;
     private final OrderPaymentService orderPaymentService;
-    private final PaymentLogRepository paymentLogRepository;
+    private final PaymentLogSink paymentLogSink;
     private final QrCodeService qrCodeService;
+    private final RiderHallFeed riderHallFeed;
+    private final OrderEventStream orderEventStream;
+    private final GeocodeService geocodeService;
     private final Optional<WechatPayFacade> wechatPayFacadeOpt;
     private final String appPublicBaseUrl;
 
@@ -48,10 +71,16 @@ public class CustomerOrderController {
                                    CustomerOrderRepository customerOrderRepository,
                                    OrderItemRepository orderItemRepository,
                                    DeliveryStaffRepository deliveryStaffRepository,
-                                   RestaurantPromotionRepository restaurantPromotionRepository,
+                                   OrderPricingService orderPricingService,
+                                   CartQuoteService cartQuoteService,
+                                   OrderCreationService orderCreationService,
+                                   OrderIdempotencyService orderIdempotencyService,
                                    OrderPaymentService orderPaymentService,
-                                   PaymentLogRepository paymentLogRepository,
+                                   PaymentLogSink paymentLogSink,
                                    QrCodeService qrCodeService,
+                                   RiderHallFeed riderHallFeed,
+                                   OrderEventStream orderEventStream,
+                                   GeocodeService geocodeService,
                                    Optional<WechatPayFacade> wechatPayFacadeOpt,
                                    @Value("${app.publicBaseUrl:http://localhost:8081}") String appPublicBaseUrl) {
         this.customerRepository = customerRepository;
@@ -60,21 +89,88 @@ public class CustomerOrderController {
         this.customerOrderRepository = customerOrderRepository;
         this.orderItemRepository = orderItemRepository;
         this.deliveryStaffRepository = deliveryStaffRepository;
-        this.restaurantPromotionRepository = restaurantPromotionRepository;
+        this.orderPricingService = orderPricingService;
+        this.cartQuoteService = cartQuoteService;
+        this.orderCreationService = orderCreationService;
+        this.orderIdempotencyService = orderIdempotencyService;
         this.orderPaymentService = orderPaymentService;
-        this.paymentLogRepository = paymentLogRepository;
+        this.paymentLogSink = paymentLogSink;
         this.qrCodeService = qrCodeService;
+        this.riderHallFeed = riderHallFeed;
+        this.orderEventStream = orderEventStream;
+        this.geocodeService = geocodeService;
         this.wechatPayFacadeOpt = wechatPayFacadeOpt;
         this.appPublicBaseUrl = appPublicBaseUrl == null ? "http://localhost:8081" : appPublicBaseUrl.trim();
     }
 
+    /**
+     * 下单。客户端可携带 Idempotency-Key 请求头，网络重试时同一个键只会创建一次订单并返回首次的结果。
+     */
     @PostMapping("/orders")
-    @Transactional
-    public ResponseEntity<?> createOrder(@RequestBody CreateOrderRequest request) {
+    public ResponseEntity<?> createOrder(@RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                         @RequestBody CreateOrderRequest request) {
         if (request.getCustomerId() == null || request.getRestaurantId() == null || request.getItems() == null || request.getItems().isEmpty()) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message("参数不完整"));
         }
+        String key;
+        try {
+            key = OrderIdempotencyService.scopedKey(request.getCustomerId(), idempotencyKey);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(e.getMessage()));
+        }
+        if (key == null) {
+            return createOrderOnce(request, null);
+        }
+
+        for (int attempt = 0; attempt < 3; attempt++) {
+            OrderIdempotencyService.Claim claim = orderIdempotencyService.claim(key);
+            if (!claim.owner()) {
+                Optional<OrderIdempotencyService.CreatedOrder> done = orderIdempotencyService.await(claim);
+                if (done.isPresent()) return created(done.get());
+                if (claim.pending()) break;
+                // 首个请求失败已释放键，重新抢占后按正常流程处理
+                continue;
+            }
+
+            boolean completed = false;
+            try {
+                Optional<OrderIdempotencyService.CreatedOrder> persisted = orderIdempotencyService.findPersisted(key);
+                if (persisted.isEmpty()) {
+                    ResponseEntity<?> resp = createOrderOnce(request, key);
+                    if (resp.getBody() instanceof CreateOrderResponse r) {
+                        orderIdempotencyService.complete(claim, new OrderIdempotencyService.CreatedOrder(
+                                r.getOrderId(), r.getTotalAmount(), r.getDiscountAmount(), r.getPayAmount()));
+                        completed = true;
+                    }
+                    return resp;
+                }
+                orderIdempotencyService.complete(claim, persisted.get());
+                completed = true;
+                return created(persisted.get());
+            } catch (DataIntegrityViolationException e) {
+                // 唯一键冲突：其他节点已用同一个键创建了订单
+                Optional<OrderIdempotencyService.CreatedOrder> persisted = orderIdempotencyService.findPersisted(key);
+                if (persisted.isEmpty()) throw e;
+                orderIdempotencyService.complete(claim, persisted.get());
+                completed = true;
+                return created(persisted.get());
+            } finally {
+                if (!completed) orderIdempotencyService.release(claim);
+            }
+        }
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(new Message("相同请求正在处理中，请稍后重试"));
+    }
+
+    private static ResponseEntity<CreateOrderResponse> created(OrderIdempotencyService.CreatedOrder c) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(new CreateOrderResponse(
+                c.orderId(),
+                c.totalAmount(),
+                c.discountAmount(),
+                c.payAmount()
+        ));
+    }
 
+    private ResponseEntity<?> createOrderOnce(CreateOrderRequest request, String idempotencyKey) {
         Optional<Customer> customerOpt = customerRepository.findById(request.getCustomerId());
         if (customerOpt.isEmpty()) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message("食客不存在"));
@@ -87,43 +183,30 @@ public class CustomerOrderController {
         Customer customer = customerOpt.get();
         Restaurant restaurant = restaurantOpt.get();
 
-        BigDecimal totalOriginal = BigDecimal.ZERO;
-        BigDecimal totalPayBeforePromotion = BigDecimal.ZERO;
-        List<OrderItem> orderItems = new ArrayList<>();
-
-        for (CreateOrderItem item : request.getItems()) {
-            if (item.getDishId() == null || item.getQuantity() == null || item.getQuantity() <= 0) {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message("菜品或数量不合法"));
-            }
-            Optional<Dish> dishOpt = dishRepository.findById(item.getDishId());
-            if (dishOpt.isEmpty()) {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message("菜品不存在: " + item.getDishId()));
-            }
-            Dish dish = dishOpt.get();
-            if (dish.getRestaurant() == null || dish.getRestaurant().getId() == null || !dish.getRestaurant().getId().equals(restaurant.getId())) {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message("菜品不属于该饭店"));
+        List<OrderPricingService.CartLine> lines = toCartLines(request.getItems());
+        // 带有效报价时直接沿用报价结果，否则重新计价
+        OrderPricingService.PricedCart cart = cartQuoteService.redeem(request.getQuoteToken(), restaurant.getId(), lines)
+                .orElse(null);
+        if (cart == null) {
+            try {
+                cart = orderPricingService.price(restaurant.getId(), lines);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(e.getMessage()));
             }
-            if (!"AVAILABLE".equalsIgnoreCase(dish.getStatus())) {
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message("菜品已下架: " + dish.getName()));
-            }
-
-            BigDecimal originalUnit = dish.getPrice() != null ? dish.getPrice() : BigDecimal.ZERO;
-            BigDecimal payUnit = calcPayUnitPrice(dish, originalUnit);
-
-            totalOriginal = totalOriginal.add(originalUnit.multiply(BigDecimal.valueOf(item.getQuantity())));
-            totalPayBeforePromotion = totalPayBeforePromotion.add(payUnit.multiply(BigDecimal.valueOf(item.getQuantity())));
+        }
 
+        List<OrderItem> orderItems = new ArrayList<>(cart.lines().size());
+        for (OrderPricingService.PricedLine line : cart.lines()) {
             OrderItem oi = new OrderItem();
-            oi.setDish(dish);
-            oi.setDishName(dish.getName());
-            oi.setUnitPrice(payUnit);
-            oi.setQuantity(item.getQuantity());
+            oi.setDish(dishRepository.getReferenceById(line.dishId()));
+            oi.setDishName(line.dishName());
+            oi.setUnitPrice(line.unitPrice().toBigDecimal());
+            oi.setQuantity(line.quantity());
             orderItems.add(oi);
         }
 
-        BigDecimal promoDiscount = calculatePromotionDiscount(restaurant.getId(), totalPayBeforePromotion);
-        BigDecimal payAmount = totalPayBeforePromotion.subtract(promoDiscount);
-        if (payAmount.compareTo(BigDecimal.ZERO) < 0) payAmount = BigDecimal.ZERO;
+        BigDecimal totalOriginal = cart.totalOriginal().toBigDecimal();
+        BigDecimal payAmount = cart.payAmount().toBigDecimal();
 
         CustomerOrder order = new CustomerOrder();
         order.setCustomer(customer);
@@ -141,13 +224,22 @@ public class CustomerOrderController {
         order.setRemark(safe(request.getRemark(), 255));
         order.setDeliveryLat(request.getDeliveryLat());
         order.setDeliveryLng(request.getDeliveryLng());
+        order.setIdempotencyKey(idempotencyKey);
+        boolean needsGeocode = order.getDeliveryLat() == null || order.getDeliveryLng() == null;
+        if (needsGeocode) {
+            // 没选地点时先用地址缓存补上坐标；缓存里没有的下单后由后台解析回填
+            Optional<BaiduMapService.Coord> coord = geocodeService.cached(order.getAddressDetail());
+            if (coord.isPresent()) {
+                order.setDeliveryLat(coord.get().lat());
+                order.setDeliveryLng(coord.get().lng());
+                needsGeocode = false;
+            }
+        }
 
-        CustomerOrder savedOrder = customerOrderRepository.save(order);
-
-        for (OrderItem oi : orderItems) {
-            oi.setOrder(savedOrder);
+        CustomerOrder savedOrder = orderCreationService.save(order, orderItems);
+        if (needsGeocode) {
+            geocodeService.prefetchForOrder(savedOrder.getId(), savedOrder.getAddressDetail());
         }
-        orderItemRepository.saveAll(orderItems);
 
         return ResponseEntity.status(HttpStatus.CREATED).body(new CreateOrderResponse(
                 savedOrder.getId(),
@@ -157,10 +249,49 @@ public class CustomerOrderController {
         ));
     }
 
+    /**
+     * 购物车试算：不落库，返回价格明细和 quoteToken，下单时带上 quoteToken 可跳过重新计价。
+     */
+    @PostMapping("/cart/quote")
+    public ResponseEntity<?> quoteCart(@RequestBody CartQuoteRequest request) {
+        if (request == null || request.getRestaurantId() == null || request.getItems() == null || request.getItems().isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message("参数不完整"));
+        }
+        CartQuoteService.Quote quote;
+        try {
+            quote = cartQuoteService.quote(request.getRestaurantId(), toCartLines(request.getItems()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message(e.getMessage()));
+        }
+
+        OrderPricingService.PricedCart cart = quote.cart();
+        List<OrderItemRow> items = cart.lines().stream()
+                .map(l -> new OrderItemRow(null, l.dishId(), l.dishName(), l.unitPrice().toBigDecimal(), l.quantity()))
+                .toList();
+        return ResponseEntity.ok(new CartQuoteResponse(
+                quote.token(),
+                quote.expiresAtMillis(),
+                cart.totalOriginal().toBigDecimal(),
+                cart.totalOriginal().minus(cart.payAmount()).toBigDecimal(),
+                cart.promotionDiscount().toBigDecimal(),
+                cart.payAmount().toBigDecimal(),
+                items
+        ));
+    }
+
+    private static List<OrderPricingService.CartLine> toCartLines(List<CreateOrderItem> items) {
+        return items.stream()
+                .map(i -> i == null
+                        ? new OrderPricingService.CartLine(null, null)
+                        : new OrderPricingService.CartLine(i.getDishId(), i.getQuantity()))
+                .toList();
+    }
+
     @PostMapping("/orders/{id}/pay")
     @Transactional
     public ResponseEntity<?> pay(@PathVariable("id") Long orderId,
-                                 @RequestParam(value = "method", required = false) String method) {
+                                 @RequestParam(value = "method", required = false) String method,
+                                 @RequestParam(value = "inlineQr", defaultValue = "true") boolean inlineQr) {
         Optional<CustomerOrder> orderOpt = customerOrderRepository.findById(orderId);
         if (orderOpt.isEmpty()) {
             return ResponseEntity.notFound().build();
@@ -202,11 +333,9 @@ public class CustomerOrderController {
             payLog.setOperatorId(order.getCustomer() != null ? order.getCustomer().getId() : null);
             payLog.setStatus("PENDING");
             payLog.setNote("mock wechat out_trade_no=" + outTradeNo);
-            paymentLogRepository.save(payLog);
+            paymentLogSink.record(payLog);
 
-            byte[] png = qrCodeService.toPng(codeUrl, 260);
-            String dataUrl = "data:image/png;base64," + Base64.getEncoder().encodeToString(png);
-            return ResponseEntity.ok(new WechatNativePayResponse(order.getId(), order.getPayAmount(), outTradeNo, codeUrl, dataUrl));
+            return ResponseEntity.ok(wechatNativePayResponse(order, outTradeNo, codeUrl, inlineQr));
         }
 
         if ("WECHAT_NATIVE".equalsIgnoreCase(m) || "WECHAT".equalsIgnoreCase(m) || "WXPAY".equalsIgnoreCase(m)) {
@@ -220,9 +349,7 @@ public class CustomerOrderController {
                 payAmount = order.getTotalAmount() != null ? order.getTotalAmount() : BigDecimal.ZERO;
                 order.setPayAmount(payAmount);
             }
-            int totalFen = payAmount.multiply(BigDecimal.valueOf(100))
-                    .setScale(0, java.math.RoundingMode.HALF_UP)
-                    .intValue();
+            int totalFen = Money.ofYuan(payAmount).toFenInt();
             if (totalFen <= 0) {
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new Message("Invalid pay amount"));
             }
@@ -253,11 +380,9 @@ public class CustomerOrderController {
             payLog.setOperatorId(order.getCustomer() != null ? order.getCustomer().getId() : null);
             payLog.setStatus("PENDING");
             payLog.setNote("wechat out_trade_no=" + outTradeNo);
-            paymentLogRepository.save(payLog);
+            paymentLogSink.record(payLog);
 
-            byte[] png = qrCodeService.toPng(codeUrl, 260);
-            String dataUrl = "data:image/png;base64," + Base64.getEncoder().encodeToString(png);
-            return ResponseEntity.ok(new WechatNativePayResponse(order.getId(), order.getPayAmount(), outTradeNo, codeUrl, dataUrl));
+            return ResponseEntity.ok(wechatNativePayResponse(order, outTradeNo, codeUrl, inlineQr));
         }
 
         CustomerOrder paid = orderPaymentService.markPaidIfNeeded(
@@ -278,53 +403,59 @@ public class CustomerOrderController {
         ));
     }
 
-    private BigDecimal calculatePromotionDiscount(Long restaurantId, BigDecimal payBeforePromotion) {
-        if (restaurantId == null) return BigDecimal.ZERO;
-        if (payBeforePromotion == null) return BigDecimal.ZERO;
-        if (payBeforePromotion.compareTo(BigDecimal.ZERO) <= 0) return BigDecimal.ZERO;
-
-        LocalDateTime now = LocalDateTime.now();
-        List<RestaurantPromotion> list = restaurantPromotionRepository.findActiveAt(restaurantId, now);
-        if (list.isEmpty()) return BigDecimal.ZERO;
-
-        BigDecimal best = BigDecimal.ZERO;
-        for (RestaurantPromotion p : list) {
-            if (!"FULL_REDUCTION".equalsIgnoreCase(p.getType())) continue;
-            BigDecimal threshold = p.getThresholdAmount() == null ? BigDecimal.ZERO : p.getThresholdAmount();
-            BigDecimal discount = p.getDiscountAmount() == null ? BigDecimal.ZERO : p.getDiscountAmount();
-            if (discount.compareTo(BigDecimal.ZERO) <= 0) continue;
-            if (payBeforePromotion.compareTo(threshold) >= 0) {
-                if (discount.compareTo(best) > 0) best = discount;
-            }
+    private WechatNativePayResponse wechatNativePayResponse(CustomerOrder order, String outTradeNo, String codeUrl, boolean inlineQr) {
+        String customerId = order.getCustomer() != null && order.getCustomer().getId() != null ? order.getCustomer().getId().toString() : "";
+        String imageUrl = "/api/customer/orders/" + order.getId() + "/pay-qr.png?customerId=" + customerId + "&size=" + PAY_QR_SIZE;
+        String dataUrl = null;
+        if (inlineQr) {
+            byte[] png = qrCodeService.toPng(codeUrl, PAY_QR_SIZE);
+            dataUrl = "data:image/png;base64," + Base64.getEncoder().encodeToString(png);
         }
-        if (best.compareTo(payBeforePromotion) > 0) return payBeforePromotion;
-        return best;
+        return new WechatNativePayResponse(order.getId(), order.getPayAmount(), outTradeNo, codeUrl, dataUrl, imageUrl);
     }
 
-    private static BigDecimal calcPayUnitPrice(Dish dish, BigDecimal originalUnit) {
-        if (originalUnit == null) return BigDecimal.ZERO;
-        if (dish == null) return originalUnit;
-        String t = dish.getDiscountType();
-        BigDecimal v = dish.getDiscountValue();
-        if (t == null || t.isBlank() || v == null) return originalUnit;
-
-        if ("PERCENT".equalsIgnoreCase(t)) {
-            BigDecimal ratio;
-            if (v.compareTo(BigDecimal.ONE) <= 0) {
-                ratio = v;
-            } else {
-                ratio = v.divide(BigDecimal.valueOf(100), 6, java.math.RoundingMode.HALF_UP);
-            }
-            BigDecimal pay = originalUnit.multiply(ratio);
-            if (pay.compareTo(BigDecimal.ZERO) < 0) pay = BigDecimal.ZERO;
-            return pay.setScale(2, java.math.RoundingMode.HALF_UP);
+    /**
+     * 直接返回支付二维码图片，前端可用 &lt;img src&gt; 引用，不必在 JSON 里携带 base64。
+     */
+    @GetMapping(value = "/orders/{id}/pay-qr.png", produces = MediaType.IMAGE_PNG_VALUE)
+    public ResponseEntity<byte[]> payQrPng(@PathVariable("id") Long id,
+                                           @RequestParam("customerId") Long customerId,
+                                           @RequestParam(value = "size", defaultValue = "260") int size) {
+        Optional<CustomerOrder> orderOpt = customerOrderRepository.findById(id);
+        if (orderOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        CustomerOrder order = orderOpt.get();
+        if (order.getCustomer() == null || order.getCustomer().getId() == null || !order.getCustomer().getId().equals(customerId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        String codeUrl = order.getPayCodeUrl();
+        if (!"UNPAID".equalsIgnoreCase(order.getPayStatus()) || codeUrl == null || codeUrl.isBlank()) {
+            return ResponseEntity.notFound().build();
+        }
+        byte[] png = qrCodeService.toPng(codeUrl, size);
+        return ResponseEntity.ok()
+                .contentType(MediaType.IMAGE_PNG)
+                .cacheControl(CacheControl.maxAge(Duration.ofMinutes(5)).cachePrivate())
+                .body(png);
+    }
+
+    /**
+     * 订单状态实时推送（SSE）：支付、派单、配送、完成、取消、退款时推送 order 事件；
+     * 带 orderId 时只推这一单。
+     */
+    @GetMapping(value = "/orders/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> orderEvents(@RequestParam("customerId") Long customerId,
+                                                  @RequestParam(value = "orderId", required = false) Long orderId) {
+        if (customerId == null || !customerRepository.existsById(customerId)) {
+            return ResponseEntity.notFound().build();
         }
-        if ("AMOUNT".equalsIgnoreCase(t)) {
-            BigDecimal pay = originalUnit.subtract(v);
-            if (pay.compareTo(BigDecimal.ZERO) < 0) pay = BigDecimal.ZERO;
-            return pay.setScale(2, java.math.RoundingMode.HALF_UP);
+        SseEmitter emitter = orderEventStream.subscribe(customerId, orderId);
+        if (emitter == null) {
+            // 事件流无法携带 JSON 错误体，前端收到非 200 会退回轮询
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         }
-        return originalUnit;
+        return ResponseEntity.ok(emitter);
     }
 
     @GetMapping("/orders")
@@ -462,10 +593,7 @@ public class CustomerOrderController {
         }
 
         if (order.getDeliveryStaff() != null) {
-            DeliveryStaff staff = order.getDeliveryStaff();
-            Integer load = staff.getCurrentLoad() == null ? 0 : staff.getCurrentLoad();
-            staff.setCurrentLoad(Math.max(0, load - 1));
-            deliveryStaffRepository.save(staff);
+            deliveryStaffRepository.decrementLoad(order.getDeliveryStaff().getId());
             order.setDeliveryStaff(null);
         }
 
@@ -483,12 +611,15 @@ public class CustomerOrderController {
             refundLog.setOperatorId(order.getCustomer() != null ? order.getCustomer().getId() : null);
             refundLog.setStatus("SUCCESS");
             refundLog.setNote("模拟退款");
-            paymentLogRepository.save(refundLog);
+            paymentLogSink.record(refundLog);
         }
         order.setStatus("CANCELED");
         order.setCancelReason(safe(request.getReason(), 255));
         order.setFinishedAt(LocalDateTime.now());
         customerOrderRepository.save(order);
+        riderHallFeed.changed(order.getId());
+        orderEventStream.publish(order.getId(), OrderEventStream.CANCELED);
+        if ("PAID".equalsIgnoreCase(payStatus)) orderEventStream.publish(order.getId(), OrderEventStream.REFUNDED);
 
         return ResponseEntity.ok(new Message("OK"));
     }
@@ -509,6 +640,7 @@ public class CustomerOrderController {
         private String remark;
         private Double deliveryLat;
         private Double deliveryLng;
+        private String quoteToken;
         private List<CreateOrderItem> items;
 
         public CreateOrderRequest() {
@@ -578,6 +710,38 @@ public class CustomerOrderController {
             this.deliveryLng = deliveryLng;
         }
 
+        public String getQuoteToken() {
+            return quoteToken;
+        }
+
+        public void setQuoteToken(String quoteToken) {
+            this.quoteToken = quoteToken;
+        }
+
+        public List<CreateOrderItem> getItems() {
+            return items;
+        }
+
+        public void setItems(List<CreateOrderItem> items) {
+            this.items = items;
+        }
+    }
+
+    public static class CartQuoteRequest {
+        private Long restaurantId;
+        private List<CreateOrderItem> items;
+
+        public CartQuoteRequest() {
+        }
+
+        public Long getRestaurantId() {
+            return restaurantId;
+        }
+
+        public void setRestaurantId(Long restaurantId) {
+            this.restaurantId = restaurantId;
+        }
+
         public List<CreateOrderItem> getItems() {
             return items;
         }
@@ -587,6 +751,60 @@ public class CustomerOrderController {
         }
     }
 
+    public static class CartQuoteResponse {
+        private final String quoteToken;
+        private final long expiresAt;
+        private final BigDecimal totalAmount;
+        private final BigDecimal discountAmount;
+        private final BigDecimal promotionDiscount;
+        private final BigDecimal payAmount;
+        private final List<OrderItemRow> items;
+
+        public CartQuoteResponse(String quoteToken,
+                                 long expiresAt,
+                                 BigDecimal totalAmount,
+                                 BigDecimal discountAmount,
+                                 BigDecimal promotionDiscount,
+                                 BigDecimal payAmount,
+                                 List<OrderItemRow> items) {
+            this.quoteToken = quoteToken;
+            this.expiresAt = expiresAt;
+            this.totalAmount = totalAmount;
+            this.discountAmount = discountAmount;
+            this.promotionDiscount = promotionDiscount;
+            this.payAmount = payAmount;
+            this.items = items;
+        }
+
+        public String getQuoteToken() {
+            return quoteToken;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        public BigDecimal getTotalAmount() {
+            return totalAmount;
+        }
+
+        public BigDecimal getDiscountAmount() {
+            return discountAmount;
+        }
+
+        public BigDecimal getPromotionDiscount() {
+            return promotionDiscount;
+        }
+
+        public BigDecimal getPayAmount() {
+            return payAmount;
+        }
+
+        public List<OrderItemRow> getItems() {
+            return items;
+        }
+    }
+
     public static class CreateOrderItem {
         private Long dishId;
         private Integer quantity;
@@ -694,17 +912,20 @@ public class CustomerOrderController {
         private final String outTradeNo;
         private final String codeUrl;
         private final String qrCodeDataUrl;
+        private final String qrCodeImageUrl;
 
         public WechatNativePayResponse(Long orderId,
                                       BigDecimal payAmount,
                                       String outTradeNo,
                                       String codeUrl,
-                                      String qrCodeDataUrl) {
+                                      String qrCodeDataUrl,
+                                      String qrCodeImageUrl) {
             this.orderId = orderId;
             this.payAmount = payAmount;
             this.outTradeNo = outTradeNo;
             this.codeUrl = codeUrl;
             this.qrCodeDataUrl = qrCodeDataUrl;
+            this.qrCodeImageUrl = qrCodeImageUrl;
         }
 
         public Long getOrderId() {
@@ -726,6 +947,10 @@ public class CustomerOrderController {
         public String getQrCodeDataUrl() {
             return qrCodeDataUrl;
         }
+
+        public String getQrCodeImageUrl() {
+            return qrCodeImageUrl;
+        }
     }
 
     public static class CancelRequest {
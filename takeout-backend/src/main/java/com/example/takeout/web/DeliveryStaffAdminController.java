@@ -2,6 +2,7 @@ package com.example.takeout.web;
 
 import com.example.takeout.entity.DeliveryStaff;
 import com.example.takeout.repository.DeliveryStaffRepository;
+import com.example.takeout.service.RiderLocationService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -15,9 +16,12 @@ import java.util.Optional;
 public class DeliveryStaffAdminController {
 
     private final DeliveryStaffRepository deliveryStaffRepository;
+    private final RiderLocationService riderLocationService;
 
-    public DeliveryStaffAdminController(DeliveryStaffRepository deliveryStaffRepository) {
+    public DeliveryStaffAdminController(DeliveryStaffRepository deliveryStaffRepository,
+                                        RiderLocationService riderLocationService) {
         this.deliveryStaffRepository = deliveryStaffRepository;
+        this.riderLocationService = riderLocationService;
     }
 
     @GetMapping
@@ -36,6 +40,7 @@ public class DeliveryStaffAdminController {
         staff.setStatus(payload.getStatus() == null || payload.getStatus().isBlank() ? "ACTIVE" : payload.getStatus());
         staff.setCurrentLoad(payload.getCurrentLoad() == null ? 0 : payload.getCurrentLoad());
         DeliveryStaff saved = deliveryStaffRepository.save(staff);
+        riderLocationService.staffChanged(saved);
         return ResponseEntity.status(HttpStatus.CREATED).body(saved);
     }
 
@@ -53,6 +58,8 @@ public class DeliveryStaffAdminController {
         }
 
         DeliveryStaff saved = deliveryStaffRepository.save(staff);
+        // 停用/启用骑手时同步派单索引
+        riderLocationService.staffChanged(saved);
         return ResponseEntity.ok(saved);
     }
 
@@ -60,6 +67,7 @@ public class DeliveryStaffAdminController {
     public ResponseEntity<?> delete(@PathVariable("id") Long id) {
         if (!deliveryStaffRepository.existsById(id)) return ResponseEntity.notFound().build();
         deliveryStaffRepository.deleteById(id);
+        riderLocationService.staffRemoved(id);
         return ResponseEntity.noContent().build();
     }
 
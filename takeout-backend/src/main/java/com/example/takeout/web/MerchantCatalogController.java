@@ -6,6 +6,7 @@ import com.example.takeout.entity.Restaurant;
 import com.example.takeout.repository.DishCategoryRepository;
 import com.example.takeout.repository.DishRepository;
 import com.example.takeout.repository.RestaurantRepository;
+import com.example.takeout.service.MenuSnapshotCache;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -21,13 +22,16 @@ public class MerchantCatalogController {
     private final RestaurantRepository restaurantRepository;
     private final DishCategoryRepository dishCategoryRepository;
     private final DishRepository dishRepository;
+    private final MenuSnapshotCache menuSnapshotCache;
 
     public MerchantCatalogController(RestaurantRepository restaurantRepository,
                                      DishCategoryRepository dishCategoryRepository,
-                                     DishRepository dishRepository) {
+                                     DishRepository dishRepository,
+                                     MenuSnapshotCache menuSnapshotCache) {
         this.restaurantRepository = restaurantRepository;
         this.dishCategoryRepository = dishCategoryRepository;
         this.dishRepository = dishRepository;
+        this.menuSnapshotCache = menuSnapshotCache;
     }
 
     @GetMapping("/{restaurantId}/categories")
@@ -53,6 +57,7 @@ public class MerchantCatalogController {
         category.setName(payload.getName());
         category.setSortOrder(payload.getSortOrder());
         DishCategory saved = dishCategoryRepository.save(category);
+        menuSnapshotCache.evict(restaurantId);
         return ResponseEntity.status(HttpStatus.CREATED).body(toRow(saved));
     }
 
@@ -73,6 +78,7 @@ public class MerchantCatalogController {
             return ResponseEntity.status(HttpStatus.CONFLICT).build();
         }
         dishCategoryRepository.deleteById(categoryId);
+        menuSnapshotCache.evict(restaurantId);
         return ResponseEntity.noContent().build();
     }
 
@@ -98,6 +104,7 @@ public class MerchantCatalogController {
         dish.setRestaurant(restaurantOpt.get());
         applyDishPayload(dish, restaurantId, payload);
         Dish saved = dishRepository.save(dish);
+        menuSnapshotCache.evict(restaurantId);
         return ResponseEntity.status(HttpStatus.CREATED).body(toRow(saved));
     }
 
@@ -116,6 +123,7 @@ public class MerchantCatalogController {
         }
         applyDishPayload(dish, restaurantId, payload);
         Dish saved = dishRepository.save(dish);
+        menuSnapshotCache.evict(restaurantId);
         return ResponseEntity.ok(toRow(saved));
     }
 
@@ -132,6 +140,7 @@ public class MerchantCatalogController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
         dishRepository.deleteById(dishId);
+        menuSnapshotCache.evict(restaurantId);
         return ResponseEntity.noContent().build();
     }
 
@@ -4,6 +4,7 @@ import com.example.takeout.entity.Restaurant;
 import com.example.takeout.entity.RestaurantPromotion;
 import com.example.takeout.repository.RestaurantPromotionRepository;
 import com.example.takeout.repository.RestaurantRepository;
+import com.example.takeout.service.MenuSnapshotCache;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
@@ -22,11 +23,14 @@ public class MerchantPromotionController {
 
     private final RestaurantRepository restaurantRepository;
     private final RestaurantPromotionRepository promotionRepository;
+    private final MenuSnapshotCache menuSnapshotCache;
 
     public MerchantPromotionController(RestaurantRepository restaurantRepository,
-                                       RestaurantPromotionRepository promotionRepository) {
+                                       RestaurantPromotionRepository promotionRepository,
+                                       MenuSnapshotCache menuSnapshotCache) {
         this.restaurantRepository = restaurantRepository;
         this.promotionRepository = promotionRepository;
+        this.menuSnapshotCache = menuSnapshotCache;
     }
 
     @GetMapping("/{restaurantId}/promotions")
@@ -50,6 +54,7 @@ public class MerchantPromotionController {
         p.setRestaurant(restaurantOpt.get());
         apply(p, payload);
         RestaurantPromotion saved = promotionRepository.save(p);
+        menuSnapshotCache.evict(restaurantId);
         return ResponseEntity.status(HttpStatus.CREATED).body(toRow(saved));
     }
 
@@ -69,6 +74,7 @@ public class MerchantPromotionController {
 
         apply(p, payload);
         RestaurantPromotion saved = promotionRepository.save(p);
+        menuSnapshotCache.evict(restaurantId);
         return ResponseEntity.ok(toRow(saved));
     }
 
@@ -83,6 +89,7 @@ public class MerchantPromotionController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
         promotionRepository.deleteById(id);
+        menuSnapshotCache.evict(restaurantId);
         return ResponseEntity.noContent().build();
     }
 
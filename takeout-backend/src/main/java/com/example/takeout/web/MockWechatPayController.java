@@ -2,6 +2,7 @@ package com.example.takeout.web;
 
 import com.example.takeout.entity.CustomerOrder;
 import com.example.takeout.repository.CustomerOrderRepository;
+import com.example.takeout.service.OrderEventStream;
 import com.example.takeout.service.OrderPaymentService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -12,6 +13,7 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDateTime;
 import java.util.Optional;
@@ -22,11 +24,14 @@ public class MockWechatPayController {
 
     private final CustomerOrderRepository customerOrderRepository;
     private final OrderPaymentService orderPaymentService;
+    private final OrderEventStream orderEventStream;
 
     public MockWechatPayController(CustomerOrderRepository customerOrderRepository,
-                                   OrderPaymentService orderPaymentService) {
+                                   OrderPaymentService orderPaymentService,
+                                   OrderEventStream orderEventStream) {
         this.customerOrderRepository = customerOrderRepository;
         this.orderPaymentService = orderPaymentService;
+        this.orderEventStream = orderEventStream;
     }
 
     @GetMapping(value = "/pay", produces = MediaType.TEXT_HTML_VALUE)
@@ -87,7 +92,7 @@ public class MockWechatPayController {
                       const data = await res.json().catch(()=>({}));
                       if(!res.ok){ msgEl.textContent = (data && data.message) ? data.message : '失败'; return; }
                       msgEl.textContent = '已确认支付，返回订单页查看状态即可。';
-                      await refresh();
+                      if(!live) await refresh();
                     }
                     async function refresh(){
                       const res = await fetch(`/api/mock-wechatpay/status?outTradeNo=${encodeURIComponent(outTradeNo)}`);
@@ -98,6 +103,18 @@ public class MockWechatPayController {
                     }
                     document.getElementById('confirm').addEventListener('click', confirmPay);
                     document.getElementById('refresh').addEventListener('click', refresh);
+
+                    // 支付状态由服务端推送，不用反复刷新
+                    let live = false;
+                    if(window.EventSource){
+                      const es = new EventSource(`/api/mock-wechatpay/events?outTradeNo=${encodeURIComponent(outTradeNo)}`);
+                      es.onopen = () => { live = true; };
+                      es.addEventListener('order', (e) => {
+                        const data = JSON.parse(e.data);
+                        if(data && data.payStatus) document.getElementById('ps').textContent = data.payStatus;
+                      });
+                      es.onerror = () => { if(es.readyState === EventSource.CLOSED) live = false; };
+                    }
                   </script>
                 </body>
                 </html>
@@ -119,6 +136,24 @@ public class MockWechatPayController {
         return ResponseEntity.ok(new StatusResponse(order.getId(), order.getPayStatus(), order.getPayAmount()));
     }
 
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> events(@RequestParam("outTradeNo") String outTradeNo) {
+        if (outTradeNo == null || outTradeNo.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        // 只在建立连接时按商户单号查一次，之后的状态变化由推送送达
+        Optional<CustomerOrder> orderOpt = customerOrderRepository.findFirstByPayOutTradeNo(outTradeNo.trim());
+        if (orderOpt.isEmpty() || orderOpt.get().getCustomer() == null) {
+            return ResponseEntity.notFound().build();
+        }
+        CustomerOrder order = orderOpt.get();
+        SseEmitter emitter = orderEventStream.subscribe(order.getCustomer().getId(), order.getId());
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
     @PostMapping("/confirm")
     @Transactional
     public ResponseEntity<?> confirm(@RequestParam("outTradeNo") String outTradeNo) {
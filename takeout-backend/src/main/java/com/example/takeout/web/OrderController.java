@@ -6,13 +6,18 @@ import com.example.takeout.entity.PaymentLog;
 import com.example.takeout.repository.CustomerOrderRepository;
 import com.example.takeout.repository.DeliveryStaffRepository;
 import com.example.takeout.repository.OrderItemRepository;
-import com.example.takeout.repository.PaymentLogRepository;
 import com.example.takeout.service.DeliveryAssignmentService;
+import com.example.takeout.service.OrderEventStream;
+import com.example.takeout.service.PaymentLogSink;
+import com.example.takeout.service.RiderHallFeed;
+import com.example.takeout.service.RiderLocationService;
+import com.example.takeout.service.RiderTrackStore;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
@@ -30,18 +35,30 @@ public class OrderController {
     private final OrderItemRepository orderItemRepository;
     private final DeliveryStaffRepository deliveryStaffRepository;
     private final DeliveryAssignmentService deliveryAssignmentService;
-    private final PaymentLogRepository paymentLogRepository;
+    private final PaymentLogSink paymentLogSink;
+    private final RiderHallFeed riderHallFeed;
+    private final OrderEventStream orderEventStream;
+    private final RiderLocationService riderLocationService;
+    private final RiderTrackStore riderTrackStore;
 
     public OrderController(CustomerOrderRepository customerOrderRepository,
                            OrderItemRepository orderItemRepository,
                            DeliveryStaffRepository deliveryStaffRepository,
                            DeliveryAssignmentService deliveryAssignmentService,
-                           PaymentLogRepository paymentLogRepository) {
+                           PaymentLogSink paymentLogSink,
+                           RiderHallFeed riderHallFeed,
+                           OrderEventStream orderEventStream,
+                           RiderLocationService riderLocationService,
+                           RiderTrackStore riderTrackStore) {
         this.customerOrderRepository = customerOrderRepository;
         this.orderItemRepository = orderItemRepository;
         this.deliveryStaffRepository = deliveryStaffRepository;
         this.deliveryAssignmentService = deliveryAssignmentService;
-        this.paymentLogRepository = paymentLogRepository;
+        this.paymentLogSink = paymentLogSink;
+        this.riderHallFeed = riderHallFeed;
+        this.orderEventStream = orderEventStream;
+        this.riderLocationService = riderLocationService;
+        this.riderTrackStore = riderTrackStore;
     }
 
     @GetMapping
@@ -106,6 +123,7 @@ public class OrderController {
         Long deliveryStaffId = null;
         String deliveryStaffName = null;
         String deliveryStaffPhone = null;
+        RiderLocationService.Fix riderFix = riderLocationService.positionOf(order.getDeliveryStaff());
         if (order.getDeliveryStaff() != null) {
             deliveryStaffId = order.getDeliveryStaff().getId();
             deliveryStaffName = order.getDeliveryStaff().getName();
@@ -137,17 +155,40 @@ public class OrderController {
                 deliveryStaffId,
                 deliveryStaffName,
                 deliveryStaffPhone,
-                order.getDeliveryStaff() != null ? order.getDeliveryStaff().getCurrentLat() : null,
-                order.getDeliveryStaff() != null ? order.getDeliveryStaff().getCurrentLng() : null,
+                riderFix != null ? riderFix.lat() : null,
+                riderFix != null ? riderFix.lng() : null,
                 order.getDeliveryStaff() != null ? order.getDeliveryStaff().getCurrentLoad() : null,
-                order.getDeliveryStaff() != null && order.getDeliveryStaff().getLocationUpdatedAt() != null ? order.getDeliveryStaff().getLocationUpdatedAt().toString() : null,
+                riderFix != null && riderFix.at() != null ? riderFix.at().toString() : null,
                 itemRows
         );
 
         return ResponseEntity.ok(resp);
     }
 
+    /**
+     * 订单配送轨迹：当前配送骑手在支付到结束（未结束则到现在）之间的定位点，按时间升序。
+     */
+    @GetMapping("/{id}/track")
+    public ResponseEntity<OrderTrack> track(@PathVariable("id") Long id) {
+        Optional<CustomerOrder> orderOpt = customerOrderRepository.findById(id);
+        if (orderOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        CustomerOrder order = orderOpt.get();
+        Long deliveryStaffId = order.getDeliveryStaff() != null ? order.getDeliveryStaff().getId() : null;
+        LocalDateTime from = order.getPaidAt() != null ? order.getPaidAt() : order.getCreatedAt();
+        LocalDateTime to = order.getFinishedAt() != null ? order.getFinishedAt() : LocalDateTime.now();
+        if (deliveryStaffId == null || from == null) {
+            return ResponseEntity.ok(new OrderTrack(order.getId(), deliveryStaffId, from, to, List.of()));
+        }
+        List<TrackPoint> points = riderTrackStore.track(deliveryStaffId, from, to).stream()
+                .map(p -> new TrackPoint(p.lat(), p.lng(), RiderTrackStore.toLocal(p.atMillis())))
+                .toList();
+        return ResponseEntity.ok(new OrderTrack(order.getId(), deliveryStaffId, from, to, points));
+    }
+
     @PutMapping("/{id}/status")
+    @Transactional
     public ResponseEntity<OrderDetail> updateStatus(@PathVariable("id") Long id, @RequestBody StatusPayload payload) {
         Optional<CustomerOrder> orderOpt = customerOrderRepository.findById(id);
         if (orderOpt.isEmpty()) {
@@ -173,6 +214,7 @@ public class OrderController {
             return ResponseEntity.status(409).build();
         }
 
+        boolean refunded = false;
         order.setStatus(next);
         if ("COMPLETED".equals(next)) {
             order.setFinishedAt(LocalDateTime.now());
@@ -183,6 +225,7 @@ public class OrderController {
                 order.setCancelReason("后台取消");
             }
             if ("PAID".equalsIgnoreCase(order.getPayStatus())) {
+                refunded = true;
                 order.setPayStatus("REFUNDED");
                 order.setRefundedAt(LocalDateTime.now());
                 order.setCommissionAmount(BigDecimal.ZERO);
@@ -196,7 +239,7 @@ public class OrderController {
                 refundLog.setOperatorId(null);
                 refundLog.setStatus("SUCCESS");
                 refundLog.setNote("后台取消/退款");
-                paymentLogRepository.save(refundLog);
+                paymentLogSink.record(refundLog);
             }
             if (order.getDeliveryStaff() != null) {
                 order.setDeliveryStaff(null);
@@ -208,13 +251,11 @@ public class OrderController {
                 && !("COMPLETED".equalsIgnoreCase(previous) || "CANCELED".equalsIgnoreCase(previous))
                 && saved.getDeliveryStaff() != null
                 && saved.getDeliveryStaff().getId() != null) {
-            Long staffId = saved.getDeliveryStaff().getId();
-            deliveryStaffRepository.findById(staffId).ifPresent(staff -> {
-                Integer load = staff.getCurrentLoad() == null ? 0 : staff.getCurrentLoad();
-                staff.setCurrentLoad(Math.max(0, load - 1));
-                deliveryStaffRepository.save(staff);
-            });
+            deliveryStaffRepository.decrementLoad(saved.getDeliveryStaff().getId());
         }
+        riderHallFeed.changed(saved.getId());
+        orderEventStream.publish(saved.getId(), next);
+        if (refunded) orderEventStream.publish(saved.getId(), OrderEventStream.REFUNDED);
         return detail(saved.getId());
     }
 
@@ -616,4 +657,64 @@ public class OrderController {
             return quantity;
         }
     }
+
+    public static class OrderTrack {
+        private final Long orderId;
+        private final Long deliveryStaffId;
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        private final List<TrackPoint> points;
+
+        public OrderTrack(Long orderId, Long deliveryStaffId, LocalDateTime from, LocalDateTime to, List<TrackPoint> points) {
+            this.orderId = orderId;
+            this.deliveryStaffId = deliveryStaffId;
+            this.from = from;
+            this.to = to;
+            this.points = points;
+        }
+
+        public Long getOrderId() {
+            return orderId;
+        }
+
+        public Long getDeliveryStaffId() {
+            return deliveryStaffId;
+        }
+
+        public LocalDateTime getFrom() {
+            return from;
+        }
+
+        public LocalDateTime getTo() {
+            return to;
+        }
+
+        public List<TrackPoint> getPoints() {
+            return points;
+        }
+    }
+
+    public static class TrackPoint {
+        private final double lat;
+        private final double lng;
+        private final LocalDateTime at;
+
+        public TrackPoint(double lat, double lng, LocalDateTime at) {
+            this.lat = lat;
+            this.lng = lng;
+            this.at = at;
+        }
+
+        public double getLat() {
+            return lat;
+        }
+
+        public double getLng() {
+            return lng;
+        }
+
+        public LocalDateTime getAt() {
+            return at;
+        }
+    }
 }
@@ -1,35 +1,37 @@
 package com.example.takeout.web;
 
-import com.example.takeout.entity.Dish;
 import com.example.takeout.entity.Restaurant;
-import com.example.takeout.repository.DishRepository;
-import com.example.takeout.repository.RestaurantPromotionRepository;
 import com.example.takeout.repository.RestaurantRepository;
+import com.example.takeout.service.MenuSnapshotCache;
+import com.example.takeout.service.Money;
+import com.example.takeout.service.PromotionTable;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/public")
 public class PublicBrowseController {
 
+    private static final BigDecimal MAX_QUOTE_AMOUNT = new BigDecimal("1000000");
+
     private final RestaurantRepository restaurantRepository;
-    private final DishRepository dishRepository;
-    private final RestaurantPromotionRepository restaurantPromotionRepository;
+    private final MenuSnapshotCache menuSnapshotCache;
 
     public PublicBrowseController(RestaurantRepository restaurantRepository,
-                                  DishRepository dishRepository,
-                                  RestaurantPromotionRepository restaurantPromotionRepository) {
+                                  MenuSnapshotCache menuSnapshotCache) {
         this.restaurantRepository = restaurantRepository;
-        this.dishRepository = dishRepository;
-        this.restaurantPromotionRepository = restaurantPromotionRepository;
+        this.menuSnapshotCache = menuSnapshotCache;
     }
 
     @GetMapping("/restaurants")
@@ -39,31 +41,59 @@ public class PublicBrowseController {
 
     @GetMapping("/restaurants/{id}/dishes")
     public ResponseEntity<List<DishRow>> dishes(@PathVariable("id") Long restaurantId) {
-        Optional<Restaurant> restaurantOpt = restaurantRepository.findById(restaurantId);
-        if (restaurantOpt.isEmpty()) {
+        Optional<MenuSnapshotCache.MenuSnapshot> menuOpt = menuSnapshotCache.get(restaurantId);
+        if (menuOpt.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
         // 仅返回上架菜品；返回 DTO 避免 Hibernate 懒加载代理序列化报错
-        List<Dish> dishes = dishRepository.findByRestaurant_IdAndStatus(restaurantId, "AVAILABLE");
-        List<DishRow> rows = dishes.stream()
-                .map(d -> new DishRow(d.getId(), d.getName(), d.getPrice(), d.getStatus(), d.getDiscountType(), d.getDiscountValue()))
+        List<DishRow> rows = menuOpt.get().availableDishes().stream()
+                .map(d -> new DishRow(d.id(), d.name(), d.price(), d.status(), d.discountType(), d.discountValue()))
                 .toList();
         return ResponseEntity.ok(rows);
     }
 
     @GetMapping("/restaurants/{id}/promotions")
     public ResponseEntity<List<PromotionRow>> promotions(@PathVariable("id") Long restaurantId) {
-        if (!restaurantRepository.existsById(restaurantId)) {
+        Optional<MenuSnapshotCache.MenuSnapshot> menuOpt = menuSnapshotCache.get(restaurantId);
+        if (menuOpt.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
         LocalDateTime now = LocalDateTime.now();
-        List<PromotionRow> rows = restaurantPromotionRepository.findActiveAt(restaurantId, now).stream()
-                .filter(p -> "FULL_REDUCTION".equalsIgnoreCase(p.getType()))
-                .map(p -> new PromotionRow(p.getId(), p.getType(), p.getThresholdAmount(), p.getDiscountAmount()))
+        List<PromotionRow> rows = menuOpt.get().activePromotionsAt(now).stream()
+                .filter(p -> "FULL_REDUCTION".equalsIgnoreCase(p.type()))
+                .map(p -> new PromotionRow(p.id(), p.type(), p.thresholdAmount(), p.discountAmount()))
                 .toList();
         return ResponseEntity.ok(rows);
     }
 
+    /**
+     * 购物车页试算满减：amount 为菜品折后、满减前的金额，不查库。
+     */
+    @GetMapping("/restaurants/{id}/promotions/quote")
+    public ResponseEntity<?> promotionQuote(@PathVariable("id") Long restaurantId,
+                                            @RequestParam("amount") BigDecimal amount) {
+        // 公开接口，金额不设上限时换算成分会溢出
+        if (amount.abs().compareTo(MAX_QUOTE_AMOUNT) > 0) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "金额超出范围"));
+        }
+        Optional<MenuSnapshotCache.MenuSnapshot> menuOpt = menuSnapshotCache.get(restaurantId);
+        if (menuOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        Money a = Money.ofYuan(amount).atLeastZero();
+        LocalDateTime now = LocalDateTime.now();
+        PromotionTable table = menuOpt.get().promotionTable();
+        Money discount = table.bestDiscount(a, now);
+        Optional<PromotionTable.Tier> next = table.nextTier(a, now);
+        return ResponseEntity.ok(new PromotionQuote(
+                a.toBigDecimal(),
+                discount.toBigDecimal(),
+                a.minus(discount).toBigDecimal(),
+                next.map(t -> t.thresholdAmount().toBigDecimal()).orElse(null),
+                next.map(t -> t.discountAmount().toBigDecimal()).orElse(null)
+        ));
+    }
+
     public static class DishRow {
         private Long id;
         private String name;
@@ -135,4 +165,44 @@ public class PublicBrowseController {
             return discountAmount;
         }
     }
+
+    public static class PromotionQuote {
+        private BigDecimal amount;
+        private BigDecimal discountAmount;
+        private BigDecimal payAmount;
+        private BigDecimal nextThresholdAmount;
+        private BigDecimal nextDiscountAmount;
+
+        public PromotionQuote(BigDecimal amount,
+                              BigDecimal discountAmount,
+                              BigDecimal payAmount,
+                              BigDecimal nextThresholdAmount,
+                              BigDecimal nextDiscountAmount) {
+            this.amount = amount;
+            this.discountAmount = discountAmount;
+            this.payAmount = payAmount;
+            this.nextThresholdAmount = nextThresholdAmount;
+            this.nextDiscountAmount = nextDiscountAmount;
+        }
+
+        public BigDecimal getAmount() {
+            return amount;
+        }
+
+        public BigDecimal getDiscountAmount() {
+            return discountAmount;
+        }
+
+        public BigDecimal getPayAmount() {
+            return payAmount;
+        }
+
+        public BigDecimal getNextThresholdAmount() {
+            return nextThresholdAmount;
+        }
+
+        public BigDecimal getNextDiscountAmount() {
+            return nextDiscountAmount;
+        }
+    }
 }
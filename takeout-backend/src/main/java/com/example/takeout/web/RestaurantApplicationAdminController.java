@@ -6,6 +6,7 @@ import com.example.takeout.entity.RestaurantUser;
 import com.example.takeout.repository.RestaurantApplicationRepository;
 import com.example.takeout.repository.RestaurantRepository;
 import com.example.takeout.repository.RestaurantUserRepository;
+import com.example.takeout.service.GeocodeService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
@@ -23,13 +24,16 @@ public class RestaurantApplicationAdminController {
     private final RestaurantApplicationRepository applicationRepository;
     private final RestaurantRepository restaurantRepository;
     private final RestaurantUserRepository restaurantUserRepository;
+    private final GeocodeService geocodeService;
 
     public RestaurantApplicationAdminController(RestaurantApplicationRepository applicationRepository,
                                                RestaurantRepository restaurantRepository,
-                                               RestaurantUserRepository restaurantUserRepository) {
+                                               RestaurantUserRepository restaurantUserRepository,
+                                               GeocodeService geocodeService) {
         this.applicationRepository = applicationRepository;
         this.restaurantRepository = restaurantRepository;
         this.restaurantUserRepository = restaurantUserRepository;
+        this.geocodeService = geocodeService;
     }
 
     @GetMapping
@@ -74,6 +78,7 @@ public class RestaurantApplicationAdminController {
         restaurant.setPhone(a.getPhone());
         restaurant.setStatus("ACTIVE");
         Restaurant restaurantSaved = restaurantRepository.save(restaurant);
+        geocodeService.prefetchForRestaurant(restaurantSaved.getId(), restaurantSaved.getAddress());
 
         RestaurantUser ru = new RestaurantUser();
         ru.setRestaurant(restaurantSaved);
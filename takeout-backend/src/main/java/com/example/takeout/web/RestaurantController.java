@@ -2,6 +2,7 @@ package com.example.takeout.web;
 
 import com.example.takeout.entity.Restaurant;
 import com.example.takeout.repository.RestaurantRepository;
+import com.example.takeout.service.GeocodeService;
 import com.example.takeout.service.RestaurantAdminService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -9,6 +10,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 @RestController
@@ -17,10 +19,14 @@ public class RestaurantController {
 
     private final RestaurantRepository restaurantRepository;
     private final RestaurantAdminService restaurantAdminService;
+    private final GeocodeService geocodeService;
 
-    public RestaurantController(RestaurantRepository restaurantRepository, RestaurantAdminService restaurantAdminService) {
+    public RestaurantController(RestaurantRepository restaurantRepository,
+                                RestaurantAdminService restaurantAdminService,
+                                GeocodeService geocodeService) {
         this.restaurantRepository = restaurantRepository;
         this.restaurantAdminService = restaurantAdminService;
+        this.geocodeService = geocodeService;
     }
 
     @GetMapping
@@ -33,6 +39,7 @@ public class RestaurantController {
         Restaurant restaurant = new Restaurant();
         applyPayload(restaurant, payload);
         Restaurant saved = restaurantRepository.save(restaurant);
+        geocodeService.prefetchForRestaurant(saved.getId(), saved.getAddress());
         return ResponseEntity.status(HttpStatus.CREATED).body(saved);
     }
 
@@ -43,8 +50,17 @@ public class RestaurantController {
             return ResponseEntity.notFound().build();
         }
         Restaurant restaurant = existingOpt.get();
+        String oldAddress = restaurant.getAddress();
         applyPayload(restaurant, payload);
+        // 地址改了，旧坐标作废，由后台按新地址重新解析回填
+        if (!Objects.equals(oldAddress, restaurant.getAddress())) {
+            restaurant.setLat(null);
+            restaurant.setLng(null);
+        }
         Restaurant saved = restaurantRepository.save(restaurant);
+        if (saved.getLat() == null || saved.getLng() == null) {
+            geocodeService.prefetchForRestaurant(saved.getId(), saved.getAddress());
+        }
         return ResponseEntity.ok(saved);
     }
 
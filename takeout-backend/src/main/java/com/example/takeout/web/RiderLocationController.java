@@ -1,28 +1,23 @@
 package com.example.takeout.web;
 
-import com.example.takeout.entity.DeliveryStaff;
-import com.example.takeout.repository.DeliveryStaffRepository;
+import com.example.takeout.service.RiderLocationService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
-import java.time.LocalDateTime;
 import java.util.Map;
-import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/rider")
 public class RiderLocationController {
 
-    private final DeliveryStaffRepository deliveryStaffRepository;
+    private final RiderLocationService riderLocationService;
 
-    public RiderLocationController(DeliveryStaffRepository deliveryStaffRepository) {
-        this.deliveryStaffRepository = deliveryStaffRepository;
+    public RiderLocationController(RiderLocationService riderLocationService) {
+        this.riderLocationService = riderLocationService;
     }
 
     @PutMapping("/location")
-    @Transactional
     public ResponseEntity<?> updateLocation(@RequestBody UpdateLocationPayload payload) {
         if (payload == null || payload.getDeliveryStaffId() == null || payload.getLat() == null || payload.getLng() == null) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "参数不完整"));
@@ -30,13 +25,10 @@ public class RiderLocationController {
         if (!isValidLatLng(payload.getLat(), payload.getLng())) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "坐标不合法"));
         }
-        Optional<DeliveryStaff> opt = deliveryStaffRepository.findById(payload.getDeliveryStaffId());
-        if (opt.isEmpty()) return ResponseEntity.notFound().build();
-        DeliveryStaff s = opt.get();
-        s.setCurrentLat(payload.getLat());
-        s.setCurrentLng(payload.getLng());
-        s.setLocationUpdatedAt(LocalDateTime.now());
-        deliveryStaffRepository.save(s);
+        // 只更新内存和派单索引，坐标由 RiderLocationService 定时批量写库
+        if (!riderLocationService.record(payload.getDeliveryStaffId(), payload.getLat(), payload.getLng())) {
+            return ResponseEntity.notFound().build();
+        }
         return ResponseEntity.ok(Map.of("status", "OK"));
     }
 
@@ -7,20 +7,27 @@ import com.example.takeout.entity.Restaurant;
 import com.example.takeout.repository.CustomerOrderRepository;
 import com.example.takeout.repository.DeliveryStaffRepository;
 import com.example.takeout.repository.OrderItemRepository;
-import com.example.takeout.repository.RestaurantRepository;
 import com.example.takeout.service.BaiduMapService;
+import com.example.takeout.service.GeocodeService;
+import com.example.takeout.service.OrderEventStream;
+import com.example.takeout.service.RiderHallFeed;
+import com.example.takeout.service.RiderLocationService;
+import com.example.takeout.service.RouteEtaService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -32,19 +39,31 @@ public class RiderOrderController {
     private final CustomerOrderRepository customerOrderRepository;
     private final OrderItemRepository orderItemRepository;
     private final DeliveryStaffRepository deliveryStaffRepository;
-    private final RestaurantRepository restaurantRepository;
     private final BaiduMapService baiduMapService;
+    private final RiderHallFeed riderHallFeed;
+    private final OrderEventStream orderEventStream;
+    private final RiderLocationService riderLocationService;
+    private final RouteEtaService routeEtaService;
+    private final GeocodeService geocodeService;
 
     public RiderOrderController(CustomerOrderRepository customerOrderRepository,
                                 OrderItemRepository orderItemRepository,
                                 DeliveryStaffRepository deliveryStaffRepository,
-                                RestaurantRepository restaurantRepository,
-                                BaiduMapService baiduMapService) {
+                                BaiduMapService baiduMapService,
+                                RiderHallFeed riderHallFeed,
+                                OrderEventStream orderEventStream,
+                                RiderLocationService riderLocationService,
+                                RouteEtaService routeEtaService,
+                                GeocodeService geocodeService) {
         this.customerOrderRepository = customerOrderRepository;
         this.orderItemRepository = orderItemRepository;
         this.deliveryStaffRepository = deliveryStaffRepository;
-        this.restaurantRepository = restaurantRepository;
         this.baiduMapService = baiduMapService;
+        this.riderHallFeed = riderHallFeed;
+        this.orderEventStream = orderEventStream;
+        this.riderLocationService = riderLocationService;
+        this.routeEtaService = routeEtaService;
+        this.geocodeService = geocodeService;
     }
 
     @GetMapping("/orders")
@@ -111,17 +130,19 @@ public class RiderOrderController {
         double feePerOrder = 5.0;
         double incomeToday = completedToday * feePerOrder;
 
-        return ResponseEntity.ok(Map.of(
-                "deliveryStaffId", deliveryStaffId,
-                "currentLoad", staff.getCurrentLoad() == null ? 0 : staff.getCurrentLoad(),
-                "deliveringCount", delivering,
-                "completedTodayCount", completedToday,
-                "feePerOrder", feePerOrder,
-                "incomeToday", incomeToday,
-                "currentLat", staff.getCurrentLat(),
-                "currentLng", staff.getCurrentLng(),
-                "locationUpdatedAt", staff.getLocationUpdatedAt() != null ? staff.getLocationUpdatedAt().toString() : null
-        ));
+        // 位置取内存里的最新上报；还没上报过位置的骑手这几项为 null（Map.of 不接受 null）
+        RiderLocationService.Fix fix = riderLocationService.positionOf(staff);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("deliveryStaffId", deliveryStaffId);
+        body.put("currentLoad", staff.getCurrentLoad() == null ? 0 : staff.getCurrentLoad());
+        body.put("deliveringCount", delivering);
+        body.put("completedTodayCount", completedToday);
+        body.put("feePerOrder", feePerOrder);
+        body.put("incomeToday", incomeToday);
+        body.put("currentLat", fix != null ? fix.lat() : null);
+        body.put("currentLng", fix != null ? fix.lng() : null);
+        body.put("locationUpdatedAt", fix != null && fix.at() != null ? fix.at().toString() : null);
+        return ResponseEntity.ok(body);
     }
 
     @GetMapping("/hall-orders")
@@ -162,6 +183,19 @@ public class RiderOrderController {
         return ResponseEntity.ok(new PageResponse<>(items, safePage, safeSize, projectionPage.getTotalElements()));
     }
 
+    /**
+     * 接单大厅实时推送（SSE）：连接后先收到 snapshot（当前可抢订单），之后收到 add / remove 增量。
+     */
+    @GetMapping(value = "/hall-orders/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> hallOrdersStream() {
+        SseEmitter emitter = riderHallFeed.subscribe();
+        if (emitter == null) {
+            // 事件流无法携带 JSON 错误体，前端收到非 200 会退回轮询
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
     @GetMapping("/orders/{id}/route")
     public ResponseEntity<?> route(@PathVariable("id") Long id,
                                    @RequestParam("deliveryStaffId") Long deliveryStaffId) {
@@ -180,35 +214,33 @@ public class RiderOrderController {
         }
         DeliveryStaff staff = staffOpt.get();
 
-        Double riderLat = staff.getCurrentLat();
-        Double riderLng = staff.getCurrentLng();
-        if (riderLat == null || riderLng == null) {
+        RiderLocationService.Fix riderFix = riderLocationService.positionOf(staff);
+        if (riderFix == null) {
             return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", "请先上报骑手当前位置"));
         }
+        double riderLat = riderFix.lat();
+        double riderLng = riderFix.lng();
 
         Restaurant restaurant = order.getRestaurant();
         Double restLat = restaurant != null ? restaurant.getLat() : null;
         Double restLng = restaurant != null ? restaurant.getLng() : null;
         if ((restLat == null || restLng == null) && restaurant != null && restaurant.getAddress() != null) {
-            baiduMapService.geocode(restaurant.getAddress()).ifPresent(coord -> {
-                restaurant.setLat(coord.lat());
-                restaurant.setLng(coord.lng());
-                restaurantRepository.save(restaurant);
-            });
-            restLat = restaurant.getLat();
-            restLng = restaurant.getLng();
+            // 只查地址缓存，不在请求线程里调地图接口；未命中的由后台解析并回填到饭店
+            Optional<BaiduMapService.Coord> coord = geocodeService.cachedForRestaurant(restaurant.getId(), restaurant.getAddress());
+            if (coord.isPresent()) {
+                restLat = coord.get().lat();
+                restLng = coord.get().lng();
+            }
         }
 
         Double customerLat = order.getDeliveryLat();
         Double customerLng = order.getDeliveryLng();
         if ((customerLat == null || customerLng == null) && order.getAddressDetail() != null) {
-            baiduMapService.geocode(order.getAddressDetail()).ifPresent(coord -> {
-                order.setDeliveryLat(coord.lat());
-                order.setDeliveryLng(coord.lng());
-                customerOrderRepository.save(order);
-            });
-            customerLat = order.getDeliveryLat();
-            customerLng = order.getDeliveryLng();
+            Optional<BaiduMapService.Coord> coord = geocodeService.cachedForOrder(order.getId(), order.getAddressDetail());
+            if (coord.isPresent()) {
+                customerLat = coord.get().lat();
+                customerLng = coord.get().lng();
+            }
         }
 
         if (restLat == null || restLng == null) {
@@ -223,15 +255,15 @@ public class RiderOrderController {
         final double customerLatV = customerLat;
         final double customerLngV = customerLng;
 
-        BaiduMapService.RouteInfo riderToRest =
-                baiduMapService.drivingRoute(riderLat, riderLng, restLatV, restLngV)
-                        .orElseGet(() -> BaiduMapService.haversineFallback(riderLat, riderLng, restLatV, restLngV));
-        BaiduMapService.RouteInfo restToCustomer =
-                baiduMapService.drivingRoute(restLatV, restLngV, customerLatV, customerLngV)
-                        .orElseGet(() -> BaiduMapService.haversineFallback(restLatV, restLngV, customerLatV, customerLngV));
-        BaiduMapService.RouteInfo riderToCustomer =
-                baiduMapService.drivingRoute(riderLat, riderLng, customerLatV, customerLngV)
-                        .orElseGet(() -> BaiduMapService.haversineFallback(riderLat, riderLng, customerLatV, customerLngV));
+        // 三段路线并发取，共用一个等待预算；命中缓存的不发请求
+        List<BaiduMapService.RouteInfo> routes = routeEtaService.drivingRoutes(List.of(
+                new RouteEtaService.Leg(riderLat, riderLng, restLatV, restLngV),
+                new RouteEtaService.Leg(restLatV, restLngV, customerLatV, customerLngV),
+                new RouteEtaService.Leg(riderLat, riderLng, customerLatV, customerLngV)
+        ));
+        BaiduMapService.RouteInfo riderToRest = routes.get(0);
+        BaiduMapService.RouteInfo restToCustomer = routes.get(1);
+        BaiduMapService.RouteInfo riderToCustomer = routes.get(2);
 
         return ResponseEntity.ok(Map.of(
                 "points", Map.of(
@@ -265,25 +297,16 @@ public class RiderOrderController {
             return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", "骑手状态不可用"));
         }
 
-        Optional<CustomerOrder> orderOpt = customerOrderRepository.findById(id);
-        if (orderOpt.isEmpty()) return ResponseEntity.notFound().build();
-        CustomerOrder order = orderOpt.get();
-
-        if (order.getDeliveryStaff() != null && order.getDeliveryStaff().getId() != null) {
-            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", "订单已被其他骑手抢走"));
-        }
-
-        if (!"PAID".equalsIgnoreCase(order.getPayStatus()) || !"PAID".equalsIgnoreCase(order.getStatus())) {
-            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", "当前订单状态不可抢单"));
+        // 判断和占用在同一条 UPDATE 里完成，没抢到的直接 409
+        if (customerOrderRepository.takeForDelivery(id, staff) == 0) {
+            Optional<Boolean> taken = customerOrderRepository.findTaken(id);
+            if (taken.isEmpty()) return ResponseEntity.notFound().build();
+            String message = taken.get() ? "订单已被其他骑手抢走" : "当前订单状态不可抢单";
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", message));
         }
-
-        order.setDeliveryStaff(staff);
-        order.setStatus("DELIVERING");
-        customerOrderRepository.save(order);
-
-        Integer load = staff.getCurrentLoad() == null ? 0 : staff.getCurrentLoad();
-        staff.setCurrentLoad(load + 1);
-        deliveryStaffRepository.save(staff);
+        deliveryStaffRepository.incrementLoad(staff.getId());
+        riderHallFeed.changed(id);
+        orderEventStream.publish(id, OrderEventStream.DELIVERING);
 
         return ResponseEntity.ok(Map.of("status", "OK", "orderId", id, "statusAfter", "DELIVERING"));
     }
@@ -369,6 +392,7 @@ public class RiderOrderController {
             }
             order.setStatus("DELIVERING");
             customerOrderRepository.save(order);
+            orderEventStream.publish(order.getId(), OrderEventStream.DELIVERING);
             return ResponseEntity.ok(Map.of("status", "OK"));
         }
 
@@ -381,6 +405,7 @@ public class RiderOrderController {
         customerOrderRepository.save(order);
 
         decrementLoadIfPossible(order.getDeliveryStaff());
+        orderEventStream.publish(order.getId(), OrderEventStream.COMPLETED);
 
         return ResponseEntity.ok(Map.of("status", "OK"));
     }
@@ -411,18 +436,15 @@ public class RiderOrderController {
         customerOrderRepository.save(order);
 
         decrementLoadIfPossible(assigned);
+        riderHallFeed.changed(id);
+        orderEventStream.publish(id, OrderEventStream.UNASSIGNED);
 
         return ResponseEntity.ok(Map.of("status", "OK", "statusAfter", "PAID"));
     }
 
     private void decrementLoadIfPossible(DeliveryStaff staff) {
         if (staff == null || staff.getId() == null) return;
-        Optional<DeliveryStaff> staffOpt = deliveryStaffRepository.findById(staff.getId());
-        if (staffOpt.isEmpty()) return;
-        DeliveryStaff s = staffOpt.get();
-        Integer load = s.getCurrentLoad() == null ? 0 : s.getCurrentLoad();
-        s.setCurrentLoad(Math.max(0, load - 1));
-        deliveryStaffRepository.save(s);
+        deliveryStaffRepository.decrementLoad(staff.getId());
     }
 
     public static class StatusPayload {
@@ -2,6 +2,7 @@ package com.example.takeout.web;
 
 import com.example.takeout.entity.CustomerOrder;
 import com.example.takeout.repository.CustomerOrderRepository;
+import com.example.takeout.service.Money;
 import com.example.takeout.service.OrderPaymentService;
 import com.example.takeout.service.WechatPayFacade;
 import com.wechat.pay.java.service.payments.model.Transaction;
@@ -14,7 +15,6 @@ import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.math.BigDecimal;
 import java.util.Optional;
 
 @RestController
@@ -62,10 +62,7 @@ public class WechatPayNotifyController {
             }
 
             Integer total = tx.getAmount() == null ? null : tx.getAmount().getTotal();
-            int expectedFen = (order.getPayAmount() == null ? BigDecimal.ZERO : order.getPayAmount())
-                    .multiply(BigDecimal.valueOf(100))
-                    .setScale(0, java.math.RoundingMode.HALF_UP)
-                    .intValue();
+            int expectedFen = Money.ofYuan(order.getPayAmount()).toFenInt();
             if (total == null || total != expectedFen) {
                 return ResponseEntity.ok(new NotifyResponse("FAIL", "amount mismatch"));
             }
@@ -0,0 +1,182 @@
+package com.example.takeout.repository;
+
+import com.example.takeout.entity.Customer;
+import com.example.takeout.entity.CustomerOrder;
+import com.example.takeout.entity.DeliveryStaff;
+import com.example.takeout.entity.Restaurant;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 骑手负载相关的原生 SQL（负载对账）和原子增减，在 H2（MySQL 模式）上跑。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class DeliveryStaffRepositoryTest {
+
+    @Autowired
+    private DeliveryStaffRepository deliveryStaffRepository;
+    @Autowired
+    private CustomerOrderRepository customerOrderRepository;
+    @Autowired
+    private CustomerRepository customerRepository;
+    @Autowired
+    private RestaurantRepository restaurantRepository;
+    @Autowired
+    private TransactionTemplate tx;
+
+    private Customer customer;
+    private Restaurant restaurant;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        Customer c = new Customer();
+        c.setUsername("load-" + suffix);
+        c.setPassword("x");
+        customer = customerRepository.save(c);
+        Restaurant r = new Restaurant();
+        r.setName("load-" + suffix);
+        restaurant = restaurantRepository.save(r);
+    }
+
+    @Test
+    void findLoadDriftReportsOnlyDriftedRiders() {
+        DeliveryStaff consistent = rider(2);
+        order(consistent, "PAID");
+        order(consistent, "DELIVERING");
+        DeliveryStaff overCounted = rider(5);
+        order(overCounted, "DELIVERING");
+        order(overCounted, "COMPLETED");
+        order(overCounted, "CANCELLED");
+        DeliveryStaff nullLoad = rider(null);
+        order(nullLoad, "PAID");
+        order(nullLoad, "PAID");
+        DeliveryStaff idle = rider(0);
+        order(idle, "CREATED");
+
+        Set<Long> mine = Set.of(consistent.getId(), overCounted.getId(), nullLoad.getId(), idle.getId());
+        Map<Long, DeliveryStaffRepository.LoadDriftProjection> drift = deliveryStaffRepository.findLoadDrift().stream()
+                .filter(d -> mine.contains(d.getDeliveryStaffId()))
+                .collect(Collectors.toMap(DeliveryStaffRepository.LoadDriftProjection::getDeliveryStaffId, d -> d));
+
+        assertThat(drift).containsOnlyKeys(overCounted.getId(), nullLoad.getId());
+        assertThat(drift.get(overCounted.getId()).getRecordedLoad()).isEqualTo(5);
+        assertThat(drift.get(overCounted.getId()).getActualLoad()).isEqualTo(1L);
+        assertThat(drift.get(nullLoad.getId()).getRecordedLoad()).isZero();
+        assertThat(drift.get(nullLoad.getId()).getActualLoad()).isEqualTo(2L);
+    }
+
+    @Test
+    void recomputeLoadFixesOnlyGivenRiders() {
+        DeliveryStaff overCounted = rider(5);
+        order(overCounted, "DELIVERING");
+        order(overCounted, "COMPLETED");
+        DeliveryStaff underCounted = rider(0);
+        order(underCounted, "PAID");
+        order(underCounted, "DELIVERING");
+        order(underCounted, "DELIVERING");
+        DeliveryStaff untouched = rider(9);
+
+        Integer updated = tx.execute(s -> deliveryStaffRepository.recomputeLoad(
+                List.of(overCounted.getId(), underCounted.getId())));
+
+        assertThat(updated).isEqualTo(2);
+        assertThat(load(overCounted)).isEqualTo(1);
+        assertThat(load(underCounted)).isEqualTo(3);
+        assertThat(load(untouched)).isEqualTo(9);
+        Set<Long> ids = Set.of(overCounted.getId(), underCounted.getId());
+        assertThat(deliveryStaffRepository.findLoadDrift())
+                .noneMatch(d -> ids.contains(d.getDeliveryStaffId()));
+    }
+
+    @Test
+    void concurrentIncrementAndDecrementDoNotLoseUpdates() throws Exception {
+        DeliveryStaff staff = rider(1000);
+        int threads = 8;
+        int incrementsPerThread = 100;
+        int decrementsPerThread = 50;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                boolean up = t % 2 == 0;
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    int n = up ? incrementsPerThread : decrementsPerThread;
+                    for (int i = 0; i < n; i++) {
+                        tx.executeWithoutResult(s -> {
+                            if (up) {
+                                deliveryStaffRepository.incrementLoad(staff.getId());
+                            } else {
+                                deliveryStaffRepository.decrementLoad(staff.getId());
+                            }
+                        });
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        int expected = 1000 + (threads / 2) * incrementsPerThread - (threads / 2) * decrementsPerThread;
+        assertThat(load(staff)).isEqualTo(expected);
+    }
+
+    @Test
+    void decrementLoadNeverGoesNegative() {
+        DeliveryStaff zero = rider(0);
+        DeliveryStaff nullLoad = rider(null);
+        tx.executeWithoutResult(s -> {
+            deliveryStaffRepository.decrementLoad(zero.getId());
+            deliveryStaffRepository.decrementLoad(nullLoad.getId());
+        });
+        assertThat(load(zero)).isZero();
+        assertThat(load(nullLoad)).isZero();
+    }
+
+    private DeliveryStaff rider(Integer currentLoad) {
+        DeliveryStaff s = new DeliveryStaff();
+        s.setName("rider");
+        s.setStatus("ACTIVE");
+        s.setCurrentLoad(currentLoad);
+        return deliveryStaffRepository.save(s);
+    }
+
+    private void order(DeliveryStaff staff, String status) {
+        CustomerOrder o = new CustomerOrder();
+        o.setCustomer(customer);
+        o.setRestaurant(restaurant);
+        o.setDeliveryStaff(staff);
+        o.setTotalAmount(new BigDecimal("20.00"));
+        o.setPayAmount(new BigDecimal("20.00"));
+        o.setStatus(status);
+        customerOrderRepository.save(o);
+    }
+
+    private Integer load(DeliveryStaff staff) {
+        return deliveryStaffRepository.findById(staff.getId()).orElseThrow().getCurrentLoad();
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.takeout.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * 最小费用匹配与穷举结果对比：小规模随机实例，代价里刻意放入大量相等值和重复值。
+ */
+@Timeout(30)
+class AssignmentSolverTest {
+
+    @Test
+    void roundingInReducedCostsDoesNotLoopForever() {
+        int[][] cols = {
+                {3, 0, 1, 2},
+                {2, 3},
+                {0, 4, 2, 1, 3},
+                {0, 4, 2, 1},
+                {3, 2, 4, 0},
+                {3, 0}};
+        double[][] costs = {
+                {1.716, 3.0, 0.230, 1.377},
+                {5.727, 9.556},
+                {2.0, 2.0, 0.106, 8.660, 5.933},
+                {3.0, 3.0, 2.776, 5.236},
+                {6.482, 4.0, 1.021, 8.203},
+                {5.028, 0.866}};
+
+        int[] match = AssignmentSolver.solve(5, cols, costs);
+
+        assertValid(5, cols, match);
+        assertThat(total(cols, costs, match)).isCloseTo(bruteForce(5, cols, costs), within(1e-6));
+    }
+
+    @Test
+    void matchesBruteForceOnRandomInstances() {
+        Random rnd = new Random(13L);
+        double[] ties = {0.0, 1.0, 2.0, 3.0, 4.0, 0.5, 2.5};
+        for (int round = 0; round < 5000; round++) {
+            int rows = 1 + rnd.nextInt(6);
+            int colCount = 1 + rnd.nextInt(5);
+            int[][] cols = new int[rows][];
+            double[][] costs = new double[rows][];
+            for (int i = 0; i < rows; i++) {
+                int k = rnd.nextInt(colCount + 1);
+                cols[i] = new int[k];
+                costs[i] = new double[k];
+                for (int j = 0; j < k; j++) {
+                    // 偶尔同一骑手出现两次
+                    cols[i][j] = j > 0 && rnd.nextInt(8) == 0 ? cols[i][j - 1] : rnd.nextInt(colCount);
+                    costs[i][j] = switch (rnd.nextInt(3)) {
+                        case 0 -> ties[rnd.nextInt(ties.length)];
+                        case 1 -> Math.round(rnd.nextDouble() * 10_000) / 1000.0;
+                        default -> rnd.nextDouble() * 10;
+                    };
+                }
+            }
+
+            int[] match = AssignmentSolver.solve(colCount, cols, costs);
+
+            String instance = "round " + round + ": " + Arrays.deepToString(cols) + " " + Arrays.deepToString(costs);
+            assertValid(colCount, cols, match);
+            assertThat(total(cols, costs, match)).as(instance).isCloseTo(bruteForce(colCount, cols, costs), within(1e-6));
+        }
+    }
+
+    @Test
+    void leavesOrdersUnassignedWhenRidersRunOut() {
+        int[][] cols = {{0}, {0}, {0}};
+        double[][] costs = {{3.0}, {1.0}, {2.0}};
+
+        int[] match = AssignmentSolver.solve(1, cols, costs);
+
+        assertThat(match).containsExactly(-1, 0, -1);
+    }
+
+    private static void assertValid(int colCount, int[][] cols, int[] match) {
+        assertThat(match).hasSize(cols.length);
+        boolean[] used = new boolean[colCount];
+        for (int i = 0; i < match.length; i++) {
+            if (match[i] < 0) continue;
+            assertThat(cols[i]).contains(match[i]);
+            assertThat(used[match[i]]).as("rider " + match[i] + " assigned twice").isFalse();
+            used[match[i]] = true;
+        }
+    }
+
+    private static double total(int[][] cols, double[][] costs, int[] match) {
+        double sum = 0;
+        for (int i = 0; i < match.length; i++) {
+            sum += match[i] < 0 ? AssignmentSolver.UNASSIGNED_COST : edge(cols[i], costs[i], match[i]);
+        }
+        return sum;
+    }
+
+    private static double edge(int[] cols, double[] costs, int col) {
+        double best = Double.POSITIVE_INFINITY;
+        for (int k = 0; k < cols.length; k++) {
+            if (cols[k] == col) best = Math.min(best, costs[k]);
+        }
+        return best;
+    }
+
+    private static double bruteForce(int colCount, int[][] cols, double[][] costs) {
+        return bruteForce(0, new boolean[colCount], cols, costs);
+    }
+
+    private static double bruteForce(int row, boolean[] used, int[][] cols, double[][] costs) {
+        if (row == cols.length) return 0;
+        double best = AssignmentSolver.UNASSIGNED_COST + bruteForce(row + 1, used, cols, costs);
+        for (int k = 0; k < cols[row].length; k++) {
+            int c = cols[row][k];
+            if (used[c]) continue;
+            used[c] = true;
+            best = Math.min(best, costs[row][k] + bruteForce(row + 1, used, cols, costs));
+            used[c] = false;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.takeout.service;
+
+import com.example.takeout.repository.DishRepository;
+import com.example.takeout.service.MenuSnapshotCache.DishView;
+import com.example.takeout.service.MenuSnapshotCache.MenuSnapshot;
+import com.example.takeout.service.MenuSnapshotCache.PromotionView;
+import com.example.takeout.service.OrderPricingService.CartLine;
+import com.example.takeout.service.OrderPricingService.PricedCart;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 报价的签发、过期与作废：菜单快照按 TTL 重载但内容不变时报价仍可用，所报菜品或满减变化后作废。
+ */
+class CartQuoteServiceTest {
+
+    private static final Long RESTAURANT = 1L;
+    private static final List<CartLine> CART = List.of(new CartLine(10L, 2), new CartLine(11L, 1));
+
+    private MenuSnapshotCache menuSnapshotCache;
+    private OrderPricingService pricing;
+
+    @BeforeEach
+    void setUp() {
+        menuSnapshotCache = mock(MenuSnapshotCache.class);
+        pricing = new OrderPricingService(menuSnapshotCache, mock(DishRepository.class));
+        serve(menu(dish(10L, "12.00", "AVAILABLE"), dish(11L, "30.00", "AVAILABLE"), dish(12L, "8.00", "AVAILABLE")));
+    }
+
+    @Test
+    void validQuoteIsRedeemed() {
+        CartQuoteService service = service(300);
+        CartQuoteService.Quote quote = service.quote(RESTAURANT, CART);
+
+        Optional<PricedCart> redeemed = service.redeem(quote.token(), RESTAURANT, CART);
+
+        assertThat(redeemed).containsSame(quote.cart());
+        assertThat(quote.cart().payAmount()).isEqualTo(Money.ofYuan(new BigDecimal("54.00")));
+        assertThat(quote.expiresAtMillis()).isGreaterThan(System.currentTimeMillis() + 290_000);
+        // 同一菜品拆成多行、顺序不同视为同一购物车
+        assertThat(service.redeem(quote.token(), RESTAURANT,
+                List.of(new CartLine(11L, 1), new CartLine(10L, 1), new CartLine(10L, 1)))).isPresent();
+    }
+
+    @Test
+    void quoteSurvivesMenuReloadWithSameContent() {
+        CartQuoteService service = service(300);
+        CartQuoteService.Quote quote = service.quote(RESTAURANT, CART);
+
+        // 快照过了 menu.cache.ttl-seconds 重新装载：新实例、内容相同；无关菜品的库存变化也不影响
+        serve(menu(dish(10L, "12.00", "AVAILABLE"), dish(11L, "30.00", "AVAILABLE"), dish(12L, "8.00", "AVAILABLE", 3)));
+
+        assertThat(service.redeem(quote.token(), RESTAURANT, CART)).containsSame(quote.cart());
+    }
+
+    @Test
+    void expiredQuoteIsRejected() throws InterruptedException {
+        CartQuoteService service = service(1);
+        CartQuoteService.Quote quote = service.quote(RESTAURANT, CART);
+        assertThat(service.redeem(quote.token(), RESTAURANT, CART)).isPresent();
+
+        Thread.sleep(quote.expiresAtMillis() - System.currentTimeMillis() + 50);
+
+        assertThat(service.redeem(quote.token(), RESTAURANT, CART)).isEmpty();
+    }
+
+    @Test
+    void quoteExpiresWhenPromotionSwitches() {
+        LocalDateTime startsSoon = LocalDateTime.now().plusMinutes(2);
+        serve(menu(List.of(promotion(1L, "50.00", "5.00", startsSoon)),
+                dish(10L, "12.00", "AVAILABLE"), dish(11L, "30.00", "AVAILABLE")));
+        CartQuoteService service = service(300);
+
+        CartQuoteService.Quote quote = service.quote(RESTAURANT, CART);
+
+        assertThat(quote.expiresAtMillis()).isLessThan(System.currentTimeMillis() + 121_000);
+    }
+
+    @Test
+    void menuPriceChangeRejectsQuote() {
+        CartQuoteService service = service(300);
+        CartQuoteService.Quote quote = service.quote(RESTAURANT, CART);
+
+        serve(menu(dish(10L, "13.00", "AVAILABLE"), dish(11L, "30.00", "AVAILABLE"), dish(12L, "8.00", "AVAILABLE")));
+
+        assertThat(service.redeem(quote.token(), RESTAURANT, CART)).isEmpty();
+    }
+
+    @Test
+    void unrelatedDishChangeKeepsQuote() {
+        CartQuoteService service = service(300);
+        CartQuoteService.Quote quote = service.quote(RESTAURANT, CART);
+
+        serve(menu(dish(10L, "12.00", "AVAILABLE"), dish(11L, "30.00", "AVAILABLE"), dish(12L, "9.00", "SOLD_OUT")));
+
+        assertThat(service.redeem(quote.token(), RESTAURANT, CART)).containsSame(quote.cart());
+    }
+
+    @Test
+    void delistedDishOrNewPromotionRejectsQuote() {
+        CartQuoteService service = service(300);
+        CartQuoteService.Quote a = service.quote(RESTAURANT, CART);
+        CartQuoteService.Quote b = service.quote(RESTAURANT, CART);
+
+        serve(menu(dish(10L, "12.00", "AVAILABLE"), dish(11L, "30.00", "SOLD_OUT")));
+        assertThat(service.redeem(a.token(), RESTAURANT, CART)).isEmpty();
+
+        serve(menu(List.of(promotion(2L, "40.00", "6.00", null)),
+                dish(10L, "12.00", "AVAILABLE"), dish(11L, "30.00", "AVAILABLE")));
+        assertThat(service.redeem(b.token(), RESTAURANT, CART)).isEmpty();
+    }
+
+    @Test
+    void mismatchedOrTamperedQuoteIsRejected() {
+        CartQuoteService service = service(300);
+        CartQuoteService.Quote quote = service.quote(RESTAURANT, CART);
+        String token = quote.token();
+
+        assertThat(service.redeem(token, RESTAURANT, List.of(new CartLine(10L, 3), new CartLine(11L, 1)))).isEmpty();
+        assertThat(service.redeem(token, 2L, CART)).isEmpty();
+        assertThat(service.redeem(token + "A", RESTAURANT, CART)).isEmpty();
+        assertThat(service.redeem(null, RESTAURANT, CART)).isEmpty();
+        // 其他实例（不同密钥）签发的报价不认
+        assertThat(service(300).redeem(token, RESTAURANT, CART)).isEmpty();
+        // 饭店已不存在
+        when(menuSnapshotCache.get(RESTAURANT)).thenReturn(Optional.empty());
+        assertThat(service.redeem(token, RESTAURANT, CART)).isEmpty();
+    }
+
+    private CartQuoteService service(long ttlSeconds) {
+        return new CartQuoteService(pricing, menuSnapshotCache, ttlSeconds, 100, "");
+    }
+
+    private void serve(MenuSnapshot menu) {
+        when(menuSnapshotCache.get(RESTAURANT)).thenReturn(Optional.of(menu));
+    }
+
+    private static MenuSnapshot menu(DishView... dishes) {
+        return menu(List.of(), dishes);
+    }
+
+    private static MenuSnapshot menu(List<PromotionView> promotions, DishView... dishes) {
+        Map<Long, DishView> byId = Arrays.stream(dishes)
+                .collect(Collectors.toUnmodifiableMap(DishView::id, Function.identity()));
+        return new MenuSnapshot(RESTAURANT, List.of(dishes), byId, List.of(), promotions,
+                PromotionTable.compile(promotions), System.currentTimeMillis());
+    }
+
+    private static DishView dish(Long id, String price, String status) {
+        return dish(id, price, status, 100);
+    }
+
+    private static DishView dish(Long id, String price, String status, int stock) {
+        Money listPrice = Money.ofYuan(new BigDecimal(price));
+        return new DishView(id, null, "菜" + id, new BigDecimal(price), status, stock, null, null, listPrice, listPrice);
+    }
+
+    private static PromotionView promotion(Long id, String threshold, String discount, LocalDateTime startAt) {
+        return new PromotionView(id, "FULL_REDUCTION", new BigDecimal(threshold), new BigDecimal(discount), startAt, null);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.takeout.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 熔断器按业务结果计数：百度在 HTTP 200 里返回 status != 0 也算失败，“无相关结果”除外。
+ */
+class MapHttpClientTest {
+
+    private static final int MIN_CALLS = 4;
+
+    private HttpServer server;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicReference<String> body = new AtomicReference<>();
+    private SimpleMeterRegistry registry;
+    private MapHttpClient client;
+    private final Predicate<String> serviceOk = BaiduMapService.serviceOk(new ObjectMapper());
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            hits.incrementAndGet();
+            byte[] bytes = body.get().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json;charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+        registry = new SimpleMeterRegistry();
+        client = new MapHttpClient(registry, new WorkerThreads(false),
+                "http://127.0.0.1:" + server.getAddress().getPort(),
+                1000, 3000, 8, 20, MIN_CALLS, 50, 60000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void quotaErrorsInsideHttp200OpenTheBreaker() {
+        body.set("{\"status\":302,\"message\":\"天配额超限，限制访问\"}");
+        for (int i = 0; i < MIN_CALLS; i++) {
+            assertThat(call()).isEmpty();
+        }
+        assertThat(hits.get()).isEqualTo(MIN_CALLS);
+
+        // 熔断后不再发请求
+        assertThat(call()).isEmpty();
+        assertThat(hits.get()).isEqualTo(MIN_CALLS);
+        assertThat(registry.get("map.client.failures").tag("endpoint", "geocode").counter().count()).isEqualTo(MIN_CALLS);
+        assertThat(registry.get("map.client.rejected").tag("endpoint", "geocode").tag("reason", "open").counter().count()).isEqualTo(1);
+        assertThat(registry.get("map.client.breaker.state").tag("endpoint", "geocode").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void noResultIsNotAFailure() {
+        body.set("{\"status\":1,\"msg\":\"Internal Service Error:无相关结果\",\"results\":[]}");
+        int calls = MIN_CALLS * 3;
+        for (int i = 0; i < calls; i++) {
+            assertThat(call()).contains(body.get());
+        }
+        assertThat(hits.get()).isEqualTo(calls);
+        assertThat(registry.get("map.client.failures").tag("endpoint", "geocode").counter().count()).isZero();
+        assertThat(registry.get("map.client.breaker.state").tag("endpoint", "geocode").gauge().value()).isZero();
+    }
+
+    @Test
+    void unparsableBodyCountsAsFailure() {
+        body.set("<html>gateway error</html>");
+        for (int i = 0; i < MIN_CALLS; i++) {
+            assertThat(call()).isEmpty();
+        }
+        assertThat(registry.get("map.client.breaker.state").tag("endpoint", "geocode").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void callersWithoutCheckOnlyCountHttpStatus() {
+        body.set("{\"status\":302,\"message\":\"天配额超限，限制访问\"}");
+        for (int i = 0; i < MIN_CALLS * 2; i++) {
+            assertThat(client.get("geocode", "/geocoding/v3/?output=json").join()).contains(body.get());
+        }
+        assertThat(hits.get()).isEqualTo(MIN_CALLS * 2);
+    }
+
+    private Optional<String> call() {
+        return client.get("geocode", "/geocoding/v3/?output=json", serviceOk).join();
+    }
+}
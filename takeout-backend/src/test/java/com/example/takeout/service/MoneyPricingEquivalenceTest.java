@@ -0,0 +1,72 @@
+package com.example.takeout.service;
+
+import com.example.takeout.service.PricingFixtures.LegacyResult;
+import com.example.takeout.service.PricingFixtures.RandomCart;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Money（整数分）计价与改造前 BigDecimal 计价逐项比对：随机菜单、折扣、满减、购物车，固定种子便于复现。
+ */
+class MoneyPricingEquivalenceTest {
+
+    private static final int ROUNDS = 20_000;
+
+    @Test
+    void moneyPricingMatchesLegacyBigDecimal() {
+        Random rnd = new Random(20240601L);
+        LocalDateTime now = LocalDateTime.now();
+        for (int round = 0; round < ROUNDS; round++) {
+            RandomCart cart = PricingFixtures.randomCart(rnd, now);
+            OrderPricingService pricing = new OrderPricingService(PricingFixtures.fixedMenu(cart.menu()), null);
+
+            OrderPricingService.PricedCart priced = pricing.price(1L, cart.lines());
+            LegacyResult legacy = PricingFixtures.legacyPrice(cart, now);
+            String ctx = "round " + round + ": " + cart;
+
+            for (int i = 0; i < legacy.unitPrices().size(); i++) {
+                assertYuan(ctx, priced.lines().get(i).unitPrice(), legacy.unitPrices().get(i));
+            }
+            assertYuan(ctx, priced.totalOriginal(), legacy.totalOriginal());
+            assertYuan(ctx, priced.payBeforePromotion(), legacy.payBeforePromotion());
+            assertYuan(ctx, priced.promotionDiscount(), legacy.promotionDiscount());
+            assertYuan(ctx, priced.payAmount(), legacy.payAmount());
+
+            // 下单/支付链路上的其余换算：佣金（OrderPaymentService）、微信支付金额分（CustomerOrderController）
+            BigDecimal payAmount = priced.payAmount().toBigDecimal();
+            assertYuan(ctx, Money.ofYuan(payAmount).percentHalfUp(cart.commissionRate()), legacy.commission());
+            assertThat(Money.ofYuan(payAmount).toFenInt()).as(ctx).isEqualTo(legacy.payFen());
+        }
+    }
+
+    @Test
+    void payUnitPriceMatchesLegacyOnEdgeValues() {
+        String[] prices = {"0.01", "0.05", "0.99", "1.00", "9.99", "12.345", "99.995", "1999.99"};
+        String[][] discounts = {
+                {"PERCENT", "0"}, {"PERCENT", "0.005"}, {"PERCENT", "0.5"}, {"PERCENT", "1"}, {"PERCENT", "1.01"},
+                {"PERCENT", "33.3"}, {"PERCENT", "66.67"}, {"PERCENT", "100"}, {"PERCENT", "150"},
+                {"AMOUNT", "0"}, {"AMOUNT", "0.005"}, {"AMOUNT", "0.995"}, {"AMOUNT", "5"}, {"AMOUNT", "99999"},
+                {"NONE", "1"}, {"", "1"}
+        };
+        for (String p : prices) {
+            // 菜品价格入库为两位小数
+            BigDecimal price = new BigDecimal(p).setScale(2, RoundingMode.HALF_UP);
+            for (String[] d : discounts) {
+                BigDecimal value = new BigDecimal(d[1]);
+                Money actual = OrderPricingService.calcPayUnitPrice(d[0], value, Money.ofYuan(price));
+                BigDecimal expected = PricingFixtures.legacyPayUnitPrice(d[0], value, price);
+                assertYuan(p + " " + d[0] + " " + d[1], actual, expected);
+            }
+        }
+    }
+
+    private static void assertYuan(String ctx, Money actual, BigDecimal expected) {
+        assertThat(actual.toBigDecimal()).as(ctx).isEqualByComparingTo(expected);
+    }
+}
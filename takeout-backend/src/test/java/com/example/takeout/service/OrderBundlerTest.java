@@ -0,0 +1,225 @@
+package com.example.takeout.service;
+
+import com.example.takeout.entity.CustomerOrder;
+import com.example.takeout.entity.DeliveryStaff;
+import com.example.takeout.entity.Restaurant;
+import com.example.takeout.repository.CustomerOrderRepository;
+import com.example.takeout.repository.DeliveryStaffRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 顺路合单规则：10 分钟窗口、1.5 公里半径、一组最多 3 单，以及合单与单派打分相同时的取舍。
+ */
+class OrderBundlerTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 10, 1, 12, 0);
+    // 纬度 0.001 度约 111 米
+    private static final double LAT = 31.2300;
+    private static final double LNG = 121.4700;
+
+    private CustomerOrderRepository customerOrderRepository;
+    private OrderBundler bundler;
+    private Restaurant restaurant;
+    private long nextId = 1;
+
+    @BeforeEach
+    void setUp() {
+        customerOrderRepository = mock(CustomerOrderRepository.class);
+        bundler = new OrderBundler(customerOrderRepository, true, 10, 1.5, 3);
+        restaurant = restaurant(1L);
+    }
+
+    @Test
+    void compatiblePairs() {
+        CustomerOrder a = order(restaurant, T0, LAT, LNG);
+
+        assertThat(bundler.compatible(a, order(restaurant, T0.plusMinutes(5), LAT + 0.005, LNG))).isTrue();
+        // 支付时间正好差 10 分钟算在窗口内；1.49 公里仍在半径内
+        assertThat(bundler.compatible(a, order(restaurant, T0.plusMinutes(10), LAT, LNG))).isTrue();
+        assertThat(bundler.compatible(a, order(restaurant, T0.minusMinutes(10), LAT + 0.0134, LNG))).isTrue();
+        CustomerOrder b = order(restaurant, T0.plusMinutes(3), LAT, LNG + 0.004);
+        assertThat(bundler.compatible(a, b)).isEqualTo(bundler.compatible(b, a)).isTrue();
+    }
+
+    @Test
+    void incompatiblePairs() {
+        CustomerOrder a = order(restaurant, T0, LAT, LNG);
+
+        assertThat(bundler.compatible(a, order(restaurant(2L), T0, LAT, LNG))).as("different restaurant").isFalse();
+        assertThat(bundler.compatible(a, order(restaurant, T0.plusMinutes(10).plusSeconds(1), LAT, LNG))).as("outside window").isFalse();
+        assertThat(bundler.compatible(a, order(restaurant, T0, LAT + 0.0136, LNG))).as("outside radius").isFalse();
+        assertThat(bundler.compatible(a, order(restaurant, null, LAT, LNG))).as("not paid").isFalse();
+        assertThat(bundler.compatible(a, order(restaurant, T0, null, null))).as("no coordinates").isFalse();
+        assertThat(bundler.compatible(a, order(null, T0, LAT, LNG))).as("no restaurant").isFalse();
+        assertThat(bundler.compatible(a, null)).isFalse();
+    }
+
+    @Test
+    void groupsAreCappedAtMaxOrders() {
+        List<CustomerOrder> orders = new ArrayList<>();
+        for (int i = 0; i < 5; i++) orders.add(order(restaurant, T0.plusMinutes(i), LAT + i * 0.001, LNG));
+        CustomerOrder elsewhere = order(restaurant(2L), T0, LAT, LNG);
+        orders.add(2, elsewhere);
+
+        List<List<CustomerOrder>> groups = bundler.group(orders);
+
+        assertThat(groups).extracting(List::size).containsExactly(3, 1, 2);
+        assertThat(groups.get(0)).containsExactly(orders.get(0), orders.get(1), orders.get(3));
+        assertThat(groups.get(1)).containsExactly(elsewhere);
+        assertThat(groups.get(2)).containsExactly(orders.get(4), orders.get(5));
+    }
+
+    @Test
+    void groupOnlyJoinsOrdersCompatibleWithEveryMember() {
+        CustomerOrder south = order(restaurant, T0, LAT, LNG);
+        CustomerOrder middle = order(restaurant, T0, LAT + 0.010, LNG);
+        // 与 middle 相距 1.1 公里，与 south 相距 2.2 公里
+        CustomerOrder north = order(restaurant, T0, LAT + 0.020, LNG);
+
+        assertThat(bundler.group(List.of(south, middle, north)))
+                .containsExactly(List.of(south, middle), List.of(north));
+    }
+
+    @Test
+    void disabledBundlingKeepsEveryOrderAlone() {
+        OrderBundler off = new OrderBundler(customerOrderRepository, false, 10, 1.5, 3);
+        CustomerOrder a = order(restaurant, T0, LAT, LNG);
+        CustomerOrder b = order(restaurant, T0, LAT, LNG);
+
+        assertThat(off.group(List.of(a, b))).containsExactly(List.of(a), List.of(b));
+        assertThat(off.findOpenBundle(a)).isEmpty();
+        assertThat(new OrderBundler(customerOrderRepository, true, 10, 1.5, 1).isEnabled()).isFalse();
+    }
+
+    @Test
+    void openBundleSkipsFullInactiveAndIncompatibleRiders() {
+        CustomerOrder order = order(restaurant, T0, LAT, LNG);
+        DeliveryStaff full = rider(10L, "ACTIVE", 3);
+        DeliveryStaff offline = rider(11L, "INACTIVE", 1);
+        DeliveryStaff tooFar = rider(12L, "ACTIVE", 1);
+        DeliveryStaff near = rider(13L, "ACTIVE", 1);
+        DeliveryStaff nearer = rider(14L, "ACTIVE", 2);
+        List<CustomerOrder> open = List.of(
+                assigned(full, T0, LAT, LNG), assigned(full, T0, LAT, LNG), assigned(full, T0, LAT, LNG),
+                assigned(offline, T0, LAT, LNG),
+                assigned(tooFar, T0, LAT + 0.02, LNG),
+                assigned(near, T0, LAT + 0.003, LNG),
+                // 两单都已在组里，负载全部来自合单，不额外计负载
+                assigned(nearer, T0, LAT + 0.001, LNG), assigned(nearer, T0, LAT + 0.008, LNG));
+        when(customerOrderRepository.findOpenBundleOrders(eq(restaurant.getId()), any(), eq(order.getId()))).thenReturn(open);
+
+        Optional<OrderBundler.Offer> offer = bundler.findOpenBundle(order);
+
+        assertThat(offer).isPresent();
+        assertThat(offer.get().staff()).isSameAs(nearer);
+        assertThat(offer.get().bundleSize()).isEqualTo(2);
+        assertThat(offer.get().score()).isCloseTo(0.111, within(0.001));
+    }
+
+    @Test
+    void openBundleCountsLoadOutsideTheBundle() {
+        CustomerOrder order = order(restaurant, T0, LAT, LNG);
+        // 近但另有两单在送，每单折 0.8 公里
+        DeliveryStaff busy = rider(20L, "ACTIVE", 3);
+        DeliveryStaff idle = rider(21L, "ACTIVE", 1);
+        when(customerOrderRepository.findOpenBundleOrders(eq(restaurant.getId()), any(), eq(order.getId()))).thenReturn(List.of(
+                assigned(busy, T0, LAT + 0.001, LNG),
+                assigned(idle, T0, LAT + 0.010, LNG)));
+
+        assertThat(bundler.findOpenBundle(order)).map(OrderBundler.Offer::staff).containsSame(idle);
+    }
+
+    @Test
+    void bundleWinsWhenItTiesTheBestSingleRider() {
+        CustomerOrder order = paid(order(restaurant, T0, LAT, LNG));
+        DeliveryStaff bundled = rider(30L, "ACTIVE", 1);
+        CustomerOrder existing = assigned(bundled, T0, LAT + 0.004, LNG);
+        DeliveryStaff single = rider(31L, "ACTIVE", 0);
+        double extraKm = bundler.extraLegKm(List.of(existing, order));
+
+        assertThat(autoAssign(order, existing, single, extraKm)).containsSame(bundled);
+    }
+
+    @Test
+    void singleRiderWinsWhenStrictlyCheaper() {
+        CustomerOrder order = paid(order(restaurant, T0, LAT, LNG));
+        DeliveryStaff bundled = rider(30L, "ACTIVE", 1);
+        CustomerOrder existing = assigned(bundled, T0, LAT + 0.004, LNG);
+        DeliveryStaff single = rider(31L, "ACTIVE", 0);
+        double extraKm = bundler.extraLegKm(List.of(existing, order));
+
+        assertThat(autoAssign(order, existing, single, extraKm - 0.01)).containsSame(single);
+    }
+
+    // 单派候选只有 single 一个骑手，驾车距离为 singleKm、负载 0，打分即 singleKm
+    private Optional<DeliveryStaff> autoAssign(CustomerOrder order, CustomerOrder existing, DeliveryStaff single, double singleKm) {
+        DeliveryStaffRepository deliveryStaffRepository = mock(DeliveryStaffRepository.class);
+        RiderSpatialIndex spatialIndex = mock(RiderSpatialIndex.class);
+        RouteMatrixService routeMatrix = mock(RouteMatrixService.class);
+        RiderLocationService locations = mock(RiderLocationService.class);
+        when(customerOrderRepository.findById(order.getId())).thenReturn(Optional.of(order));
+        when(customerOrderRepository.findOpenBundleOrders(eq(restaurant.getId()), any(), eq(order.getId()))).thenReturn(List.of(existing));
+        when(customerOrderRepository.assignIfUnassigned(eq(order.getId()), any())).thenReturn(1);
+        when(spatialIndex.nearest(anyDouble(), anyDouble(), anyInt(), anyDouble()))
+                .thenReturn(List.of(new RiderSpatialIndex.Nearby(single.getId(), singleKm)));
+        when(deliveryStaffRepository.findAllById(List.of(single.getId()))).thenReturn(List.of(single));
+        when(locations.positionOf(single)).thenReturn(new RiderLocationService.Fix(LAT, LNG, T0));
+        when(routeMatrix.drivingDistancesKm(anyList(), any())).thenReturn(new double[]{singleKm});
+
+        DeliveryAssignmentService service = new DeliveryAssignmentService(customerOrderRepository, deliveryStaffRepository,
+                spatialIndex, routeMatrix, bundler, mock(RiderHallFeed.class), mock(OrderEventStream.class), locations, 20, 10);
+        return service.autoAssignIfPossible(order.getId());
+    }
+
+    private CustomerOrder order(Restaurant r, LocalDateTime paidAt, Double lat, Double lng) {
+        CustomerOrder o = new CustomerOrder();
+        o.setId(nextId++);
+        o.setRestaurant(r);
+        o.setPaidAt(paidAt);
+        o.setDeliveryLat(lat);
+        o.setDeliveryLng(lng);
+        return o;
+    }
+
+    private CustomerOrder assigned(DeliveryStaff staff, LocalDateTime paidAt, double lat, double lng) {
+        CustomerOrder o = paid(order(restaurant, paidAt, lat, lng));
+        o.setDeliveryStaff(staff);
+        return o;
+    }
+
+    private static CustomerOrder paid(CustomerOrder o) {
+        o.setStatus("PAID");
+        o.setPayStatus("PAID");
+        return o;
+    }
+
+    private static Restaurant restaurant(Long id) {
+        Restaurant r = new Restaurant();
+        r.setId(id);
+        return r;
+    }
+
+    private static DeliveryStaff rider(Long id, String status, int load) {
+        DeliveryStaff s = new DeliveryStaff();
+        s.setId(id);
+        s.setStatus(status);
+        s.setCurrentLoad(load);
+        return s;
+    }
+}
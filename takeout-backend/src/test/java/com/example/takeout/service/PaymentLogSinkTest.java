@@ -0,0 +1,193 @@
+package com.example.takeout.service;
+
+import com.example.takeout.entity.CustomerOrder;
+import com.example.takeout.entity.PaymentLog;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 支付流水异步写入：崩溃重放去重、失败批次重试、坏记录拆批转入 dead-letter。
+ */
+class PaymentLogSinkTest {
+
+    private static final long NEVER = 3_600_000L;
+    private static final long COMPACT_BYTES = 8L << 20;
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private final List<PaymentLogSink> started = new ArrayList<>();
+    private JdbcTemplate jdbc;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource ds = new DriverManagerDataSource(
+                "jdbc:h2:mem:paylog-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbc = new JdbcTemplate(ds);
+        jdbc.execute("create table orders (id bigint primary key)");
+        jdbc.execute("""
+                create table payment_logs (
+                    id bigint auto_increment primary key,
+                    order_id bigint not null references orders (id),
+                    type varchar(20) not null,
+                    amount decimal(10, 2) not null,
+                    method varchar(20) not null,
+                    operator_role varchar(20),
+                    operator_id bigint,
+                    status varchar(20) not null,
+                    note varchar(255),
+                    created_at timestamp not null,
+                    journal_id varchar(36) unique
+                )
+                """);
+        for (long id = 1; id <= 5; id++) {
+            jdbc.update("insert into orders (id) values (?)", id);
+        }
+        registry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        // 模拟崩溃的实例已从列表移除，不会被 stop
+        for (PaymentLogSink sink : started) {
+            sink.stop();
+        }
+    }
+
+    @Test
+    void replaysUncheckpointedRecordsWithoutDuplicates() throws Exception {
+        PaymentLogSink crashed = sink(10);
+        for (int i = 0; i < 3; i++) crashed.record(log(1L, "PAY", "ok"));
+        crashed.flushSafely();
+        for (int i = 0; i < 4; i++) crashed.record(log(2L, "REFUND", "ok"));
+        // 崩溃前后 4 条里的前 2 条已经写进数据库，但 checkpoint 还没来得及更新
+        List<JsonNode> journal = readLines(dir.resolve("journal.log"));
+        assertThat(journal).hasSize(7);
+        insertDirectly(journal.get(3));
+        insertDirectly(journal.get(4));
+        assertThat(Files.readString(dir.resolve("checkpoint")).trim()).isEqualTo("3");
+        started.remove(crashed);
+
+        PaymentLogSink restarted = new PaymentLogSink(jdbc, objectMapper, registry, new WorkerThreads(false),
+                dir.toString(), false, 10, NEVER, COMPACT_BYTES);
+        restarted.start();
+        restarted.stop();
+
+        assertThat(jdbc.queryForObject("select count(*) from payment_logs", Integer.class)).isEqualTo(7);
+        assertThat(jdbc.queryForObject("select count(distinct journal_id) from payment_logs", Integer.class)).isEqualTo(7);
+        assertThat(Files.readString(dir.resolve("checkpoint")).trim()).isEqualTo("7");
+    }
+
+    @Test
+    void failedBatchIsRetriedWithoutDuplicates() throws Exception {
+        PaymentLogSink sink = sink(10);
+        for (int i = 0; i < 4; i++) sink.record(log(1L, "PAY", "ok"));
+
+        jdbc.execute("alter table payment_logs rename to payment_logs_off");
+        sink.flushSafely();
+        assertThat(registry.get("payment_log.flush.failures").counter().count()).isEqualTo(1.0);
+        assertThat(sink.queueDepth()).isEqualTo(4);
+
+        // 失败的那次其实已经提交了一条（例如提交后连接才断开）
+        jdbc.execute("alter table payment_logs_off rename to payment_logs");
+        insertDirectly(readLines(dir.resolve("journal.log")).get(0));
+        sink.flushSafely();
+
+        assertThat(sink.queueDepth()).isZero();
+        assertThat(jdbc.queryForObject("select count(*) from payment_logs", Integer.class)).isEqualTo(4);
+        assertThat(jdbc.queryForObject("select count(distinct journal_id) from payment_logs", Integer.class)).isEqualTo(4);
+        assertThat(dir.resolve("dead-letter.log")).doesNotExist();
+    }
+
+    @Test
+    void badRecordsGoToDeadLetterAndDrainingContinues() throws Exception {
+        PaymentLogSink sink = sink(10);
+        for (int i = 0; i < 10; i++) {
+            if (i == 3) {
+                sink.record(log(999L, "PAY", "order missing"));
+            } else if (i == 7) {
+                sink.record(log(1L, "PAY", "x".repeat(300)));
+            } else {
+                sink.record(log(1L, "PAY", "ok"));
+            }
+        }
+        sink.flushSafely();
+
+        assertThat(sink.queueDepth()).isZero();
+        assertThat(jdbc.queryForObject("select count(*) from payment_logs", Integer.class)).isEqualTo(8);
+        assertThat(jdbc.queryForObject("select count(*) from payment_logs where note <> 'ok'", Integer.class)).isZero();
+        List<JsonNode> dead = readLines(dir.resolve("dead-letter.log"));
+        assertThat(dead).extracting(n -> n.get("seq").asLong()).containsExactly(4L, 8L);
+        assertThat(registry.get("payment_log.dead_letters").counter().count()).isEqualTo(2.0);
+        assertThat(Files.readString(dir.resolve("checkpoint")).trim()).isEqualTo("10");
+
+        sink.record(log(2L, "REFUND", "ok"));
+        sink.flushSafely();
+        assertThat(jdbc.queryForObject("select count(*) from payment_logs", Integer.class)).isEqualTo(9);
+        assertThat(readLines(dir.resolve("dead-letter.log"))).hasSize(2);
+    }
+
+    private PaymentLogSink sink(int batchSize) throws IOException {
+        PaymentLogSink sink = new PaymentLogSink(jdbc, objectMapper, registry, new WorkerThreads(false),
+                dir.toString(), false, batchSize, NEVER, COMPACT_BYTES);
+        sink.start();
+        started.add(sink);
+        return sink;
+    }
+
+    private static PaymentLog log(Long orderId, String type, String note) {
+        CustomerOrder order = new CustomerOrder();
+        order.setId(orderId);
+        PaymentLog p = new PaymentLog();
+        p.setOrder(order);
+        p.setType(type);
+        p.setAmount(new BigDecimal("12.50"));
+        p.setMethod("MOCK");
+        p.setOperatorRole("CUSTOMER");
+        p.setStatus("SUCCESS");
+        p.setNote(note);
+        return p;
+    }
+
+    private List<JsonNode> readLines(Path file) throws IOException {
+        List<JsonNode> nodes = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) nodes.add(objectMapper.readTree(line));
+        }
+        return nodes;
+    }
+
+    private void insertDirectly(JsonNode e) throws IOException {
+        jdbc.update("""
+                        insert into payment_logs (order_id, type, amount, method, operator_role, status, note, created_at, journal_id)
+                        values (?, ?, ?, ?, ?, ?, ?, ?, ?)
+                        """,
+                e.get("orderId").asLong(), e.get("type").asText(), e.get("amount").decimalValue(), e.get("method").asText(),
+                e.get("operatorRole").asText(), e.get("status").asText(), e.get("note").asText(),
+                Timestamp.valueOf(objectMapper.treeToValue(e.get("createdAt"), LocalDateTime.class)),
+                e.get("journalId").asText());
+    }
+}
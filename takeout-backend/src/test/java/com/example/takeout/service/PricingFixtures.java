@@ -0,0 +1,168 @@
+package com.example.takeout.service;
+
+import com.example.takeout.service.MenuSnapshotCache.DishView;
+import com.example.takeout.service.MenuSnapshotCache.MenuSnapshot;
+import com.example.takeout.service.MenuSnapshotCache.PromotionView;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 随机菜单/购物车，以及 Money 改造前的 BigDecimal 计价实现（作为对照）。
+ * 等价性测试和 PricingBenchmark 共用。
+ */
+public final class PricingFixtures {
+
+    private PricingFixtures() {
+    }
+
+    public record RandomCart(MenuSnapshot menu, List<OrderPricingService.CartLine> lines, BigDecimal commissionRate) {
+    }
+
+    public record LegacyResult(List<BigDecimal> unitPrices,
+                               BigDecimal totalOriginal,
+                               BigDecimal payBeforePromotion,
+                               BigDecimal promotionDiscount,
+                               BigDecimal payAmount,
+                               BigDecimal commission,
+                               int payFen) {
+    }
+
+    public static RandomCart randomCart(Random rnd, LocalDateTime now) {
+        int dishCount = 1 + rnd.nextInt(15);
+        List<DishView> dishes = new ArrayList<>(dishCount);
+        for (int i = 0; i < dishCount; i++) {
+            BigDecimal price = BigDecimal.valueOf(1 + rnd.nextInt(30_000), 2);
+            String type = null;
+            BigDecimal value = null;
+            switch (rnd.nextInt(4)) {
+                case 0 -> {
+                    // 比例写法，如 0.85
+                    type = "PERCENT";
+                    value = BigDecimal.valueOf(1 + rnd.nextInt(100), 2);
+                }
+                case 1 -> {
+                    // 百分数写法，偶尔带一位小数，如 88.5
+                    type = "PERCENT";
+                    value = BigDecimal.valueOf(101 + rnd.nextInt(9_800), 1 + rnd.nextInt(2)).min(BigDecimal.valueOf(99));
+                }
+                case 2 -> {
+                    type = "AMOUNT";
+                    // 偶尔三位小数，覆盖“先减后舍入”
+                    value = BigDecimal.valueOf(1 + rnd.nextInt(50_000), 2 + rnd.nextInt(2));
+                }
+                default -> {
+                }
+            }
+            Money listPrice = Money.ofYuan(price);
+            dishes.add(new DishView((long) i + 1, null, "dish" + i, price, "AVAILABLE", null, type, value,
+                    listPrice, OrderPricingService.calcPayUnitPrice(type, value, listPrice)));
+        }
+
+        List<PromotionView> promotions = new ArrayList<>();
+        int promoCount = rnd.nextInt(5);
+        for (int i = 0; i < promoCount; i++) {
+            String type = rnd.nextInt(10) == 0 ? "OTHER" : "FULL_REDUCTION";
+            BigDecimal threshold = BigDecimal.valueOf(rnd.nextInt(20_000), 2);
+            BigDecimal discount = BigDecimal.valueOf(rnd.nextInt(5_000), 2);
+            LocalDateTime start = rnd.nextBoolean() ? null : now.minusHours(1 + rnd.nextInt(48));
+            LocalDateTime end = switch (rnd.nextInt(3)) {
+                case 0 -> null;
+                case 1 -> now.plusHours(1 + rnd.nextInt(48));
+                default -> now.minusMinutes(1 + rnd.nextInt(600));
+            };
+            promotions.add(new PromotionView((long) i + 1, type, threshold, discount, start, end));
+        }
+
+        Map<Long, DishView> byId = dishes.stream().collect(Collectors.toUnmodifiableMap(DishView::id, Function.identity()));
+        MenuSnapshot menu = new MenuSnapshot(1L, dishes, byId, List.of(), promotions, PromotionTable.compile(promotions), 0L);
+
+        int lineCount = 1 + rnd.nextInt(15);
+        List<OrderPricingService.CartLine> lines = new ArrayList<>(lineCount);
+        for (int i = 0; i < lineCount; i++) {
+            lines.add(new OrderPricingService.CartLine((long) 1 + rnd.nextInt(dishCount), 1 + rnd.nextInt(20)));
+        }
+        BigDecimal rate = BigDecimal.valueOf(rnd.nextInt(3_001), 2);
+        return new RandomCart(menu, lines, rate);
+    }
+
+    /**
+     * 只返回给定快照的菜单缓存，不访问数据库。
+     */
+    public static MenuSnapshotCache fixedMenu(MenuSnapshot menu) {
+        return new MenuSnapshotCache(null, null, null, null, 1, 60) {
+            @Override
+            public Optional<MenuSnapshot> get(Long restaurantId) {
+                return Optional.of(menu);
+            }
+        };
+    }
+
+    /**
+     * Money 改造前的计价逻辑：单价、合计、满减、佣金、微信支付分。
+     */
+    public static LegacyResult legacyPrice(RandomCart cart, LocalDateTime now) {
+        BigDecimal totalOriginal = BigDecimal.ZERO;
+        BigDecimal totalPayBeforePromotion = BigDecimal.ZERO;
+        List<BigDecimal> units = new ArrayList<>(cart.lines().size());
+        for (OrderPricingService.CartLine line : cart.lines()) {
+            DishView dish = cart.menu().dishesById().get(line.dishId());
+            BigDecimal originalUnit = dish.price() != null ? dish.price() : BigDecimal.ZERO;
+            BigDecimal payUnit = legacyPayUnitPrice(dish.discountType(), dish.discountValue(), originalUnit);
+            BigDecimal qty = BigDecimal.valueOf(line.quantity());
+            totalOriginal = totalOriginal.add(originalUnit.multiply(qty));
+            totalPayBeforePromotion = totalPayBeforePromotion.add(payUnit.multiply(qty));
+            units.add(payUnit);
+        }
+        BigDecimal promo = legacyPromotionDiscount(cart.menu().promotions(), totalPayBeforePromotion, now);
+        BigDecimal payAmount = totalPayBeforePromotion.subtract(promo);
+        if (payAmount.compareTo(BigDecimal.ZERO) < 0) payAmount = BigDecimal.ZERO;
+        BigDecimal commission = payAmount.multiply(cart.commissionRate()).divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
+        int fen = payAmount.multiply(BigDecimal.valueOf(100)).setScale(0, RoundingMode.HALF_UP).intValue();
+        return new LegacyResult(units, totalOriginal, totalPayBeforePromotion, promo, payAmount, commission, fen);
+    }
+
+    static BigDecimal legacyPayUnitPrice(String t, BigDecimal v, BigDecimal originalUnit) {
+        if (originalUnit == null) return BigDecimal.ZERO;
+        if (t == null || t.isBlank() || v == null) return originalUnit;
+        if ("PERCENT".equalsIgnoreCase(t)) {
+            BigDecimal ratio;
+            if (v.compareTo(BigDecimal.ONE) <= 0) {
+                ratio = v;
+            } else {
+                ratio = v.divide(BigDecimal.valueOf(100), 6, RoundingMode.HALF_UP);
+            }
+            BigDecimal pay = originalUnit.multiply(ratio);
+            if (pay.compareTo(BigDecimal.ZERO) < 0) pay = BigDecimal.ZERO;
+            return pay.setScale(2, RoundingMode.HALF_UP);
+        }
+        if ("AMOUNT".equalsIgnoreCase(t)) {
+            BigDecimal pay = originalUnit.subtract(v);
+            if (pay.compareTo(BigDecimal.ZERO) < 0) pay = BigDecimal.ZERO;
+            return pay.setScale(2, RoundingMode.HALF_UP);
+        }
+        return originalUnit;
+    }
+
+    static BigDecimal legacyPromotionDiscount(List<PromotionView> promotions, BigDecimal payBeforePromotion, LocalDateTime now) {
+        if (payBeforePromotion.compareTo(BigDecimal.ZERO) <= 0) return BigDecimal.ZERO;
+        BigDecimal best = BigDecimal.ZERO;
+        for (PromotionView p : promotions) {
+            if (!p.activeAt(now)) continue;
+            if (!"FULL_REDUCTION".equalsIgnoreCase(p.type())) continue;
+            BigDecimal threshold = p.thresholdAmount() == null ? BigDecimal.ZERO : p.thresholdAmount();
+            BigDecimal discount = p.discountAmount() == null ? BigDecimal.ZERO : p.discountAmount();
+            if (discount.compareTo(BigDecimal.ZERO) <= 0) continue;
+            if (payBeforePromotion.compareTo(threshold) >= 0 && discount.compareTo(best) > 0) best = discount;
+        }
+        return best.compareTo(payBeforePromotion) > 0 ? payBeforePromotion : best;
+    }
+}
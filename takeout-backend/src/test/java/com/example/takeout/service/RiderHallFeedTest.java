@@ -0,0 +1,177 @@
+package com.example.takeout.service;
+
+import com.example.takeout.repository.CustomerOrderRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 大厅推送：连接数上限在并发订阅下不超，卡住的连接不拖慢其他骑手、积压过多时被断开。
+ */
+class RiderHallFeedTest {
+
+    private static final int MAX_PENDING = 8;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CountDownLatch unstall = new CountDownLatch(1);
+    private RiderHallFeed feed;
+
+    @AfterEach
+    void tearDown() {
+        unstall.countDown();
+        if (feed != null) feed.shutdown();
+    }
+
+    @Test
+    void concurrentSubscribesNeverExceedTheCap() throws Exception {
+        feed = feed(10, RecordingEmitter::new);
+        int threads = 64;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<SseEmitter>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return feed.subscribe();
+                }));
+            }
+            start.countDown();
+            int accepted = 0;
+            for (Future<SseEmitter> f : futures) {
+                if (f.get() != null) accepted++;
+            }
+            assertThat(accepted).isEqualTo(10);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(registry.get("rider.hall.subscribers").gauge().value()).isEqualTo(10);
+        assertThat(feed.subscribe()).isNull();
+    }
+
+    @Test
+    void stalledSubscriberDoesNotDelayOthersAndIsDropped() throws Exception {
+        List<RecordingEmitter> fast = new CopyOnWriteArrayList<>();
+        boolean[] first = {true};
+        feed = feed(10, () -> {
+            if (first[0]) {
+                first[0] = false;
+                return new StalledEmitter(unstall);
+            }
+            RecordingEmitter e = new RecordingEmitter();
+            fast.add(e);
+            return e;
+        });
+        feed.subscribe();
+        feed.subscribe();
+        feed.subscribe();
+
+        feed.changed(1L);
+        for (RecordingEmitter e : fast) {
+            assertThat(e.await(2, "snapshot", "add")).isTrue();
+        }
+
+        // 卡住的连接积压超过上限后被断开，名额释放
+        for (long id = 2; id < 2 + MAX_PENDING + 2; id++) feed.changed(id);
+        for (RecordingEmitter e : fast) {
+            assertThat(e.await(2 + MAX_PENDING + 2, "snapshot", "add")).isTrue();
+        }
+        waitUntil(() -> registry.get("rider.hall.subscribers").gauge().value() == 2);
+        assertThat(registry.get("rider.hall.dropped").counter().count()).isEqualTo(1);
+    }
+
+    private RiderHallFeed feed(int maxSubscribers, Supplier<SseEmitter> emitters) {
+        CustomerOrderRepository repository = mock(CustomerOrderRepository.class);
+        when(repository.findRiderHallOrder(anyLong())).thenAnswer(inv -> Optional.of(projection(inv.getArgument(0))));
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        return new RiderHallFeed(repository, objectMapper, registry, new WorkerThreads(false),
+                60_000, 200, maxSubscribers, 2, MAX_PENDING, 1000) {
+            @Override
+            SseEmitter newEmitter() {
+                return emitters.get();
+            }
+        };
+    }
+
+    private static CustomerOrderRepository.RiderHallOrderProjection projection(Long id) {
+        CustomerOrderRepository.RiderHallOrderProjection p = mock(CustomerOrderRepository.RiderHallOrderProjection.class);
+        when(p.getId()).thenReturn(id);
+        when(p.getRestaurantId()).thenReturn(1L);
+        when(p.getStatus()).thenReturn("PAID");
+        when(p.getPayStatus()).thenReturn("PAID");
+        when(p.getPayAmount()).thenReturn(new BigDecimal("30.00"));
+        when(p.getCreatedAt()).thenReturn(LocalDateTime.of(2025, 10, 1, 12, 0).plusSeconds(id));
+        return p;
+    }
+
+    private static void waitUntil(Supplier<Boolean> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.get() && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertThat(condition.get()).isTrue();
+    }
+
+    // 记录收到的事件名（心跳注释记为空串）
+    private static class RecordingEmitter extends SseEmitter {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            String text = builder.build().iterator().next().getData().toString();
+            events.add(text.startsWith("event:") ? text.substring(6, text.indexOf('\n')) : "");
+        }
+
+        // 等到收到 1 个 first 和 n-1 个 rest
+        boolean await(int n, String first, String rest) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 2000;
+            while (System.currentTimeMillis() < deadline) {
+                List<String> named = events.stream().filter(s -> !s.isEmpty()).toList();
+                if (named.size() >= n) {
+                    return named.get(0).equals(first) && named.subList(1, n).stream().allMatch(rest::equals);
+                }
+                Thread.sleep(10);
+            }
+            return false;
+        }
+    }
+
+    // 模拟对端不读数据、写操作一直阻塞的连接
+    private static class StalledEmitter extends SseEmitter {
+        private final CountDownLatch unstall;
+
+        StalledEmitter(CountDownLatch unstall) {
+            this.unstall = unstall;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            try {
+                unstall.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("broken pipe");
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.takeout.service;
+
+import com.example.takeout.entity.DeliveryStaff;
+import com.example.takeout.repository.DeliveryStaffRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 未知骑手 id 的上报：TTL 内只查一次库，过期或骑手被新建后重新认。
+ */
+class RiderLocationServiceTest {
+
+    private static final double LAT = 31.23;
+    private static final double LNG = 121.47;
+
+    private DeliveryStaffRepository deliveryStaffRepository;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        deliveryStaffRepository = mock(DeliveryStaffRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        when(deliveryStaffRepository.findById(99L)).thenReturn(Optional.empty());
+    }
+
+    @Test
+    void unknownStaffIsLookedUpOncePerTtl() {
+        RiderLocationService service = service(60_000);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(service.record(99L, LAT, LNG)).isFalse();
+        }
+
+        verify(deliveryStaffRepository, times(1)).findById(99L);
+        assertThat(meterRegistry.counter("rider.location.unknown").count()).isEqualTo(5);
+        assertThat(meterRegistry.counter("rider.location.pings").count()).isZero();
+        assertThat(service.latest(99L)).isEmpty();
+    }
+
+    @Test
+    void unknownStaffIsLookedUpAgainAfterTtl() throws InterruptedException {
+        RiderLocationService service = service(50);
+
+        assertThat(service.record(99L, LAT, LNG)).isFalse();
+        Thread.sleep(80);
+        assertThat(service.record(99L, LAT, LNG)).isFalse();
+
+        verify(deliveryStaffRepository, times(2)).findById(99L);
+    }
+
+    @Test
+    void zeroTtlLooksUpEveryPing() {
+        RiderLocationService service = service(0);
+
+        service.record(99L, LAT, LNG);
+        service.record(99L, LAT, LNG);
+
+        verify(deliveryStaffRepository, times(2)).findById(99L);
+    }
+
+    @Test
+    void newlyCreatedStaffIsAcceptedWithinTtl() {
+        RiderLocationService service = service(60_000);
+        assertThat(service.record(99L, LAT, LNG)).isFalse();
+
+        // 管理员新建骑手后通知位置服务
+        service.staffChanged(staff(99L, "ACTIVE"));
+
+        assertThat(service.record(99L, LAT + 0.001, LNG)).isTrue();
+        assertThat(service.latest(99L)).map(RiderLocationService.Fix::lat).contains(LAT + 0.001);
+        verify(deliveryStaffRepository, times(1)).findById(99L);
+    }
+
+    @Test
+    void knownStaffIsCachedAfterFirstLookup() {
+        when(deliveryStaffRepository.findById(7L)).thenReturn(Optional.of(staff(7L, "INACTIVE")));
+        RiderLocationService service = service(60_000);
+
+        assertThat(service.record(7L, LAT, LNG)).isTrue();
+        assertThat(service.record(7L, LAT, LNG)).isTrue();
+
+        verify(deliveryStaffRepository, times(1)).findById(7L);
+        assertThat(meterRegistry.counter("rider.location.pings").count()).isEqualTo(2);
+    }
+
+    private RiderLocationService service(long unknownTtlMillis) {
+        return new RiderLocationService(deliveryStaffRepository, mock(RiderSpatialIndex.class), mock(RiderTrackStore.class),
+                mock(JdbcTemplate.class), meterRegistry, 500, unknownTtlMillis);
+    }
+
+    private static DeliveryStaff staff(Long id, String status) {
+        DeliveryStaff s = new DeliveryStaff();
+        s.setId(id);
+        s.setStatus(status);
+        return s;
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.takeout.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * 离线路网：河两岸各一片街区、只有一座桥，另有一个与主路网不连通的小岛。
+ * CH 查询结果与普通 Dijkstra 逐对比较；所有查询都在 生成 → 写文件 → 内存映射加载 之后的路网上做。
+ */
+class RoadGraphTest {
+
+    private static final int ROWS = 12;
+    private static final int COLS = 10;
+    private static final double BASE_LAT = 39.90;
+    private static final double BASE_LNG = 116.30;
+    private static final double STEP_DEG = 0.002;
+    // 河宽约 850 米
+    private static final double RIVER_DEG = 0.01;
+    private static final int BRIDGE_ROW = 6;
+    private static final int BRIDGE_DS = 500;
+    // 所有边同一车速（米 = 0.1 秒 × 2），同用时的路径距离也相同，便于和参考实现逐项比较
+    private static final int METERS_PER_DS = 2;
+
+    @TempDir
+    static Path dir;
+
+    private static Path file;
+    private static RoadGraph graph;
+    private static final List<int[]> edges = new ArrayList<>();
+    private static int nodes;
+    private static int island;
+
+    @BeforeAll
+    static void build() throws IOException {
+        Random rnd = new Random(11L);
+        RoadGraph.Builder b = new RoadGraph.Builder();
+        for (int bank = 0; bank < 2; bank++) {
+            double lng0 = BASE_LNG + bank * ((COLS - 1) * STEP_DEG + RIVER_DEG);
+            for (int r = 0; r < ROWS; r++) {
+                for (int c = 0; c < COLS; c++) {
+                    b.addNode(BASE_LAT + r * STEP_DEG, lng0 + c * STEP_DEG);
+                }
+            }
+        }
+        for (int bank = 0; bank < 2; bank++) {
+            for (int r = 0; r < ROWS; r++) {
+                for (int c = 0; c < COLS; c++) {
+                    int u = node(bank, r, c);
+                    if (c + 1 < COLS) street(b, rnd, u, node(bank, r, c + 1));
+                    if (r + 1 < ROWS) street(b, rnd, u, node(bank, r + 1, c));
+                }
+            }
+        }
+        int west = node(0, BRIDGE_ROW, COLS - 1);
+        int east = node(1, BRIDGE_ROW, 0);
+        edge(b, west, east, BRIDGE_DS);
+        edge(b, east, west, BRIDGE_DS);
+
+        island = b.addNode(39.95, 116.40);
+        int islandPeer = b.addNode(39.95, 116.402);
+        edge(b, island, islandPeer, 100);
+        edge(b, islandPeer, island, 100);
+        nodes = islandPeer + 1;
+
+        file = dir.resolve("road-graph.bin");
+        b.writeTo(file);
+        graph = RoadGraph.load(file);
+    }
+
+    @Test
+    void roundTripKeepsNodesAndCoordinates() {
+        assertThat(graph.nodeCount()).isEqualTo(nodes);
+        assertThat(graph.edgeCount()).isGreaterThan(0);
+        assertThat(graph.lat(node(0, 3, 4))).isCloseTo(BASE_LAT + 3 * STEP_DEG, within(1e-6));
+        assertThat(graph.lng(node(0, 3, 4))).isCloseTo(BASE_LNG + 4 * STEP_DEG, within(1e-6));
+        assertThat(graph.lat(island)).isCloseTo(39.95, within(1e-6));
+        assertThat(graph.lng(island)).isCloseTo(116.40, within(1e-6));
+    }
+
+    @Test
+    void contractionQueriesMatchPlainDijkstra() {
+        for (int from = 0; from < nodes; from++) {
+            long[] ref = dijkstra(from);
+            for (int to = 0; to < nodes; to++) {
+                RoadGraph.Cost cost = graph.shortest(from, to);
+                String pair = from + "->" + to;
+                if (ref[to] == Long.MAX_VALUE) {
+                    assertThat(cost).as(pair).isNull();
+                } else {
+                    assertThat(cost).as(pair).isNotNull();
+                    assertThat(cost.seconds()).as(pair).isCloseTo(ref[to] / 10.0, within(1e-6));
+                    assertThat(cost.meters()).as(pair).isCloseTo((double) ref[to] * METERS_PER_DS, within(1e-6));
+                }
+            }
+        }
+    }
+
+    @Test
+    void manySourcesToOneTargetMatchSinglePairQueries() {
+        int[] sources = new int[nodes + 1];
+        for (int i = 0; i < nodes; i++) sources[i] = i;
+        sources[nodes] = -1;
+        for (int to : new int[]{node(0, 0, 0), node(1, ROWS - 1, COLS - 1), node(1, BRIDGE_ROW, 0), island}) {
+            RoadGraph.Cost[] costs = graph.shortestToTarget(sources, to);
+            for (int i = 0; i < nodes; i++) {
+                RoadGraph.Cost single = graph.shortest(i, to);
+                if (single == null) {
+                    assertThat(costs[i]).as(i + "->" + to).isNull();
+                } else {
+                    assertThat(costs[i].seconds()).as(i + "->" + to).isCloseTo(single.seconds(), within(1e-6));
+                    assertThat(costs[i].meters()).as(i + "->" + to).isCloseTo(single.meters(), within(1e-6));
+                }
+            }
+            assertThat(costs[nodes]).isNull();
+        }
+    }
+
+    @Test
+    void crossingTheRiverGoesOverTheBridge() {
+        // 两岸正对的两个路口直线不到 1 公里，但只能绕到桥上过河
+        int from = node(0, 0, COLS - 1);
+        int to = node(1, 0, 0);
+        double straight = RoadGraph.distanceMeters(graph.lat(from), graph.lng(from), graph.lat(to), graph.lng(to));
+        RoadGraph.Cost cost = graph.shortest(from, to);
+        assertThat(straight).isLessThan(1000);
+        assertThat(cost.meters()).isGreaterThan(BRIDGE_DS * METERS_PER_DS + straight);
+    }
+
+    @Test
+    void snapsOnlyWithinMaxDistance() {
+        int target = node(0, 5, 5);
+        // 向北偏约 30 米
+        assertThat(graph.nearestNode(graph.lat(target) + 0.00027, graph.lng(target), 100)).isEqualTo(target);
+        // 河中央离两岸都约 425 米
+        double riverLng = BASE_LNG + (COLS - 1) * STEP_DEG + RIVER_DEG / 2;
+        assertThat(graph.nearestNode(BASE_LAT, riverLng, 300)).isEqualTo(-1);
+        assertThat(graph.nearestNode(BASE_LAT, riverLng, 600)).isIn(node(0, 0, COLS - 1), node(1, 0, 0));
+        assertThat(graph.nearestNode(31.23, 121.47, 500)).isEqualTo(-1);
+    }
+
+    @Test
+    void providerFallsBackWhenUnsnappableOrUnreachable() {
+        RoadGraphDistanceProvider provider = new RoadGraphDistanceProvider(new SimpleMeterRegistry(), file.toString(), 300);
+        BaiduMapService.Coord dest = coord(node(1, 3, 3));
+        BaiduMapService.Coord riverMiddle = new BaiduMapService.Coord(BASE_LAT, BASE_LNG + (COLS - 1) * STEP_DEG + RIVER_DEG / 2);
+
+        double[] km = provider.drivingDistancesKm(List.of(coord(node(0, 2, 2)), coord(island), riverMiddle), dest);
+        RoadGraph.Cost expected = graph.shortest(node(0, 2, 2), node(1, 3, 3));
+        assertThat(km[0]).isCloseTo(expected.meters() / 1000.0, within(1e-6));
+        assertThat(km[1]).isNaN();
+        assertThat(km[2]).isNaN();
+
+        Optional<BaiduMapService.RouteInfo> route = provider.drivingRoute(
+                dest.lat(), dest.lng(), graph.lat(node(0, 0, 0)), graph.lng(node(0, 0, 0)));
+        assertThat(route).isPresent();
+        assertThat(route.get().source()).isEqualTo("road_graph");
+        assertThat(provider.drivingRoute(dest.lat(), dest.lng(), graph.lat(island), graph.lng(island))).isEmpty();
+        assertThat(provider.drivingRoute(riverMiddle.lat(), riverMiddle.lng(), dest.lat(), dest.lng())).isEmpty();
+    }
+
+    @Test
+    void rejectsCorruptFiles() throws IOException {
+        Path badMagic = dir.resolve("bad-magic.bin");
+        Files.write(badMagic, ByteBuffer.allocate(64).putInt(0x12345678).array());
+        assertThatThrownBy(() -> RoadGraph.load(badMagic)).isInstanceOf(IllegalArgumentException.class);
+
+        Path truncated = dir.resolve("truncated.bin");
+        byte[] full = Files.readAllBytes(file);
+        Files.write(truncated, Arrays.copyOf(full, full.length / 2));
+        assertThatThrownBy(() -> RoadGraph.load(truncated)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static int node(int bank, int r, int c) {
+        return bank * ROWS * COLS + r * COLS + c;
+    }
+
+    private static BaiduMapService.Coord coord(int node) {
+        return new BaiduMapService.Coord(graph.lat(node), graph.lng(node));
+    }
+
+    // 双向街道，约一成为单行（方向随机）
+    private static void street(RoadGraph.Builder b, Random rnd, int u, int v) {
+        int ds = 20 + rnd.nextInt(380);
+        int oneWay = rnd.nextInt(10);
+        if (oneWay != 0) edge(b, u, v, ds);
+        if (oneWay != 1) edge(b, v, u, ds);
+    }
+
+    private static void edge(RoadGraph.Builder b, int from, int to, int ds) {
+        b.addEdge(from, to, ds * METERS_PER_DS, ds / 10.0);
+        edges.add(new int[]{from, to, ds});
+    }
+
+    // 参考实现：原图上的普通 Dijkstra，权重为 0.1 秒
+    private static long[] dijkstra(int from) {
+        long[] dist = new long[nodes];
+        Arrays.fill(dist, Long.MAX_VALUE);
+        dist[from] = 0;
+        PriorityQueue<long[]> pq = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        pq.add(new long[]{0, from});
+        while (!pq.isEmpty()) {
+            long[] top = pq.poll();
+            int u = (int) top[1];
+            if (top[0] > dist[u]) continue;
+            for (int[] e : edges) {
+                if (e[0] != u) continue;
+                long nd = dist[u] + e[2];
+                if (nd < dist[e[1]]) {
+                    dist[e[1]] = nd;
+                    pq.add(new long[]{nd, e[1]});
+                }
+            }
+        }
+        return dist;
+    }
+}
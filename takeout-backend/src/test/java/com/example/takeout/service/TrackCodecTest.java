@@ -0,0 +1,104 @@
+package com.example.takeout.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * rider_track_chunks.data 的编码是落库格式，改动后旧数据必须还能解出来。
+ */
+class TrackCodecTest {
+
+    @Test
+    void emptyTrackEncodesToNothing() {
+        TrackCodec.Writer w = new TrackCodec.Writer();
+
+        assertThat(w.count()).isZero();
+        assertThat(w.toByteArray()).isEmpty();
+        assertThat(TrackCodec.decode(w.toByteArray())).isEmpty();
+        assertThat(TrackCodec.decode(null)).isEmpty();
+    }
+
+    @Test
+    void zeroAndNegativeDeltasRoundTrip() {
+        long t0 = 1_760_000_000_000L;
+        double[][] points = {
+                {31.230416, 121.473701, t0},
+                // 原地不动、同一毫秒重复上报
+                {31.230416, 121.473701, t0},
+                // 往回走，时间倒退（客户端时钟回拨）
+                {31.229001, 121.470002, t0 - 1500},
+                {31.231000, 121.470002, t0 + 3000},
+                // 南半球、西半球
+                {-33.868820, -151.209290, t0 + 6000},
+                {0.0, 0.0, t0 + 6000}};
+
+        List<TrackCodec.Point> decoded = roundTrip(points);
+
+        assertThat(decoded).hasSize(points.length);
+        for (int i = 0; i < points.length; i++) {
+            assertThat(decoded.get(i).lat()).isCloseTo(points[i][0], within(1e-9));
+            assertThat(decoded.get(i).lng()).isCloseTo(points[i][1], within(1e-9));
+            assertThat(decoded.get(i).atMillis()).isEqualTo((long) points[i][2]);
+        }
+    }
+
+    @Test
+    void largeVarintsRoundTrip() {
+        TrackCodec.Writer w = new TrackCodec.Writer();
+        long[] times = {Long.MAX_VALUE, Long.MIN_VALUE, 0L, -1L, 1L << 62, 1_760_000_000_000L};
+        double[][] coords = {{90, 180}, {-90, -180}, {0, 0}, {89.999999, -179.999999}, {-0.000001, 0.000001}, {31.23, 121.47}};
+        for (int i = 0; i < times.length; i++) w.append(coords[i][0], coords[i][1], times[i]);
+        byte[] data = w.toByteArray();
+
+        List<TrackCodec.Point> decoded = TrackCodec.decode(data);
+
+        assertThat(decoded).extracting(TrackCodec.Point::atMillis).containsExactly(
+                Long.MAX_VALUE, Long.MIN_VALUE, 0L, -1L, 1L << 62, 1_760_000_000_000L);
+        for (int i = 0; i < coords.length; i++) {
+            assertThat(decoded.get(i).lat()).isCloseTo(coords[i][0], within(1e-9));
+            assertThat(decoded.get(i).lng()).isCloseTo(coords[i][1], within(1e-9));
+        }
+        assertThat(w.firstMillis()).isEqualTo(Long.MAX_VALUE);
+        assertThat(w.lastMillis()).isEqualTo(1_760_000_000_000L);
+        // Long.MIN_VALUE - Long.MAX_VALUE 这样的差值 zigzag 后占满 10 字节
+        assertThat(data.length).isGreaterThan(30);
+    }
+
+    @Test
+    void typicalPingsStayCompact() {
+        TrackCodec.Writer w = new TrackCodec.Writer();
+        long t = 1_760_000_000_000L;
+        for (int i = 0; i < 360; i++) {
+            w.append(31.23 + i * 0.0003, 121.47 - i * 0.0002, t + i * 5000L);
+        }
+
+        assertThat(w.count()).isEqualTo(360);
+        // 首点存绝对值约 14 字节，之后每点 时间/纬度/经度 差各 2 字节
+        assertThat(w.size()).isLessThanOrEqualTo(14 + 359 * 6);
+        assertThat(TrackCodec.decode(w.toByteArray())).hasSize(360);
+    }
+
+    @Test
+    void truncatedChunkIsRejected() {
+        TrackCodec.Writer w = new TrackCodec.Writer();
+        w.append(31.23, 121.47, 1_760_000_000_000L);
+        w.append(31.24, 121.48, 1_760_000_005_000L);
+        byte[] data = w.toByteArray();
+
+        assertThatThrownBy(() -> TrackCodec.decode(Arrays.copyOf(data, data.length - 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static List<TrackCodec.Point> roundTrip(double[][] points) {
+        TrackCodec.Writer w = new TrackCodec.Writer();
+        for (double[] p : points) w.append(p[0], p[1], (long) p[2]);
+        assertThat(w.count()).isEqualTo(points.length);
+        return TrackCodec.decode(w.toByteArray());
+    }
+}
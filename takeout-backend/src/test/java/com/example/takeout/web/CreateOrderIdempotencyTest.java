@@ -0,0 +1,183 @@
+package com.example.takeout.web;
+
+import com.example.takeout.entity.Customer;
+import com.example.takeout.entity.Dish;
+import com.example.takeout.entity.Restaurant;
+import com.example.takeout.repository.CustomerRepository;
+import com.example.takeout.repository.DishRepository;
+import com.example.takeout.repository.RestaurantRepository;
+import com.example.takeout.service.OrderIdempotencyService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doReturn;
+
+/**
+ * 同一个 Idempotency-Key 的下单请求并发打进来时，只落一张订单、一组明细，所有请求拿到相同的响应；
+ * 内存里没有记录而库里已有同键订单时，由 orders.idempotency_key 唯一列兜底。
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class CreateOrderIdempotencyTest {
+
+    private static final int THREADS = 16;
+
+    @Autowired
+    private TestRestTemplate rest;
+    @Autowired
+    private JdbcTemplate jdbc;
+    @Autowired
+    private CustomerRepository customerRepository;
+    @Autowired
+    private RestaurantRepository restaurantRepository;
+    @Autowired
+    private DishRepository dishRepository;
+    @SpyBean
+    private OrderIdempotencyService orderIdempotencyService;
+
+    @Test
+    void concurrentRequestsWithSameKeyCreateOneOrder() throws Exception {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        Customer customer = customer(suffix);
+        HttpEntity<Map<String, Object>> request = orderRequest(customer, restaurantWithDishes(suffix), "key-" + suffix);
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<ResponseEntity<String>>> futures = new ArrayList<>(THREADS);
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return rest.postForEntity("/api/customer/orders", request, String.class);
+                }));
+            }
+            start.countDown();
+
+            List<String> bodies = new ArrayList<>(THREADS);
+            for (Future<ResponseEntity<String>> f : futures) {
+                ResponseEntity<String> resp = f.get();
+                assertThat(resp.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+                bodies.add(resp.getBody());
+            }
+            assertThat(bodies).containsOnly(bodies.get(0));
+        } finally {
+            pool.shutdownNow();
+        }
+
+        List<Long> orderIds = jdbc.queryForList(
+                "select id from orders where customer_id = ?", Long.class, customer.getId());
+        assertThat(orderIds).hasSize(1);
+        Integer items = jdbc.queryForObject(
+                "select count(*) from order_items where order_id = ?", Integer.class, orderIds.get(0));
+        assertThat(items).isEqualTo(2);
+    }
+
+    @Test
+    void uniqueConstraintFallsBackToTheOrderCreatedElsewhere() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        Customer customer = customer(suffix);
+        Restaurant restaurant = restaurantWithDishes(suffix);
+        // 模拟其他节点：先用另一个键下一单，再把库里的幂等键改成本次请求的键，本节点内存中没有这个键的记录
+        ResponseEntity<Map> first = rest.postForEntity("/api/customer/orders",
+                orderRequest(customer, restaurant, "other-" + suffix), Map.class);
+        assertThat(first.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        Long existingId = ((Number) first.getBody().get("orderId")).longValue();
+        String key = OrderIdempotencyService.scopedKey(customer.getId(), "key-" + suffix);
+        jdbc.update("update orders set idempotency_key = ? where id = ?", key, existingId);
+        // 查库时对方尚未提交，插入时对方已提交：首次 findPersisted 落空，插入撞唯一键
+        doReturn(Optional.empty()).doCallRealMethod().when(orderIdempotencyService).findPersisted(key);
+
+        ResponseEntity<Map> resp = rest.postForEntity("/api/customer/orders",
+                orderRequest(customer, restaurant, "key-" + suffix), Map.class);
+
+        assertThat(resp.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(((Number) resp.getBody().get("orderId")).longValue()).isEqualTo(existingId);
+        assertThat(resp.getBody().get("payAmount")).isEqualTo(first.getBody().get("payAmount"));
+        List<Long> orderIds = jdbc.queryForList(
+                "select id from orders where customer_id = ?", Long.class, customer.getId());
+        assertThat(orderIds).containsExactly(existingId);
+        Integer items = jdbc.queryForObject(
+                "select count(*) from order_items where order_id in (select id from orders where customer_id = ?)",
+                Integer.class, customer.getId());
+        assertThat(items).isEqualTo(2);
+
+        // 兜底后键已记入内存，同键重试直接返回，不再查库
+        ResponseEntity<Map> retry = rest.postForEntity("/api/customer/orders",
+                orderRequest(customer, restaurant, "key-" + suffix), Map.class);
+        assertThat(((Number) retry.getBody().get("orderId")).longValue()).isEqualTo(existingId);
+    }
+
+    private Customer customer(String suffix) {
+        Customer customer = new Customer();
+        customer.setUsername("idem-" + suffix);
+        customer.setPassword("x");
+        customer.setStatus("ACTIVE");
+        return customerRepository.save(customer);
+    }
+
+    private Restaurant restaurantWithDishes(String suffix) {
+        Restaurant restaurant = new Restaurant();
+        restaurant.setName("idem-" + suffix);
+        restaurant.setStatus("ACTIVE");
+        restaurant.setCommissionRate(new BigDecimal("10.00"));
+        restaurant = restaurantRepository.save(restaurant);
+        dish(restaurant, "米饭", "2.00", null, null);
+        dish(restaurant, "红烧肉", "38.00", "PERCENT", "0.80");
+        return restaurant;
+    }
+
+    private HttpEntity<Map<String, Object>> orderRequest(Customer customer, Restaurant restaurant, String idempotencyKey) {
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (Dish d : dishRepository.findByRestaurant_Id(restaurant.getId())) {
+            items.add(Map.of("dishId", d.getId(), "quantity", "米饭".equals(d.getName()) ? 2 : 1));
+        }
+        Map<String, Object> body = Map.of(
+                "customerId", customer.getId(),
+                "restaurantId", restaurant.getId(),
+                "addressDetail", "测试地址",
+                "contactName", "张三",
+                "contactPhone", "13800000000",
+                "deliveryLat", 39.9,
+                "deliveryLng", 116.4,
+                "items", items);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("Idempotency-Key", idempotencyKey);
+        return new HttpEntity<>(body, headers);
+    }
+
+    private Dish dish(Restaurant restaurant, String name, String price, String discountType, String discountValue) {
+        Dish d = new Dish();
+        d.setRestaurant(restaurant);
+        d.setName(name);
+        d.setPrice(new BigDecimal(price));
+        d.setDiscountType(discountType);
+        d.setDiscountValue(discountValue == null ? null : new BigDecimal(discountValue));
+        d.setStatus("AVAILABLE");
+        d.setStock(100);
+        return dishRepository.save(d);
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.takeout.web;
+
+import com.example.takeout.entity.Customer;
+import com.example.takeout.entity.CustomerOrder;
+import com.example.takeout.entity.DeliveryStaff;
+import com.example.takeout.entity.Restaurant;
+import com.example.takeout.repository.CustomerOrderRepository;
+import com.example.takeout.repository.CustomerRepository;
+import com.example.takeout.repository.DeliveryStaffRepository;
+import com.example.takeout.repository.RestaurantRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 多个骑手同时抢同一单：条件 UPDATE 只让一个成功，负载只加一次。
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class TakeOrderContentionTest {
+
+    // 与测试库连接池（application-test.yml）同大小，所有抢单线程同时持有连接
+    private static final int RIDERS = 200;
+
+    @Autowired
+    private TestRestTemplate rest;
+    @Autowired
+    private TransactionTemplate tx;
+    @Autowired
+    private CustomerOrderRepository customerOrderRepository;
+    @Autowired
+    private DeliveryStaffRepository deliveryStaffRepository;
+    @Autowired
+    private CustomerRepository customerRepository;
+    @Autowired
+    private RestaurantRepository restaurantRepository;
+
+    private CustomerOrder order;
+    private List<DeliveryStaff> riders;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        Customer c = new Customer();
+        c.setUsername("take-" + suffix);
+        c.setPassword("x");
+        c = customerRepository.save(c);
+        Restaurant r = new Restaurant();
+        r.setName("take-" + suffix);
+        r = restaurantRepository.save(r);
+
+        CustomerOrder o = new CustomerOrder();
+        o.setCustomer(c);
+        o.setRestaurant(r);
+        o.setTotalAmount(new BigDecimal("30.00"));
+        o.setPayAmount(new BigDecimal("30.00"));
+        o.setStatus("PAID");
+        o.setPayStatus("PAID");
+        order = customerOrderRepository.save(o);
+
+        riders = new ArrayList<>(RIDERS);
+        for (int i = 0; i < RIDERS; i++) {
+            DeliveryStaff s = new DeliveryStaff();
+            s.setName("rider-" + i);
+            s.setStatus("ACTIVE");
+            s.setCurrentLoad(0);
+            riders.add(deliveryStaffRepository.save(s));
+        }
+    }
+
+    @Test
+    void onlyOneConditionalUpdateWins() throws Exception {
+        List<Integer> counts = race(staff -> () -> tx.execute(s -> {
+            int n = customerOrderRepository.takeForDelivery(order.getId(), staff);
+            if (n == 1) deliveryStaffRepository.incrementLoad(staff.getId());
+            return n;
+        }));
+
+        assertThat(counts).containsOnly(0, 1);
+        assertThat(counts).filteredOn(n -> n == 1).hasSize(1);
+        assertOneRiderHoldsTheOrder();
+    }
+
+    @Test
+    void onlyOneTakeRequestSucceeds() throws Exception {
+        List<HttpStatusCode> statuses = race(staff -> () -> rest.postForEntity(
+                "/api/rider/orders/{id}/take?deliveryStaffId={staff}", null, String.class,
+                order.getId(), staff.getId()).getStatusCode());
+
+        assertThat(statuses).filteredOn(s -> s.equals(HttpStatus.OK)).hasSize(1);
+        assertThat(statuses).filteredOn(s -> s.equals(HttpStatus.CONFLICT)).hasSize(RIDERS - 1);
+        assertOneRiderHoldsTheOrder();
+    }
+
+    private void assertOneRiderHoldsTheOrder() {
+        CustomerOrder after = customerOrderRepository.findById(order.getId()).orElseThrow();
+        assertThat(after.getStatus()).isEqualTo("DELIVERING");
+        Long winner = after.getDeliveryStaff().getId();
+        for (DeliveryStaff s : deliveryStaffRepository.findAllById(riders.stream().map(DeliveryStaff::getId).toList())) {
+            assertThat(s.getCurrentLoad()).as("rider " + s.getId()).isEqualTo(s.getId().equals(winner) ? 1 : 0);
+        }
+    }
+
+    private <T> List<T> race(Function<DeliveryStaff, Callable<T>> attempt) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(RIDERS);
+        List<Future<T>> futures = new ArrayList<>(RIDERS);
+        try {
+            for (DeliveryStaff staff : riders) {
+                Callable<T> call = attempt.apply(staff);
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return call.call();
+                }));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<>(RIDERS);
+            for (Future<T> f : futures) results.add(f.get());
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}